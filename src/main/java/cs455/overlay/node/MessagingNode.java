@@ -3,53 +3,136 @@ package cs455.overlay.node;
 import java.io.IOException;
 import java.net.InetAddress;
 import java.net.Socket;
+import java.nio.ByteBuffer;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.HashMap;
-import java.util.Random;
+import java.util.List;
+import java.util.SplittableRandom;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicInteger;
-import java.util.concurrent.atomic.AtomicLong;
 
+import cs455.overlay.routing.FingerRouting;
+import cs455.overlay.routing.LinkLatencies;
+import cs455.overlay.routing.OverlayTopologies;
+import cs455.overlay.routing.OverlayTopology;
 import cs455.overlay.routing.RoutingEntry;
+import cs455.overlay.routing.RoutingSnapshot;
 import cs455.overlay.routing.RoutingTable;
+import cs455.overlay.routing.ShortcutCache;
 import cs455.overlay.transport.TCPConnection;
 import cs455.overlay.transport.TCPConnectionsCache;
+import cs455.overlay.transport.Stage;
 import cs455.overlay.transport.TCPServerThread;
+import cs455.overlay.util.ChunkReassembler;
+import cs455.overlay.util.ClockOffset;
+import cs455.overlay.util.Constants;
+import cs455.overlay.util.HopCountHistogram;
 import cs455.overlay.util.InteractiveCommandParser;
+import cs455.overlay.util.LatencyHistogram;
+import cs455.overlay.util.MetricsEndpoint;
+import cs455.overlay.util.Pacer;
+import cs455.overlay.util.RuntimeDiagnostics;
+import cs455.overlay.util.TrafficCounters;
+import cs455.overlay.util.TrafficSummaryAggregator;
+import cs455.overlay.util.WallClock;
 import cs455.overlay.wireformats.Event;
+import cs455.overlay.wireformats.EventFactory;
 import cs455.overlay.wireformats.NodeReportsOverlaySetupStatus;
+import cs455.overlay.wireformats.OverlayNodeAcknowledgesData;
+import cs455.overlay.wireformats.OverlayNodeReportsAggregatedTrafficSummary;
 import cs455.overlay.wireformats.OverlayNodeReportsTaskFinished;
+import cs455.overlay.wireformats.OverlayNodeReportsTrafficCounters;
 import cs455.overlay.wireformats.OverlayNodeReportsTrafficSummary;
+import cs455.overlay.wireformats.OverlayNodeReportsTrafficSummaryV2;
+import cs455.overlay.wireformats.OverlayNodeRequestsClockSync;
+import cs455.overlay.wireformats.OverlayNodeRequestsNodeAddress;
+import cs455.overlay.wireformats.OverlayNodeRespondsToProbe;
 import cs455.overlay.wireformats.OverlayNodeSendsData;
+import cs455.overlay.wireformats.OverlayNodeSendsProbe;
 import cs455.overlay.wireformats.OverlayNodeSendsDeregistration;
 import cs455.overlay.wireformats.OverlayNodeSendsRegistration;
 import cs455.overlay.wireformats.Protocol;
+import cs455.overlay.wireformats.RegistryBroadcastsControlMessage;
 import cs455.overlay.wireformats.RegistryReportsDeregistrationStatus;
 import cs455.overlay.wireformats.RegistryReportsRegistrationStatus;
 import cs455.overlay.wireformats.RegistryRequestsTaskInitiate;
+import cs455.overlay.wireformats.RegistryRequestsTrafficCounters;
+import cs455.overlay.wireformats.RegistryRequestsTrafficSummary;
+import cs455.overlay.workload.DestinationSelector;
+import cs455.overlay.workload.Workload;
+import cs455.overlay.wireformats.RegistryRespondsToClockSync;
+import cs455.overlay.wireformats.RegistryRespondsToNodeAddressRequest;
 import cs455.overlay.wireformats.RegistrySendsNodeManifest;
 import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
 
 public class MessagingNode implements Node {
     private static final Logger logger = LogManager.getLogger(MessagingNode.class);
+    // generated payload bytes are slices of this, as only their number matters
+    private static final byte[] ZERO_PAYLOAD = new byte[Constants.PAYLOAD_CHUNK_BYTES];
 
     private TCPConnection registryConnection;
     private TCPServerThread tcpServerThread;
     private InteractiveCommandParser commandParser;
     private int nodeId; // randomly generated by the registry
-    private RoutingTable routingTable;
+    // routing state for the latest manifest; replaced as a whole, never modified in place
+    private volatile RoutingSnapshot routingSnapshot;
 
-    private AtomicInteger sendTracker;
-    private AtomicInteger receiveTracker;
-    private AtomicInteger relayTracker;
-    private AtomicLong sendSummation;
-    private AtomicLong receiveSummation;
+    private TrafficCounters trafficCounters;
+    private HopCountHistogram hopCountHistogram;
+    private final AtomicInteger nextMessageId = new AtomicInteger();
+    private final ChunkReassembler chunkReassembler = new ChunkReassembler();
 
-    private int[] allNodeIds;
-    private HashMap<Integer, Socket> connectedNodeIdSocketMap;
+    private LinkLatencies linkLatencies;
+    private volatile boolean proximityRouting;
+    private volatile boolean multipathRouting;
+    // estimated one-way latency (RTT / 2) of the link each packet was forwarded on
+    private LatencyHistogram nextHopLatencyHistogram;
+    // direct connections to frequent destinations, consulted before the routing table
+    private ShortcutCache shortcuts;
+
+    // outgoing connections to other nodes, reused across manifests. Only accessed while
+    // processing a manifest on the registry connection's receiver thread.
+    private HashMap<Integer, TCPConnection> overlayConnections;
 
     private TCPConnectionsCache tcpConnectionsCache;
 
+    // processes control messages received through the broadcast tree, in order, without
+    // blocking the connection they arrived on
+    private ExecutorService controlMessageExecutor;
+    private volatile long taskStartTimeNanos;
+    // generates the packets of a task, one task after another, on the generator workers
+    private ExecutorService trafficGenerator;
+    private ExecutorService generatorWorkers;
+    // in closed loop mode, one permit per packet that may still be sent unacknowledged
+    private volatile Semaphore closedLoopWindow;
+    private LatencyHistogram roundTripLatencyHistogram;
+    // from the send timestamp of received packets to their arrival, as a whole and divided
+    // by the hops each took
+    private LatencyHistogram endToEndLatencyHistogram;
+    private LatencyHistogram perHopLatencyHistogram;
+    // packets are timestamped with the registry's clock, so latencies between nodes do not
+    // depend on how far apart their own clocks are
+    private final ClockOffset clockOffset = new ClockOffset();
+
+    // relay pipeline: data packets are decoded and routed on their own threads and sent by
+    // the sender thread of the link they leave on
+    private Stage<byte[]> decodeStage;
+    private Stage<OverlayNodeSendsData> routeStage;
+    // combines this node's traffic summary with its subtree's during an aggregated collection
+    private volatile TrafficSummaryAggregator summaryAggregator;
+    // sends an aggregated summary with the reports that arrived if some never do
+    private ScheduledExecutorService summaryDeadlines;
+    // what this node reported at the end of the round, until the next task starts
+    private volatile RoundSummary lastRoundSummary;
+
     public MessagingNode(Socket registrySocket) throws IOException {
         registryConnection = new TCPConnection(registrySocket, this);
 
@@ -59,19 +142,48 @@ public class MessagingNode implements Node {
         commandParser = new InteractiveCommandParser(this);
 
         sendRegistrationRequestToRegistry();
-        connectedNodeIdSocketMap = new HashMap<>();
+        overlayConnections = new HashMap<>();
 
-        sendTracker = new AtomicInteger(0);
-        receiveTracker = new AtomicInteger(0);
-        relayTracker = new AtomicInteger(0);
-        sendSummation = new AtomicLong(0);
-        receiveSummation = new AtomicLong(0);
+        trafficCounters = new TrafficCounters();
+        hopCountHistogram = new HopCountHistogram();
+        linkLatencies = new LinkLatencies();
+        nextHopLatencyHistogram = new LatencyHistogram();
+        shortcuts = new ShortcutCache(tcpConnectionsCache, Constants.DEFAULT_SHORTCUT_BUDGET,
+                Constants.SHORTCUT_THRESHOLD);
+        controlMessageExecutor = Executors.newSingleThreadExecutor();
+        summaryDeadlines = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "summary-deadlines");
+            thread.setDaemon(true);
+            return thread;
+        });
+        trafficGenerator = Executors.newSingleThreadExecutor(
+                runnable -> new Thread(runnable, "traffic-generator"));
+        generatorWorkers = Executors.newCachedThreadPool(
+                runnable -> new Thread(runnable, "traffic-generator-worker"));
+        roundTripLatencyHistogram = new LatencyHistogram();
+        endToEndLatencyHistogram = new LatencyHistogram();
+        perHopLatencyHistogram = new LatencyHistogram();
+        routeStage = new Stage<>("relay-route", Constants.RELAY_STAGE_CAPACITY,
+                Constants.RELAY_ROUTE_THREADS, this::respondToOverlayNodeSendsData);
+        decodeStage = new Stage<>("relay-decode", Constants.RELAY_STAGE_CAPACITY,
+                Constants.RELAY_DECODE_THREADS, this::decodeData);
 
     }
 
     public void initialize() {
         tcpServerThread.start();
         commandParser.start();
+
+        Thread linkProber = new Thread(this::probeLinks, "link-prober");
+        linkProber.setDaemon(true);
+        linkProber.start();
+
+        Thread clockSynchronizer = new Thread(this::synchronizeClock, "clock-sync");
+        clockSynchronizer.setDaemon(true);
+        clockSynchronizer.start();
+
+        MetricsEndpoint.register("MessagingNode", new Metrics());
+        MetricsEndpoint.startIfConfigured();
     }
 
     public static void main(String[] args) throws IOException {
@@ -133,30 +245,132 @@ public class MessagingNode implements Node {
             case Protocol.OVERLAY_NODE_SENDS_DATA:
                 respondToOverlayNodeSendsData(event);
                 break;
+            case Protocol.OVERLAY_NODE_SENDS_PROBE:
+                respondToOverlayNodeSendsProbe(event);
+                break;
+            case Protocol.OVERLAY_NODE_RESPONDS_TO_PROBE:
+                handleOverlayNodeRespondsToProbe(event);
+                break;
+            case Protocol.REGISTRY_RESPONDS_TO_NODE_ADDRESS_REQUEST:
+                handleRegistryRespondsToNodeAddressRequest(event);
+                break;
+            case Protocol.REGISTRY_BROADCASTS_CONTROL_MESSAGE:
+                handleRegistryBroadcastsControlMessage(event);
+                break;
+            case Protocol.OVERLAY_NODE_REPORTS_AGGREGATED_TRAFFIC_SUMMARY:
+                handleOverlayNodeReportsAggregatedTrafficSummary(event);
+                break;
+            case Protocol.REGISTRY_REQUESTS_TRAFFIC_COUNTERS:
+                sendTrafficCountersToRegistry(event);
+                break;
+            case Protocol.OVERLAY_NODE_ACKNOWLEDGES_DATA:
+                respondToOverlayNodeAcknowledgesData(event);
+                break;
+            case Protocol.REGISTRY_RESPONDS_TO_CLOCK_SYNC:
+                handleRegistryRespondsToClockSync(event);
+                break;
             default:
                 logger.error("Unknown event type: " + type);
         }
     }
 
 
+    /**
+     * byte: Message Type; REGISTRY_REQUESTS_TRAFFIC_SUMMARY
+     * byte: 1 if summaries are to be combined up the broadcast tree, 0 to report directly
+     * byte: 1 if the round is over and the node is to start counting afresh
+     * byte: Highest traffic summary version the registry understands
+     *
+     * Counters of received and relayed packets are only reset at the end of a round, as
+     * packets of the next round may arrive before this node is asked to start sending. If
+     * the registry asks again before the next round, e.g. because the report was lost on its
+     * way up the broadcast tree, the same summary is sent again.
+     */
     private void sendTaskSummaryToRegistry(Event event) {
-        OverlayNodeReportsTrafficSummary trafficSummaryEvent = new OverlayNodeReportsTrafficSummary();
-        trafficSummaryEvent.setNodeId(nodeId);
-        trafficSummaryEvent.setNumPacketsReceived(receiveTracker.get());
-        trafficSummaryEvent.setNumPacketsSent(sendTracker.get());
-        trafficSummaryEvent.setNumPacketsRelayed(relayTracker.get());
-        trafficSummaryEvent.setSumPacketsReceived(receiveSummation.get());
-        trafficSummaryEvent.setSumPacketsSent(sendSummation.get());
+        RegistryRequestsTrafficSummary request = (RegistryRequestsTrafficSummary) event;
+        RoundSummary reported = request.isResetCounters() ? lastRoundSummary : null;
+        TrafficCounters.Snapshot counters = reported != null ? reported.counters :
+                trafficCounters.snapshot();
 
         System.out.println("\n========================================");
         logger.info("Node ID: " + nodeId);
-        logger.info("receiveTracker: " + receiveTracker);
-        logger.info("sendTracker :" + sendTracker);
-        logger.info("relayTracker: " + relayTracker);
-        logger.info("sendSummation: " + sendSummation);
-        logger.info("receiveSummation: " + receiveSummation);
+        logger.info("packetsReceived: " + counters.getPacketsReceived());
+        logger.info("packetsSent: " + counters.getPacketsSent());
+        logger.info("packetsRelayed: " + counters.getPacketsRelayed());
+        logger.info("sumPacketsSent: " + counters.getSumPacketsSent());
+        logger.info("sumPacketsReceived: " + counters.getSumPacketsReceived());
+        logger.info("hopCounts: " + hopCountHistogram);
+        logger.info("nextHopLatency (proximity routing " + (proximityRouting ? "on" : "off") +
+                "): " + nextHopLatencyHistogram.toPercentileString());
+        logger.info("endToEndLatency: " + endToEndLatencyHistogram.toPercentileString());
+        logger.info("perHopLatency: " + perHopLatencyHistogram.toPercentileString());
         System.out.println("========================================\n");
 
+        LatencyHistogram endToEndLatency;
+        LatencyHistogram perHopLatency;
+        if (reported != null) {
+            endToEndLatency = reported.endToEndLatency;
+            perHopLatency = reported.perHopLatency;
+        } else {
+            endToEndLatency = endToEndLatencyHistogram.copy();
+            perHopLatency = perHopLatencyHistogram.copy();
+        }
+        if (request.isResetCounters() && reported == null) {
+            trafficCounters.resetReceived();
+            chunkReassembler.clear();
+            hopCountHistogram.reset();
+            endToEndLatencyHistogram.reset();
+            perHopLatencyHistogram.reset();
+            lastRoundSummary = new RoundSummary(counters, endToEndLatency, perHopLatency);
+        }
+
+        TrafficSummaryAggregator aggregator = summaryAggregator;
+        if (request.isAggregate() && aggregator != null) {
+            OverlayNodeReportsAggregatedTrafficSummary ownSummary =
+                    new OverlayNodeReportsAggregatedTrafficSummary();
+            ownSummary.setNodeId(nodeId);
+            ownSummary.setNoOfNodes(1);
+            ownSummary.setNodeIds(new int[]{nodeId});
+            ownSummary.setNumPacketsSent(counters.getPacketsSent());
+            ownSummary.setNumPacketsRelayed(counters.getPacketsRelayed());
+            ownSummary.setSumPacketsSent(counters.getSumPacketsSent());
+            ownSummary.setNumPacketsReceived(counters.getPacketsReceived());
+            ownSummary.setSumPacketsReceived(counters.getSumPacketsReceived());
+            ownSummary.setPayloadBytesSent(counters.getPayloadBytesSent());
+            ownSummary.setPayloadBytesReceived(counters.getPayloadBytesReceived());
+            ownSummary.setEndToEndLatency(endToEndLatency);
+            ownSummary.setPerHopLatency(perHopLatency);
+            addToSummaryAggregate(aggregator, ownSummary);
+            return;
+        }
+
+        Event trafficSummaryEvent;
+        if (request.getSummaryVersion() >= 2) {
+            OverlayNodeReportsTrafficSummaryV2 summary = new OverlayNodeReportsTrafficSummaryV2();
+            summary.setNodeId(nodeId);
+            summary.setNumPacketsReceived(counters.getPacketsReceived());
+            summary.setNumPacketsSent(counters.getPacketsSent());
+            summary.setNumPacketsRelayed(counters.getPacketsRelayed());
+            summary.setSumPacketsReceived(counters.getSumPacketsReceived());
+            summary.setSumPacketsSent(counters.getSumPacketsSent());
+            summary.setPayloadBytesSent(counters.getPayloadBytesSent());
+            summary.setPayloadBytesReceived(counters.getPayloadBytesReceived());
+            summary.setEndToEndLatency(endToEndLatency);
+            summary.setPerHopLatency(perHopLatency);
+            trafficSummaryEvent = summary;
+        } else {
+            // a registry that only knows the first version; counts and sums too large for it
+            // are truncated
+            OverlayNodeReportsTrafficSummary summary = new OverlayNodeReportsTrafficSummary();
+            summary.setNodeId(nodeId);
+            summary.setNumPacketsReceived((int) counters.getPacketsReceived());
+            summary.setNumPacketsSent((int) counters.getPacketsSent());
+            summary.setNumPacketsRelayed((int) counters.getPacketsRelayed());
+            summary.setSumPacketsReceived(counters.getSumPacketsReceived().getLow());
+            summary.setSumPacketsSent(counters.getSumPacketsSent().getLow());
+            trafficSummaryEvent = summary;
+        }
+
         try {
             registryConnection.sendData(trafficSummaryEvent.getBytes());
         } catch (IOException e) {
@@ -164,72 +378,256 @@ public class MessagingNode implements Node {
         }
     }
 
+    /**
+     * byte: Message type; REGISTRY_REQUESTS_TRAFFIC_COUNTERS
+     * int: Wave number, echoed in the response
+     */
+    private void sendTrafficCountersToRegistry(Event event) {
+        OverlayNodeReportsTrafficCounters countersEvent = new OverlayNodeReportsTrafficCounters();
+        countersEvent.setNodeId(nodeId);
+        countersEvent.setWave(((RegistryRequestsTrafficCounters) event).getWave());
+        countersEvent.setPacketsReceivedOnLinks(trafficCounters.getReceptions());
+        countersEvent.setPacketsSentOnLinks(trafficCounters.getTransmissions());
+
+        try {
+            registryConnection.sendData(countersEvent.getBytes());
+        } catch (IOException e) {
+            logger.error(e.getStackTrace());
+        }
+    }
+
     /**
      * byte: Message type; REGISTRY_REQUESTS_TASK_INITIATE
      * int: Number of data packets to send
+     * int: Packets per second to generate; 0 to send as fast as possible
+     * byte: 1 to wait for packets to be acknowledged, 0 to send regardless
+     * int: Packets that may be unacknowledged in closed loop mode
+     *
+     * Packets are generated on the traffic generator thread so that the registry connection
+     * stays responsive while a task is running.
      */
     private void initiateTask(Event event) {
+        lastRoundSummary = null;
+        trafficGenerator.execute(() -> generateTraffic((RegistryRequestsTaskInitiate) event));
+    }
+
+    private void generateTraffic(RegistryRequestsTaskInitiate taskInitiateEvent) {
         logger.info("Node " + nodeId + " starting to send messages");
-        sendTracker.set(0);
-        receiveTracker.set(0);
-        relayTracker.set(0);
-        sendSummation.set(0);
-        receiveSummation.set(0);
-
-        RegistryRequestsTaskInitiate taskInitiateEvent = (RegistryRequestsTaskInitiate) event;
-        int noOfPacketsToSend = taskInitiateEvent.getNoOfPacketsToSend();
-        Random random = new Random();
-
-        logger.info("Source ID: " + getNodeId());
-        OverlayNodeSendsData sendsDataEvent;
-        for (int i = 0; i < noOfPacketsToSend; i++) {
-            sendsDataEvent = new OverlayNodeSendsData();
-            sendsDataEvent.setSourceId(getNodeId());
-
-            int payload = random.nextInt();
-            sendsDataEvent.setPayload(payload);
-
-            // select a node at random from the nodes in the network
-            int destinationNodeIdPosition = random.nextInt(allNodeIds.length);
-            int destinationNodeId = allNodeIds[destinationNodeIdPosition];
-            logger.info("Destination ID: " + destinationNodeId);
-
-            // avoid sending packet to the node itself
-            while (getNodeId() == destinationNodeId) {
-                destinationNodeIdPosition = random.nextInt(allNodeIds.length);
-                destinationNodeId = allNodeIds[destinationNodeIdPosition];
+        taskStartTimeNanos = clockOffset.toRegistryTime(WallClock.currentTimeNanos());
+        trafficCounters.resetSent();
+        nextHopLatencyHistogram.reset();
+        roundTripLatencyHistogram.reset();
+
+        RoutingSnapshot snapshot = routingSnapshot;
+        if (snapshot == null) {
+            logger.warn("Routing table has not been received from the registry. " +
+                    "Cannot start sending messages.");
+            return;
+        }
+
+        // destinations are drawn from the overlay as it was when the task started
+        Workload workload = taskInitiateEvent.getWorkload();
+        int[] nodeIds = snapshot.getNodeIds();
+        int position = Arrays.binarySearch(nodeIds, nodeId);
+        boolean sends = workload.getPattern().createSelector(nodeIds, position, workload) != null;
+        int noOfPacketsToSend = sends ? taskInitiateEvent.getNoOfPacketsToSend() : 0;
+        int noOfWorkers = taskInitiateEvent.getGeneratorThreads() > 0 ?
+                taskInitiateEvent.getGeneratorThreads() :
+                Runtime.getRuntime().availableProcessors();
+        noOfWorkers = Math.max(1, Math.min(noOfWorkers, noOfPacketsToSend));
+        boolean closedLoop = taskInitiateEvent.isClosedLoop();
+        int window = Math.max(1, taskInitiateEvent.getWindow());
+        Semaphore unacknowledged = closedLoop ? new Semaphore(window) : null;
+        closedLoopWindow = unacknowledged;
+
+        // split the packets exactly and the rate evenly; every worker draws from its own
+        // generator split off a common one
+        SplittableRandom random = new SplittableRandom();
+        List<TrafficGeneratorWorker> workers = new ArrayList<>(noOfWorkers);
+        for (int i = 0; i < noOfWorkers; i++) {
+            int noOfPackets = noOfPacketsToSend / noOfWorkers +
+                    (i < noOfPacketsToSend % noOfWorkers ? 1 : 0);
+            workers.add(new TrafficGeneratorWorker(noOfPackets,
+                    (double) taskInitiateEvent.getPacketsPerSecond() / noOfWorkers,
+                    unacknowledged, random.split(), workload,
+                    workload.getPattern().createSelector(nodeIds, position, workload)));
+        }
+        long startNanos = System.nanoTime();
+        try {
+            generatorWorkers.invokeAll(workers);
+        } catch (InterruptedException e) {
+            logger.error(e.getStackTrace());
+        }
+        double elapsedSeconds = (System.nanoTime() - startNanos) / 1e9;
+
+        long packetsSent = 0;
+        long payloadBytesSent = 0;
+        long lateEvents = 0;
+        int lostAcknowledgements = 0;
+        for (TrafficGeneratorWorker worker : workers) {
+            packetsSent += worker.packetsSent;
+            payloadBytesSent += worker.payloadBytesSent;
+            lateEvents += worker.lateEvents;
+            lostAcknowledgements += worker.lostAcknowledgements;
+        }
+        // in closed loop the task is finished once every packet has been acknowledged
+        if (closedLoop && !acquireWindow(unacknowledged, window)) {
+            lostAcknowledgements += window - unacknowledged.availablePermits();
+        }
+        closedLoopWindow = null;
+
+        logger.info(String.format("Generated %d packets on %d threads in %.3f s (%.0f " +
+                        "packets/s, %.2f MB/s, target %s, %s, %s, %d late, %d unacknowledged)",
+                packetsSent, noOfWorkers, elapsedSeconds, packetsSent / elapsedSeconds,
+                payloadBytesSent / elapsedSeconds / 1e6,
+                taskInitiateEvent.getPacketsPerSecond() > 0 ?
+                        taskInitiateEvent.getPacketsPerSecond() + " packets/s" : "none",
+                closedLoop ? "closed loop with window " + window : "open loop",
+                workload, lateEvents, lostAcknowledgements));
+        if (closedLoop) {
+            logger.info("Round trip latency: " + roundTripLatencyHistogram.toPercentileString());
+        }
+        reportTaskFinished();
+    }
+
+    /**
+     * Sends one worker's share of a task's packets. Workers share nothing but the closed loop
+     * window and the node's striped traffic counters.
+     */
+    private class TrafficGeneratorWorker implements Callable<Void> {
+        private final int noOfPackets;
+        private final Pacer pacer;
+        private final Semaphore unacknowledged;
+        private final SplittableRandom random;
+        private final Workload workload;
+        private final DestinationSelector destinationSelector;
+
+        private long packetsSent;
+        private long payloadBytesSent;
+        private long lateEvents;
+        private int lostAcknowledgements;
+
+        TrafficGeneratorWorker(int noOfPackets, double packetsPerSecond,
+                               Semaphore unacknowledged, SplittableRandom random,
+                               Workload workload, DestinationSelector destinationSelector) {
+            this.noOfPackets = destinationSelector == null ? 0 : noOfPackets;
+            this.pacer = new Pacer(packetsPerSecond);
+            this.unacknowledged = unacknowledged;
+            this.random = random;
+            this.workload = workload;
+            this.destinationSelector = destinationSelector;
+        }
+
+        @Override
+        public Void call() {
+            OverlayNodeSendsData sendsDataEvent;
+            pacer.start();
+            for (int i = 0; i < noOfPackets; i++) {
+                if (unacknowledged != null && !acquireWindow(unacknowledged, 1)) {
+                    // the packet or its acknowledgement was lost; carry on without it
+                    lostAcknowledgements++;
+                }
+                pacer.pace();
+
+                sendsDataEvent = new OverlayNodeSendsData();
+                sendsDataEvent.setSourceId(getNodeId());
+
+                int payload = random.nextInt();
+                sendsDataEvent.setPayload(payload);
+                int noOfPayloadBytes = workload.nextPayloadBytes(random);
+
+                // read the routing state once per packet so that a new manifest can be
+                // swapped in while packets are being generated
+                RoutingSnapshot snapshot = routingSnapshot;
+
+                int destinationNodeId = destinationSelector.nextDestination(random);
+                sendsDataEvent.setDestinationId(destinationNodeId);
+                if (unacknowledged != null) {
+                    sendsDataEvent.setAcknowledge(true);
+                    sendsDataEvent.setAcknowledgeTimestamp(System.nanoTime());
+                }
+                sendsDataEvent.setSendTimestamp(
+                        clockOffset.toRegistryTime(WallClock.currentTimeNanos()));
+
+                TCPConnection tcpConnection = selectNextHop(snapshot, getNodeId(),
+                        destinationNodeId, 0);
+                if (tcpConnection == null) {
+                    logger.warn("No route to destination node " + destinationNodeId);
+                    if (unacknowledged != null) {
+                        unacknowledged.release();
+                    }
+                    continue;
+                }
+                boolean queued;
+                try {
+                    queued = sendMessage(sendsDataEvent, noOfPayloadBytes, tcpConnection);
+                } finally {
+                    tcpConnection.release();
+                }
+                if (!queued) {
+                    // the message can never be received whole, so it is not counted as sent
+                    if (unacknowledged != null) {
+                        unacknowledged.release();
+                    }
+                    continue;
+                }
+                trafficCounters.recordSent(payload);
+                trafficCounters.addPayloadBytesSent(noOfPayloadBytes);
+                packetsSent++;
+                payloadBytesSent += noOfPayloadBytes;
             }
+            lateEvents = pacer.getLateEvents();
+            return null;
+        }
 
-            sendsDataEvent.setDestinationId(destinationNodeId);
-            sendsDataEvent.setPayload(payload);
-
-            // check routing table
-            RoutingEntry routingEntry;
-            if (routingTable.containsNodeId(destinationNodeId)) {
-                // send directly
-                logger.debug("Destination node " + destinationNodeId + " found in node " +
-                        getNodeId() + "'s routing table. Sending directly.");
-                routingEntry = routingTable.getRoutingEntry(destinationNodeId);
-            } else {
-                // destination not found in the routing table
-                logger.debug("Destination node " + destinationNodeId + " not found in node " +
-                        getNodeId() + "'s routing table.");
-                int nextBestNode = routingTable.
-                        getNextBestNode(sendsDataEvent, allNodeIds);
-                routingEntry = routingTable.getRoutingEntry(nextBestNode);
+        /**
+         * Sends the message as one data packet, or as one per chunk if its payload is larger
+         * than a chunk. The payload bytes are slices of a shared array of zeros, as only
+         * their number matters to the overlay. Returns false if the link was closed before
+         * every chunk was queued.
+         */
+        private boolean sendMessage(OverlayNodeSendsData sendsDataEvent, int noOfPayloadBytes,
+                                 TCPConnection tcpConnection) {
+            int noOfChunks = Math.max(1, (int) (((long) noOfPayloadBytes +
+                    Constants.PAYLOAD_CHUNK_BYTES - 1) / Constants.PAYLOAD_CHUNK_BYTES));
+            if (noOfChunks > 1) {
+                sendsDataEvent.setMessageId(nextMessageId.getAndIncrement());
+                sendsDataEvent.setNoOfChunks(noOfChunks);
             }
+            for (int chunk = 0; chunk < noOfChunks; chunk++) {
+                int offset = chunk * Constants.PAYLOAD_CHUNK_BYTES;
+                int length = Math.min(Constants.PAYLOAD_CHUNK_BYTES, noOfPayloadBytes - offset);
+                sendsDataEvent.setChunkIndex(chunk);
+                sendsDataEvent.setPayloadBytes(ByteBuffer.wrap(ZERO_PAYLOAD, 0, length));
+                byte[] header = sendsDataEvent.getHeaderBytes();
 
-            Socket socket = routingEntry.getSocket();
-            TCPConnection tcpConnection = tcpConnectionsCache.getConnection(socket);
-            try {
-                tcpConnection.sendData(sendsDataEvent.getBytes());
-                sendTracker.getAndIncrement();
-                sendSummation.getAndAdd(payload);
-            } catch (IOException e) {
-                logger.error(e.getStackTrace());
+                // counted before the packet can arrive, so it is never seen received but
+                // not sent
+                trafficCounters.recordTransmission();
+                trafficCounters.recordLinkSent(tcpConnection.getPeerNodeId(),
+                        header.length + length);
+                if (!tcpConnection.queueData(header, sendsDataEvent.getPayloadBytes())) {
+                    logger.warn("Link to node " + tcpConnection.getPeerNodeId() +
+                            " is closed. Dropping packet.");
+                    return false;
+                }
             }
+            return true;
+        }
+    }
+
+    /**
+     * Waits for permits of the closed loop window, giving up after the acknowledgement
+     * timeout. Returns false if the permits were not acquired.
+     */
+    private boolean acquireWindow(Semaphore semaphore, int permits) {
+        try {
+            return semaphore.tryAcquire(permits, Constants.ACKNOWLEDGEMENT_TIMEOUT_MS,
+                    TimeUnit.MILLISECONDS);
+        } catch (InterruptedException e) {
+            logger.error(e.getStackTrace());
+            return false;
         }
-        reportTaskFinished();
     }
 
     private void reportTaskFinished() {
@@ -238,6 +636,8 @@ public class MessagingNode implements Node {
         event.setIpAddress(registryConnection.getLocalAddress());
         event.setPort(tcpServerThread.getListeningPort());
         event.setNodeId(nodeId);
+        event.setTaskStartTimeNanos(taskStartTimeNanos);
+        event.setSummaryVersion(Constants.TRAFFIC_SUMMARY_VERSION);
 
         try {
             registryConnection.sendData(event.getBytes());
@@ -267,32 +667,52 @@ public class MessagingNode implements Node {
      * =============================================================================
      * byte: Number of node IDs in the system
      * int[^^]: List of all node IDs in the system [Note no IPs are included]
+     * byte: ID of the overlay topology the routing tables were built with (optional)
+     * int: Table size the overlay topology was set up with (optional)
      */
     private void respondToRegistrySendsNodeManifest(Event event) {
         RegistrySendsNodeManifest nodeManifestEvent = (RegistrySendsNodeManifest) event;
         int tableSize = nodeManifestEvent.getTableSize();
         logger.info("tableSize: " + tableSize);
-        routingTable = new RoutingTable(tableSize);
-        ArrayList<RoutingEntry> routingEntries = routingTable.getRoutingEntries();
+        int[] allNodeIds = nodeManifestEvent.getAllNodeIds().clone();
+        Arrays.sort(allNodeIds);
+        int ownPosition = Arrays.binarySearch(allNodeIds, nodeId);
+        OverlayTopology topology = OverlayTopologies.getById(nodeManifestEvent.getTopologyId());
+        if (topology == null) {
+            logger.warn("Unknown overlay topology " + nodeManifestEvent.getTopologyId() +
+                    ", routing on the finger ring");
+            topology = OverlayTopologies.getDefault();
+        }
+
+        RoutingTable routingTable = new RoutingTable(tableSize);
         for (int i = 0; i < tableSize; i++) {
+            // distance is the entry's clockwise position relative to this node on the ring
+            int fingerPosition = Arrays.binarySearch(allNodeIds,
+                    nodeManifestEvent.getNodesIds()[i]);
             routingTable.addRoutingEntry(new RoutingEntry(
-                    (int) Math.pow(2, i),
+                    FingerRouting.clockwiseDistance(ownPosition, fingerPosition,
+                            allNodeIds.length),
                     nodeManifestEvent.getNodesIds()[i],
                     new String(nodeManifestEvent.getIpAddresses()[i]),
                     nodeManifestEvent.getPorts()[i]
             ));
             logger.info("IP Address received: " + new String(nodeManifestEvent.getIpAddresses()[i]));
         }
-        logger.info("No. of Routing Entries: " + routingEntries.size());
+        logger.info("No. of Routing Entries: " + routingTable.size());
         System.out.println("\n\nRouting Table of node " + nodeId);
         System.out.println("--------------------------------------");
         routingTable.printRoutingTable();
         System.out.println("--------------------------------------");
 
-        int noOfAllNodeIds = nodeManifestEvent.getNoOfAllNodeIds();
-        allNodeIds = nodeManifestEvent.getAllNodeIds();
-
         connectToNodesInRoutingTable(routingTable);
+        // shortcuts may lead to nodes that left or are now in the routing table
+        shortcuts.clear();
+
+        // publish the new routing state in one step. Packets already routed with the previous
+        // snapshot are still delivered since the connections it refers to are kept open.
+        publishRoutingSnapshot(new RoutingSnapshot(nodeId, routingTable, allNodeIds, topology,
+                nodeManifestEvent.getTopologyTableSize(), proximityRouting ? linkLatencies : null,
+                getRoutingHopSlack()));
 
         // prepare response event
         NodeReportsOverlaySetupStatus responseEvent = new NodeReportsOverlaySetupStatus();
@@ -311,18 +731,29 @@ public class MessagingNode implements Node {
     }
 
     private void connectToNodesInRoutingTable(RoutingTable routingTable) {
-        ArrayList<RoutingEntry> routingEntries = routingTable.getRoutingEntries();
-        for (RoutingEntry routingEntry : routingEntries) {
-            System.out.println("\n\nConnecting to node: " + routingEntry.getNodeId());
+        for (int i = 0; i < routingTable.size(); i++) {
+            int fingerNodeId = routingTable.getNodeId(i);
+            TCPConnection existingConnection = overlayConnections.get(fingerNodeId);
+            if (existingConnection != null &&
+                    Arrays.equals(existingConnection.getDestinationAddress(),
+                            routingTable.getAddress(i)) &&
+                    existingConnection.getDestinationPort() == routingTable.getPort(i)) {
+                logger.info("Reusing connection to node " + fingerNodeId);
+                routingTable.setConnection(i, existingConnection);
+                continue;
+            }
+
+            System.out.println("\n\nConnecting to node: " + fingerNodeId);
             try {
-                logger.info("IPAddress: " + InetAddress.getByName(routingEntry.getIpAddress()));
-                logger.info("Port: " + routingEntry.getPort());
-                InetAddress byAddress = InetAddress.getByName(routingEntry.getIpAddress());
-                Socket socket = new Socket(byAddress.getHostAddress(), routingEntry.getPort());
+                InetAddress byAddress = InetAddress.getByAddress(routingTable.getAddress(i));
+                logger.info("IPAddress: " + byAddress);
+                logger.info("Port: " + routingTable.getPort(i));
+                Socket socket = new Socket(byAddress, routingTable.getPort(i));
                 TCPConnection tcpConnection = new TCPConnection(socket, this);
                 tcpConnectionsCache.addConnection(socket, tcpConnection);
-                routingEntry.setSocket(socket);
-                connectedNodeIdSocketMap.put(routingEntry.getNodeId(), socket);
+                tcpConnection.setPeerNodeId(fingerNodeId);
+                routingTable.setConnection(i, tcpConnection);
+                overlayConnections.put(fingerNodeId, tcpConnection);
             } catch (IOException e) {
                 e.printStackTrace();
             }
@@ -401,49 +832,848 @@ public class MessagingNode implements Node {
         registryConnection.sendData(deregistrationEvent.getBytes());
     }
 
+    /**
+     * Takes data packets off the receiving thread: they are decoded, routed and sent by
+     * separate stages, so a slow link only holds up the packets queued for it.
+     */
+    @Override
+    public boolean offerMessage(byte[] data, Socket socket) {
+        if (data[0] != Protocol.OVERLAY_NODE_SENDS_DATA) {
+            return false;
+        }
+        decodeStage.submit(data);
+        return true;
+    }
+
+    /**
+     * A data packet a link dropped after it was counted as transmitted will never be
+     * received, so it is counted as received here to take it out of flight.
+     */
+    @Override
+    public void onMessageDropped(byte messageType) {
+        if (messageType == Protocol.OVERLAY_NODE_SENDS_DATA) {
+            trafficCounters.recordReception();
+        }
+    }
+
+    private void decodeData(byte[] data) {
+        OverlayNodeSendsData nodeSendsDataEvent;
+        try {
+            nodeSendsDataEvent = new OverlayNodeSendsData(data);
+        } catch (IOException e) {
+            logger.error(e.getStackTrace());
+            // dropped, so the packet is no longer in flight
+            trafficCounters.recordReception();
+            return;
+        }
+        // the previous hop is the last relay in the trace, or the source if there is none
+        int traceLength = nodeSendsDataEvent.getDisseminationTraceLength();
+        int previousHopId = traceLength == 0 ? nodeSendsDataEvent.getSourceId() :
+                nodeSendsDataEvent.getDisseminationTrace()[traceLength - 1];
+        trafficCounters.recordLinkReceived(previousHopId, data.length);
+        routeStage.submit(nodeSendsDataEvent);
+    }
+
     private void respondToOverlayNodeSendsData(Event event) {
-        OverlayNodeSendsData nodeSendsDataEvent = (OverlayNodeSendsData) event;
-        nodeSendsDataEvent.setDisseminationTraceLength(nodeSendsDataEvent.
-                getDisseminationTraceLength() + 1);
+        try {
+            handleData((OverlayNodeSendsData) event);
+        } finally {
+            // only counted once the packet has been delivered, forwarded or dropped, so a
+            // packet waiting in this node is still in flight to the registry
+            trafficCounters.recordReception();
+        }
+    }
+
+    private void handleData(OverlayNodeSendsData nodeSendsDataEvent) {
+        RoutingSnapshot snapshot = routingSnapshot;
 
         int destinationId = nodeSendsDataEvent.getDestinationId();
         if (destinationId == nodeId) {
             // current node is packet's destination
-            receiveTracker.getAndIncrement();
-            receiveSummation.getAndAdd(nodeSendsDataEvent.getPayload());
+            trafficCounters.addPayloadBytesReceived(nodeSendsDataEvent.getNoOfPayloadBytes());
+            // the trace holds the relaying nodes, so the packet took one more hop than that
+            hopCountHistogram.record(nodeSendsDataEvent.getDisseminationTraceLength() + 1,
+                    snapshot == null ? Integer.MAX_VALUE : snapshot.getHopBound());
+            if (nodeSendsDataEvent.getNoOfChunks() > 1 &&
+                    !chunkReassembler.addChunk(nodeSendsDataEvent.getSourceId(),
+                            nodeSendsDataEvent.getMessageId(),
+                            nodeSendsDataEvent.getNoOfChunks())) {
+                // the message is only received, and acknowledged, with its last chunk
+                return;
+            }
+            trafficCounters.recordReceived(nodeSendsDataEvent.getPayload());
+            recordLatency(nodeSendsDataEvent);
+            if (nodeSendsDataEvent.isAcknowledge()) {
+                OverlayNodeAcknowledgesData acknowledgement = new OverlayNodeAcknowledgesData();
+                acknowledgement.setDestinationId(nodeSendsDataEvent.getSourceId());
+                acknowledgement.setSourceId(nodeId);
+                acknowledgement.setTimestamp(nodeSendsDataEvent.getAcknowledgeTimestamp());
+                forwardAcknowledgement(snapshot, acknowledgement);
+            }
         } else {
-            // current node is not the destination
-            // check if the destination is found in current node's routing table
-            int nodeToSend;
-            if (routingTable.containsNodeId(destinationId)) {
-                nodeToSend = destinationId;
-            } else {
-                // not found in routing table
-                nodeSendsDataEvent.setSourceId(nodeId);
-                nodeToSend = routingTable.getNextBestNode(nodeSendsDataEvent, allNodeIds);
+            // current node is not the destination; add it to the dissemination trace
+            int traceLength = nodeSendsDataEvent.getDisseminationTraceLength();
+            nodeSendsDataEvent.getDisseminationTrace()[traceLength] = nodeId;
+            nodeSendsDataEvent.setDisseminationTraceLength(traceLength + 1);
+
+            TCPConnection tcpConnection = snapshot == null ? null :
+                    selectNextHop(snapshot, nodeSendsDataEvent.getSourceId(), destinationId,
+                            traceLength + 1);
+            if (tcpConnection == null) {
+                logger.warn("No route to destination node " + destinationId + ". Dropping packet.");
+                return;
+            }
+            trafficCounters.recordTransmission();
+            // only the header is rebuilt; the payload bytes are sent from the received message
+            byte[] header = nodeSendsDataEvent.getHeaderBytes();
+            ByteBuffer payloadBytes = nodeSendsDataEvent.getPayloadBytes();
+            trafficCounters.recordLinkRelayed(tcpConnection.getPeerNodeId(),
+                    header.length + payloadBytes.remaining());
+            try {
+                if (!tcpConnection.queueData(header, payloadBytes)) {
+                    logger.warn("Link to node " + tcpConnection.getPeerNodeId() +
+                            " is closed. Dropping packet.");
+                    return;
+                }
+            } finally {
+                tcpConnection.release();
+            }
+
+            trafficCounters.recordRelayed();
+        }
+    }
+
+    /**
+     * Records how long a packet took from its source, if it carries a send timestamp. Both
+     * ends convert their clocks to the registry's, so this is the one-way latency up to the
+     * error of the two offset estimates. The per hop latency spreads it evenly over the hops
+     * in the dissemination trace; chunked messages are timed until their last chunk arrives.
+     */
+    private void recordLatency(OverlayNodeSendsData nodeSendsDataEvent) {
+        long sendTimestamp = nodeSendsDataEvent.getSendTimestamp();
+        if (sendTimestamp == 0) {
+            return;
+        }
+        long latency = clockOffset.toRegistryTime(WallClock.currentTimeNanos()) - sendTimestamp;
+        int hops = nodeSendsDataEvent.getDisseminationTraceLength() + 1;
+        endToEndLatencyHistogram.record(latency);
+        perHopLatencyHistogram.record(latency / hops);
+    }
+
+    /**
+     * byte: Message type; OVERLAY_NODE_ACKNOWLEDGES_DATA
+     * int: Destination ID; the source of the acknowledged packet
+     * int: Source ID; the node the packet was delivered to
+     * int: Number of hops the acknowledgement has taken so far
+     * long: Timestamp echoed from the acknowledged packet
+     *
+     * Acknowledgements are not data packets; they are not counted as sent, received or
+     * relayed, and the source only reports its task finished once all have arrived.
+     */
+    private void respondToOverlayNodeAcknowledgesData(Event event) {
+        OverlayNodeAcknowledgesData acknowledgement = (OverlayNodeAcknowledgesData) event;
+        if (acknowledgement.getDestinationId() != nodeId) {
+            forwardAcknowledgement(routingSnapshot, acknowledgement);
+            return;
+        }
+        roundTripLatencyHistogram.record(System.nanoTime() - acknowledgement.getTimestamp());
+        Semaphore window = closedLoopWindow;
+        if (window != null) {
+            window.release();
+        }
+    }
+
+    private void forwardAcknowledgement(RoutingSnapshot snapshot,
+                                        OverlayNodeAcknowledgesData acknowledgement) {
+        TCPConnection tcpConnection = snapshot == null ? null :
+                selectNextHop(snapshot, acknowledgement.getSourceId(),
+                        acknowledgement.getDestinationId(), acknowledgement.getHopsTaken());
+        if (tcpConnection == null) {
+            logger.warn("No route to destination node " + acknowledgement.getDestinationId() +
+                    ". Dropping acknowledgement.");
+            return;
+        }
+        acknowledgement.setHopsTaken(acknowledgement.getHopsTaken() + 1);
+        try {
+            tcpConnection.queueData(acknowledgement.getBytes());
+        } finally {
+            tcpConnection.release();
+        }
+    }
+
+    /**
+     * Looks up the connection to forward a packet on and records the estimated latency of
+     * that link. A shortcut straight to the destination is used if there is one; otherwise
+     * the packet is routed through the overlay and the destination counted towards opening
+     * a shortcut to it. The connection is retained, so that an evicted shortcut is not closed
+     * under the caller, and must be released once the packet has been queued.
+     */
+    private TCPConnection selectNextHop(RoutingSnapshot snapshot, int sourceId,
+                                        int destinationId, int hopsTaken) {
+        TCPConnection shortcut = shortcuts.get(destinationId);
+        if (shortcut != null) {
+            return shortcut;
+        }
+        int finger = snapshot.getNextHopFinger(sourceId, destinationId, hopsTaken);
+        if (finger == -1) {
+            return null;
+        }
+        RoutingTable routingTable = snapshot.getRoutingTable();
+        if (!routingTable.containsNodeId(destinationId) &&
+                shortcuts.recordDestination(destinationId)) {
+            requestShortcut(destinationId);
+        }
+        if (multipathRouting) {
+            finger = selectLeastLoadedFinger(routingTable,
+                    snapshot.getCandidateFingers(sourceId, destinationId, hopsTaken), finger);
+        }
+        long rtt = linkLatencies.getRttNanos(routingTable.getNodeId(finger));
+        if (rtt != LinkLatencies.UNKNOWN) {
+            nextHopLatencyHistogram.record(rtt / 2);
+        }
+        TCPConnection tcpConnection = routingTable.getConnection(finger);
+        if (tcpConnection != null) {
+            tcpConnection.retain();
+        }
+        return tcpConnection;
+    }
+
+    /**
+     * byte: Message type; REGISTRY_BROADCASTS_CONTROL_MESSAGE
+     * int: Number of nodes, starting with the receiver, to deliver the message to
+     * int: Depth of the receiver in the broadcast tree; roots are at depth 1
+     * int: length of following "message" field
+     * byte[^^]: Marshalled control message
+     *
+     * Passes the message on to the fingers that cover the rest of the span before handling it
+     * as if it came straight from the registry.
+     */
+    private void handleRegistryBroadcastsControlMessage(Event event) {
+        RegistryBroadcastsControlMessage broadcast = (RegistryBroadcastsControlMessage) event;
+        Event controlMessage;
+        try {
+            controlMessage = EventFactory.getInstance().getEvent(broadcast.getMessage(),
+                    registryConnection.getSocket());
+        } catch (IOException e) {
+            logger.error(e.getStackTrace());
+            return;
+        }
+
+        RoutingSnapshot snapshot = routingSnapshot;
+        RoutingTable routingTable = null;
+        int[] spans = new int[0];
+        if (snapshot != null) {
+            routingTable = snapshot.getRoutingTable();
+            int[] fingerDistances = new int[routingTable.size()];
+            for (int i = 0; i < fingerDistances.length; i++) {
+                fingerDistances[i] = routingTable.getDistance(i);
+            }
+            spans = FingerRouting.broadcastSpans(fingerDistances, broadcast.getSpan());
+        } else if (broadcast.getSpan() > 1) {
+            logger.warn("Routing table has not been received from the registry. " +
+                    "Cannot pass on broadcast to " + (broadcast.getSpan() - 1) + " nodes.");
+        }
+
+        TrafficSummaryAggregator aggregator = null;
+        if (controlMessage.getType() == Protocol.REGISTRY_REQUESTS_TRAFFIC_SUMMARY &&
+                ((RegistryRequestsTrafficSummary) controlMessage).isAggregate()) {
+            // must be in place before any child can answer
+            aggregator = new TrafficSummaryAggregator(nodeId,
+                    getBroadcastParentConnection(broadcast));
+            summaryAggregator = aggregator;
+            // deeper nodes give up sooner, so their partial summaries reach a parent that is
+            // still waiting
+            TrafficSummaryAggregator expiring = aggregator;
+            summaryDeadlines.schedule(() -> expireSummaryAggregate(expiring),
+                    Constants.SUMMARY_AGGREGATION_TIMEOUT_MS / broadcast.getDepth(),
+                    TimeUnit.MILLISECONDS);
+        }
+
+        for (int i = 0; i < spans.length; i++) {
+            TCPConnection tcpConnection = routingTable.getConnection(i);
+            if (spans[i] == 0 || tcpConnection == null) {
+                continue;
+            }
+            RegistryBroadcastsControlMessage childBroadcast =
+                    new RegistryBroadcastsControlMessage();
+            childBroadcast.setSpan(spans[i]);
+            childBroadcast.setDepth(broadcast.getDepth() + 1);
+            childBroadcast.setMessage(broadcast.getMessage());
+            // counted before the child can answer; the node's own report is still pending,
+            // so taking a child back off cannot complete the aggregate here
+            if (aggregator != null) {
+                aggregator.addChild();
+            }
+            if (!tcpConnection.queueData(childBroadcast.getBytes())) {
+                logger.warn("Link to node " + tcpConnection.getPeerNodeId() +
+                        " is closed. Cannot pass on broadcast to " + spans[i] + " nodes.");
+                if (aggregator != null) {
+                    aggregator.removeChild();
+                }
+            }
+        }
+
+        controlMessageExecutor.execute(() -> onEvent(controlMessage));
+    }
+
+    /**
+     * The roots of the broadcast tree answer the registry; every other node answers the
+     * parent that passed the broadcast on, over the connection it arrived on.
+     */
+    private TCPConnection getBroadcastParentConnection(RegistryBroadcastsControlMessage broadcast) {
+        if (broadcast.getDepth() == 1) {
+            return registryConnection;
+        }
+        TCPConnection tcpConnection = tcpConnectionsCache.getConnection(broadcast.getSocket());
+        if (tcpConnection == null) {
+            logger.warn("Received a broadcast on an unknown connection. Reporting the traffic " +
+                    "summary of the subtree to the registry instead.");
+            return registryConnection;
+        }
+        return tcpConnection;
+    }
+
+    private void handleOverlayNodeReportsAggregatedTrafficSummary(Event event) {
+        TrafficSummaryAggregator aggregator = summaryAggregator;
+        if (aggregator == null) {
+            logger.warn("Received an aggregated traffic summary without a pending request");
+            return;
+        }
+        addToSummaryAggregate(aggregator, (OverlayNodeReportsAggregatedTrafficSummary) event);
+    }
+
+    private void addToSummaryAggregate(TrafficSummaryAggregator aggregator,
+                                       OverlayNodeReportsAggregatedTrafficSummary report) {
+        if (aggregator.add(report)) {
+            sendSummaryAggregate(aggregator);
+        }
+    }
+
+    private void expireSummaryAggregate(TrafficSummaryAggregator aggregator) {
+        if (aggregator.expire()) {
+            logger.warn(aggregator.getPendingReports() + " traffic summaries of the subtree " +
+                    "did not arrive in time. Sending the summaries of " +
+                    aggregator.getSummary().getNoOfNodes() + " nodes.");
+            sendSummaryAggregate(aggregator);
+        }
+    }
+
+    private void sendSummaryAggregate(TrafficSummaryAggregator aggregator) {
+        try {
+            aggregator.getParentConnection().sendData(aggregator.getSummary().getBytes());
+        } catch (IOException e) {
+            logger.error(e.getStackTrace());
+        }
+    }
+
+    private void requestShortcut(int destinationId) {
+        OverlayNodeRequestsNodeAddress addressRequest = new OverlayNodeRequestsNodeAddress();
+        addressRequest.setNodeId(nodeId);
+        addressRequest.setRequestedNodeId(destinationId);
+        try {
+            registryConnection.sendData(addressRequest.getBytes());
+        } catch (IOException e) {
+            logger.error(e.getStackTrace());
+            shortcuts.cancelRequest(destinationId);
+        }
+    }
+
+    /**
+     * byte: Message type; REGISTRY_RESPONDS_TO_NODE_ADDRESS_REQUEST
+     * int: Node ID whose address was requested
+     * byte: length of following "IP address" field; 0 if the node is not registered
+     * byte[^^]: IP address of the node
+     * int: Port number the node listens on
+     */
+    private void handleRegistryRespondsToNodeAddressRequest(Event event) {
+        RegistryRespondsToNodeAddressRequest response =
+                (RegistryRespondsToNodeAddressRequest) event;
+        int destinationId = response.getNodeId();
+        RoutingSnapshot snapshot = routingSnapshot;
+        if (response.getIpAddressLength() == 0 || snapshot == null ||
+                snapshot.getRoutingTable().containsNodeId(destinationId)) {
+            shortcuts.cancelRequest(destinationId);
+            return;
+        }
+        try {
+            Socket socket = new Socket(InetAddress.getByAddress(response.getIpAddress()),
+                    response.getPort());
+            TCPConnection tcpConnection = new TCPConnection(socket, this);
+            tcpConnection.setPeerNodeId(destinationId);
+            tcpConnectionsCache.addConnection(socket, tcpConnection);
+            shortcuts.put(destinationId, tcpConnection);
+            logger.info("Opened shortcut to node " + destinationId);
+        } catch (IOException e) {
+            logger.error(e.getStackTrace());
+            shortcuts.cancelRequest(destinationId);
+        }
+    }
+
+    /**
+     * Sets the maximum number of shortcuts, closing the least recently used ones if there
+     * are more. A budget of 0 turns shortcuts off.
+     */
+    public void setShortcutBudget(int budget) {
+        shortcuts.setBudget(budget);
+        System.out.println("Shortcut budget set to " + shortcuts.getBudget());
+    }
+
+    /**
+     * Returns the candidate finger whose connection has the fewest sends in progress. Ties
+     * are broken starting from a random candidate so that idle links share the load.
+     */
+    private int selectLeastLoadedFinger(RoutingTable routingTable, int[] candidates,
+                                        int defaultFinger) {
+        if (candidates.length < 2) {
+            return defaultFinger;
+        }
+        int start = ThreadLocalRandom.current().nextInt(candidates.length);
+        int bestFinger = defaultFinger;
+        int bestQueueDepth = Integer.MAX_VALUE;
+        for (int i = 0; i < candidates.length; i++) {
+            int candidate = candidates[(start + i) % candidates.length];
+            TCPConnection tcpConnection = routingTable.getConnection(candidate);
+            if (tcpConnection != null && tcpConnection.getPendingSends() < bestQueueDepth) {
+                bestFinger = candidate;
+                bestQueueDepth = tcpConnection.getPendingSends();
             }
-            Socket socket = connectedNodeIdSocketMap.get(nodeToSend);
-            TCPConnection tcpConnection = tcpConnectionsCache.getConnection(socket);
+        }
+        return bestFinger;
+    }
+
+    /**
+     * Swaps in a new routing snapshot, whatever snapshot is current, e.g. for a new manifest.
+     */
+    private synchronized void publishRoutingSnapshot(RoutingSnapshot snapshot) {
+        routingSnapshot = snapshot;
+    }
+
+    /**
+     * Swaps in a snapshot derived from an older one, e.g. with new link latencies, only if no
+     * other snapshot was published in the meantime. Manifests and link latency updates are
+     * published from different threads, so this keeps a stale update from undoing a manifest.
+     */
+    private synchronized void replaceRoutingSnapshot(RoutingSnapshot current,
+                                                     RoutingSnapshot replacement) {
+        if (routingSnapshot == current) {
+            routingSnapshot = replacement;
+        }
+    }
+
+    /**
+     * Periodically measures the RTT to every node in the routing table and, with proximity
+     * routing on, republishes the routing snapshot so that next hops reflect the new RTTs.
+     * Evicted shortcuts that were still busy when they were evicted are closed here once
+     * they have drained.
+     */
+    private void probeLinks() {
+        while (true) {
             try {
-                tcpConnection.sendData(nodeSendsDataEvent.getBytes());
+                Thread.sleep(Constants.LINK_PROBE_INTERVAL_MS);
+            } catch (InterruptedException e) {
+                return;
+            }
+            shortcuts.closeIdleRetired();
+            RoutingSnapshot snapshot = routingSnapshot;
+            if (snapshot == null) {
+                continue;
+            }
+            RoutingTable routingTable = snapshot.getRoutingTable();
+            for (int i = 0; i < routingTable.size(); i++) {
+                TCPConnection tcpConnection = routingTable.getConnection(i);
+                if (tcpConnection == null) {
+                    continue;
+                }
+                OverlayNodeSendsProbe probe = new OverlayNodeSendsProbe();
+                probe.setTimestamp(System.nanoTime());
+                try {
+                    tcpConnection.sendData(probe.getBytes());
+                } catch (IOException e) {
+                    logger.error(e.getStackTrace());
+                }
+            }
+            if (proximityRouting) {
+                replaceRoutingSnapshot(snapshot, snapshot.withLinkLatencies(linkLatencies,
+                        getRoutingHopSlack()));
+            }
+        }
+    }
+
+    /**
+     * Periodically exchanges timestamps with the registry to keep the clock offset estimate
+     * up to date, e.g. as the local clock drifts.
+     */
+    private void synchronizeClock() {
+        while (true) {
+            OverlayNodeRequestsClockSync request = new OverlayNodeRequestsClockSync();
+            request.setOriginateTimestamp(WallClock.currentTimeNanos());
+            try {
+                registryConnection.sendData(request.getBytes());
             } catch (IOException e) {
                 logger.error(e.getStackTrace());
             }
+            try {
+                Thread.sleep(Constants.CLOCK_SYNC_INTERVAL_MS);
+            } catch (InterruptedException e) {
+                return;
+            }
+        }
+    }
+
+    private void handleRegistryRespondsToClockSync(Event event) {
+        long destinationTimestamp = WallClock.currentTimeNanos();
+        RegistryRespondsToClockSync response = (RegistryRespondsToClockSync) event;
+        clockOffset.recordSample(response.getOriginateTimestamp(),
+                response.getReceiveTimestamp(), response.getTransmitTimestamp(),
+                destinationTimestamp);
+    }
+
+    private void respondToOverlayNodeSendsProbe(Event event) {
+        OverlayNodeSendsProbe probe = (OverlayNodeSendsProbe) event;
+        OverlayNodeRespondsToProbe response = new OverlayNodeRespondsToProbe();
+        response.setNodeId(nodeId);
+        response.setTimestamp(probe.getTimestamp());
+
+        TCPConnection tcpConnection = tcpConnectionsCache.getConnection(probe.getSocket());
+        if (tcpConnection == null) {
+            logger.warn("Received a probe on an unknown connection");
+            return;
+        }
+        try {
+            tcpConnection.sendData(response.getBytes());
+        } catch (IOException e) {
+            logger.error(e.getStackTrace());
+        }
+    }
+
+    private void handleOverlayNodeRespondsToProbe(Event event) {
+        OverlayNodeRespondsToProbe response = (OverlayNodeRespondsToProbe) event;
+        linkLatencies.recordRtt(response.getNodeId(), System.nanoTime() - response.getTimestamp());
+    }
+
+    /**
+     * Turns proximity routing on or off and resets the next hop latency statistics so that
+     * they describe only the new mode.
+     */
+    public void setProximityRouting(boolean enabled) {
+        proximityRouting = enabled;
+        nextHopLatencyHistogram.reset();
+        rebuildRoutingSnapshot();
+        System.out.println("Proximity routing " + (enabled ? "enabled" : "disabled"));
+    }
 
-            relayTracker.getAndIncrement();
+    /**
+     * Turns multipath relaying on or off. With multipath on, packets are spread over all
+     * fingers within the hop budget, preferring the one with the fewest pending sends.
+     */
+    public void setMultipathRouting(boolean enabled) {
+        multipathRouting = enabled;
+        rebuildRoutingSnapshot();
+        System.out.println("Multipath routing " + (enabled ? "enabled" : "disabled"));
+    }
+
+    /**
+     * Sets the number of threads decoding and routing data packets.
+     */
+    public void setRelayThreads(int decodeThreads, int routeThreads) {
+        decodeStage.setNoOfThreads(decodeThreads);
+        routeStage.setNoOfThreads(routeThreads);
+        System.out.println("Relay pipeline: " + decodeStage + "; " + routeStage);
+    }
+
+    private void rebuildRoutingSnapshot() {
+        RoutingSnapshot snapshot = routingSnapshot;
+        if (snapshot != null) {
+            replaceRoutingSnapshot(snapshot, snapshot.withLinkLatencies(
+                    proximityRouting ? linkLatencies : null, getRoutingHopSlack()));
         }
     }
 
+    /**
+     * Packets only take detours when proximity or multipath routing is on.
+     */
+    private int getRoutingHopSlack() {
+        return proximityRouting || multipathRouting ? Constants.ROUTING_HOP_SLACK : 0;
+    }
+
     public void exitOverlay() throws IOException {
         sendDeregistrationRequestToRegistry();
     }
 
     public void printRoutingTable() {
+        RoutingSnapshot snapshot = routingSnapshot;
+        if (snapshot == null) {
+            System.out.println("Routing table has not been received from the registry");
+            return;
+        }
         System.out.println("Routing Table for node " + getNodeId());
-        routingTable.printRoutingTable();
+        snapshot.getRoutingTable().printRoutingTable();
+    }
+
+    /**
+     * Prints a live view of the node. Rates are measured from two snapshots of the counters
+     * and the JVM taken a moment apart, so nothing on the data path is paused or locked and
+     * this can be run while a task is under way.
+     */
+    public void printCountersAndDiagnostics() {
+        TrafficCounters.Snapshot earlierCounters = trafficCounters.snapshot();
+        RuntimeDiagnostics earlierRuntime = RuntimeDiagnostics.take();
+        try {
+            Thread.sleep(Constants.DIAGNOSTICS_SAMPLE_MS);
+        } catch (InterruptedException e) {
+            logger.error(e.getStackTrace());
+            return;
+        }
+        TrafficCounters.Snapshot counters = trafficCounters.snapshot();
+        RuntimeDiagnostics runtime = RuntimeDiagnostics.take();
+        double seconds = (runtime.getTimeNanos() - earlierRuntime.getTimeNanos()) / 1e9;
+
+        System.out.println("Node ID: " + nodeId);
+        System.out.println("Packets sent: " + counters.getPacketsSent());
+        System.out.println("Packets received: " + counters.getPacketsReceived());
+        System.out.println("Packets relayed: " + counters.getPacketsRelayed());
+        // counters reset in between count from 0, so a rate is never negative
+        System.out.printf("Rates over the last %.1f s: %.0f packets/s sent, %.0f received, " +
+                        "%.0f relayed; %.2f MB/s of payload sent, %.2f received%n", seconds,
+                rate(counters.getPacketsSent(), earlierCounters.getPacketsSent(), seconds),
+                rate(counters.getPacketsReceived(), earlierCounters.getPacketsReceived(),
+                        seconds),
+                rate(counters.getPacketsRelayed(), earlierCounters.getPacketsRelayed(), seconds),
+                rate(counters.getPayloadBytesSent(), earlierCounters.getPayloadBytesSent(),
+                        seconds) / 1e6,
+                rate(counters.getPayloadBytesReceived(),
+                        earlierCounters.getPayloadBytesReceived(), seconds) / 1e6);
+        System.out.println("Messages missing chunks: " + chunkReassembler.getIncompleteMessages());
+        System.out.println("Hop counts of received packets: " + hopCountHistogram);
+        System.out.printf("Mean hops: %.2f, max hops: %d, packets over the hop bound: %d%n",
+                hopCountHistogram.getMean(), hopCountHistogram.getMax(),
+                hopCountHistogram.getBoundViolations());
+        System.out.println("Next hop link latency (proximity routing " +
+                (proximityRouting ? "on" : "off") + "): " +
+                nextHopLatencyHistogram.toPercentileString());
+        System.out.println("Multipath routing: " + (multipathRouting ? "on" : "off"));
+        System.out.println("Relay pipeline: " + decodeStage + "; " + routeStage);
+        if (roundTripLatencyHistogram.getTotalCount() > 0) {
+            System.out.println("Round trip latency (closed loop): " +
+                    roundTripLatencyHistogram.toPercentileString());
+        }
+        if (clockOffset.isSynchronized()) {
+            System.out.printf("Clock offset to the registry: %.3f ms (round trip %.3f ms)%n",
+                    clockOffset.getOffsetNanos() / 1e6, clockOffset.getRttNanos() / 1e6);
+        } else {
+            System.out.println("Clock offset to the registry: not synchronized yet");
+        }
+        if (endToEndLatencyHistogram.getTotalCount() > 0) {
+            System.out.println("End-to-end latency of packets received since the last " +
+                    "reset: " + endToEndLatencyHistogram.toPercentileString());
+            System.out.println("Latency per hop: " + perHopLatencyHistogram.toPercentileString());
+        }
+        shortcuts.printShortcuts();
+        RoutingSnapshot snapshot = routingSnapshot;
+        if (snapshot != null) {
+            snapshot.printRoutingMetrics();
+        } else {
+            System.out.println("Routing table has not been received from the registry");
+        }
+        printLinkCounters(counters, earlierCounters, seconds,
+                snapshot == null ? null : snapshot.getRoutingTable());
+        runtime.print(earlierRuntime);
+    }
+
+    private static double rate(long count, long earlierCount, double seconds) {
+        return (count >= earlierCount ? count - earlierCount : count) / seconds;
+    }
+
+    /**
+     * Prints the data packets carried by every link this node has used, fingers and
+     * shortcuts alike, with their current throughput. Queue depths are only known for the
+     * links in the routing table.
+     */
+    private void printLinkCounters(TrafficCounters.Snapshot counters,
+                                   TrafficCounters.Snapshot earlierCounters, double seconds,
+                                   RoutingTable routingTable) {
+        HashMap<Integer, TrafficCounters.LinkSnapshot> earlierLinks = new HashMap<>();
+        for (TrafficCounters.LinkSnapshot link : earlierCounters.getLinks()) {
+            earlierLinks.put(link.getPeerId(), link);
+        }
+        System.out.printf("%-10s %-10s %-10s %-14s %-10s %-14s %-10s %-10s %s%n", "NODE ID",
+                "SENT", "RELAYED", "BYTES SENT", "RECEIVED", "BYTES RECV", "MB/S OUT",
+                "MB/S IN", "QUEUE DEPTH");
+        for (TrafficCounters.LinkSnapshot link : counters.getLinks()) {
+            int position = routingTable == null ? -1 : routingTable.indexOf(link.getPeerId());
+            TCPConnection tcpConnection = position == -1 ? null :
+                    routingTable.getConnection(position);
+            TrafficCounters.LinkSnapshot earlierLink = earlierLinks.get(link.getPeerId());
+            System.out.printf("%-10s %-10s %-10s %-14s %-10s %-14s %-10.3f %-10.3f %s%n",
+                    link.getPeerId(), link.getPacketsSent(), link.getPacketsRelayed(),
+                    link.getBytesSent(), link.getPacketsReceived(), link.getBytesReceived(),
+                    rate(link.getBytesSent(),
+                            earlierLink == null ? 0 : earlierLink.getBytesSent(), seconds) / 1e6,
+                    rate(link.getBytesReceived(),
+                            earlierLink == null ? 0 : earlierLink.getBytesReceived(),
+                            seconds) / 1e6,
+                    tcpConnection == null ? "-" : tcpConnection.getPendingSends());
+        }
     }
 
     public void printNodeId() {
         System.out.println("Node ID: " + nodeId);
     }
+
+    private static final class RoundSummary {
+        private final TrafficCounters.Snapshot counters;
+        private final LatencyHistogram endToEndLatency;
+        private final LatencyHistogram perHopLatency;
+
+        private RoundSummary(TrafficCounters.Snapshot counters,
+                             LatencyHistogram endToEndLatency, LatencyHistogram perHopLatency) {
+            this.counters = counters;
+            this.endToEndLatency = endToEndLatency;
+            this.perHopLatency = perHopLatency;
+        }
+    }
+
+    private class Metrics implements MessagingNodeMXBean {
+        @Override
+        public int getNodeId() {
+            return nodeId;
+        }
+
+        @Override
+        public long getPacketsSent() {
+            return trafficCounters.snapshot().getPacketsSent();
+        }
+
+        @Override
+        public long getPacketsReceived() {
+            return trafficCounters.snapshot().getPacketsReceived();
+        }
+
+        @Override
+        public long getPacketsRelayed() {
+            return trafficCounters.snapshot().getPacketsRelayed();
+        }
+
+        @Override
+        public long getPayloadBytesSent() {
+            return trafficCounters.snapshot().getPayloadBytesSent();
+        }
+
+        @Override
+        public long getPayloadBytesReceived() {
+            return trafficCounters.snapshot().getPayloadBytesReceived();
+        }
+
+        @Override
+        public long getLinkTransmissions() {
+            return trafficCounters.getTransmissions();
+        }
+
+        @Override
+        public long getLinkReceptions() {
+            return trafficCounters.getReceptions();
+        }
+
+        @Override
+        public int getSendQueueDepth() {
+            int depth = 0;
+            for (TCPConnection tcpConnection : getRoutingTableConnections()) {
+                depth += tcpConnection.getPendingSends();
+            }
+            return depth;
+        }
+
+        @Override
+        public int getMaxSendQueueDepth() {
+            int maxDepth = 0;
+            for (TCPConnection tcpConnection : getRoutingTableConnections()) {
+                maxDepth = Math.max(maxDepth, tcpConnection.getPendingSends());
+            }
+            return maxDepth;
+        }
+
+        private List<TCPConnection> getRoutingTableConnections() {
+            List<TCPConnection> connections = new ArrayList<>();
+            RoutingSnapshot snapshot = routingSnapshot;
+            if (snapshot != null) {
+                RoutingTable routingTable = snapshot.getRoutingTable();
+                for (int i = 0; i < routingTable.size(); i++) {
+                    if (routingTable.getConnection(i) != null) {
+                        connections.add(routingTable.getConnection(i));
+                    }
+                }
+            }
+            return connections;
+        }
+
+        @Override
+        public int getRelayDecodeQueueDepth() {
+            return decodeStage.getQueueDepth();
+        }
+
+        @Override
+        public int getRelayRouteQueueDepth() {
+            return routeStage.getQueueDepth();
+        }
+
+        @Override
+        public int getConnections() {
+            return tcpConnectionsCache.size();
+        }
+
+        @Override
+        public int getIncompleteMessages() {
+            return chunkReassembler.getIncompleteMessages();
+        }
+
+        @Override
+        public long getEndToEndLatencyCount() {
+            return endToEndLatencyHistogram.getTotalCount();
+        }
+
+        @Override
+        public long getEndToEndLatencyP50Nanos() {
+            return endToEndLatencyHistogram.getValueAtPercentile(50);
+        }
+
+        @Override
+        public long getEndToEndLatencyP99Nanos() {
+            return endToEndLatencyHistogram.getValueAtPercentile(99);
+        }
+
+        @Override
+        public long getEndToEndLatencyP999Nanos() {
+            return endToEndLatencyHistogram.getValueAtPercentile(99.9);
+        }
+
+        @Override
+        public long getEndToEndLatencyMaxNanos() {
+            return endToEndLatencyHistogram.getMaxValue();
+        }
+
+        @Override
+        public long getPerHopLatencyP50Nanos() {
+            return perHopLatencyHistogram.getValueAtPercentile(50);
+        }
+
+        @Override
+        public long getPerHopLatencyP99Nanos() {
+            return perHopLatencyHistogram.getValueAtPercentile(99);
+        }
+
+        @Override
+        public long getRoundTripLatencyP99Nanos() {
+            return roundTripLatencyHistogram.getValueAtPercentile(99);
+        }
+
+        @Override
+        public long getClockOffsetNanos() {
+            return clockOffset.getOffsetNanos();
+        }
+
+        @Override
+        public long getClockRttNanos() {
+            return clockOffset.getRttNanos();
+        }
+    }
 }
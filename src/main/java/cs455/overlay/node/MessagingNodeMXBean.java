@@ -0,0 +1,62 @@
+package cs455.overlay.node;
+
+/**
+ * Counters and gauges of a messaging node, published over JMX and the metrics endpoint.
+ * Packet counts are those of the current round; latencies are in nanoseconds.
+ */
+public interface MessagingNodeMXBean {
+    int getNodeId();
+
+    long getPacketsSent();
+
+    long getPacketsReceived();
+
+    long getPacketsRelayed();
+
+    long getPayloadBytesSent();
+
+    long getPayloadBytesReceived();
+
+    /**
+     * Packets put on and taken off links since the node started, relays included.
+     */
+    long getLinkTransmissions();
+
+    long getLinkReceptions();
+
+    /**
+     * Packets waiting to be sent on the links of the routing table, in total and on the
+     * busiest one.
+     */
+    int getSendQueueDepth();
+
+    int getMaxSendQueueDepth();
+
+    int getRelayDecodeQueueDepth();
+
+    int getRelayRouteQueueDepth();
+
+    int getConnections();
+
+    int getIncompleteMessages();
+
+    long getEndToEndLatencyCount();
+
+    long getEndToEndLatencyP50Nanos();
+
+    long getEndToEndLatencyP99Nanos();
+
+    long getEndToEndLatencyP999Nanos();
+
+    long getEndToEndLatencyMaxNanos();
+
+    long getPerHopLatencyP50Nanos();
+
+    long getPerHopLatencyP99Nanos();
+
+    long getRoundTripLatencyP99Nanos();
+
+    long getClockOffsetNanos();
+
+    long getClockRttNanos();
+}
@@ -1,7 +1,25 @@
 package cs455.overlay.node;
 
+import java.net.Socket;
+
 import cs455.overlay.wireformats.Event;
 
 public interface Node {
     void onEvent(Event event);
+
+    /**
+     * Gives the node a message before it is decoded. Returns true if the node takes care of
+     * it, e.g. by queueing it for its own decoding threads, and false to have it decoded
+     * and passed to onEvent on the receiving thread.
+     */
+    default boolean offerMessage(byte[] data, Socket socket) {
+        return false;
+    }
+
+    /**
+     * Called for every queued message a connection drops without sending, e.g. because it
+     * was closed while the message was waiting.
+     */
+    default void onMessageDropped(byte messageType) {
+    }
 }
@@ -7,32 +7,57 @@ import java.util.Arrays;
 import java.util.Collection;
 import java.util.Collections;
 import java.util.HashMap;
+import java.util.HashSet;
 import java.util.Random;
 import java.util.Set;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicInteger;
 import java.util.concurrent.atomic.AtomicLong;
+import java.util.stream.IntStream;
 
+import cs455.overlay.routing.FingerRingTopology;
+import cs455.overlay.routing.FingerRouting;
+import cs455.overlay.routing.OverlayTopologies;
+import cs455.overlay.routing.OverlayTopology;
 import cs455.overlay.routing.RoutingEntry;
 import cs455.overlay.routing.RoutingTable;
+import cs455.overlay.routing.TopologyEvaluation;
 import cs455.overlay.transport.TCPConnection;
 import cs455.overlay.transport.TCPConnectionsCache;
 import cs455.overlay.transport.TCPServerThread;
 import cs455.overlay.util.Constants;
 import cs455.overlay.util.InteractiveCommandParser;
+import cs455.overlay.util.LatencyHistogram;
+import cs455.overlay.util.MetricsEndpoint;
 import cs455.overlay.util.StatisticsCollectorAndDisplay;
+import cs455.overlay.util.WallClock;
 import cs455.overlay.wireformats.Event;
 import cs455.overlay.wireformats.NodeReportsOverlaySetupStatus;
+import cs455.overlay.wireformats.OverlayNodeReportsAggregatedTrafficSummary;
 import cs455.overlay.wireformats.OverlayNodeReportsTaskFinished;
+import cs455.overlay.wireformats.OverlayNodeReportsTrafficCounters;
 import cs455.overlay.wireformats.OverlayNodeReportsTrafficSummary;
+import cs455.overlay.wireformats.OverlayNodeReportsTrafficSummaryV2;
+import cs455.overlay.wireformats.OverlayNodeRequestsClockSync;
+import cs455.overlay.wireformats.OverlayNodeRequestsNodeAddress;
 import cs455.overlay.wireformats.OverlayNodeSendsDeregistration;
 import cs455.overlay.wireformats.OverlayNodeSendsRegistration;
 import cs455.overlay.wireformats.Protocol;
+import cs455.overlay.wireformats.RegistryBroadcastsControlMessage;
 import cs455.overlay.wireformats.RegistryReportsDeregistrationStatus;
 import cs455.overlay.wireformats.RegistryReportsRegistrationStatus;
 import cs455.overlay.wireformats.RegistryRequestsTaskInitiate;
+import cs455.overlay.wireformats.RegistryRequestsTrafficCounters;
 import cs455.overlay.wireformats.RegistryRequestsTrafficSummary;
+import cs455.overlay.wireformats.RegistryRespondsToClockSync;
+import cs455.overlay.wireformats.RegistryRespondsToNodeAddressRequest;
 import cs455.overlay.wireformats.RegistrySendsNodeManifest;
+import cs455.overlay.workload.Workload;
 import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
 
@@ -47,10 +72,49 @@ public class Registry implements Node {
     private volatile ConcurrentHashMap<Integer, RoutingTable> routingTables;
     private volatile ConcurrentHashMap<Integer, Integer> registeredNodeListeningPortMap;
     private volatile int noOfConfirmedOverlayNodes = 0;
+    // counted down by every node reporting its overlay setup status
+    private volatile CountDownLatch overlayReadyLatch;
+
+    // sorted IDs of the nodes in the current overlay and whether every node has a finger to
+    // its successor, which the broadcast tree needs to reach every node
+    private volatile int[] overlayNodeIds;
+    private volatile boolean overlayHasSuccessors;
+    private volatile boolean broadcastTree;
+    // whether nodes combine their traffic summaries up the broadcast tree
+    private volatile boolean summaryAggregation;
+
+    // when the registry last asked nodes to start, and when the first and last node started
+    private long taskInitiateTimeNanos;
+    // from the task initiate to the overlay going quiet
+    private long roundDurationNanos;
+    private long firstTaskStartTimeNanos;
+    private long lastTaskStartTimeNanos;
     private volatile int noOfTaskFinishedNodes = 0;
+    // finished nodes that do not answer counter requests, so quiescence cannot be detected
+    private int noOfLegacyFinishedNodes;
+    // quiescence detection: link counter totals of the current and the previous wave
+    private ScheduledExecutorService quiescenceDetector;
+    private long allTasksFinishedTimeNanos;
+    private int counterWave;
+    private int noOfCounterReportedNodes;
+    private long waveLinkSends;
+    private long waveLinkReceives;
+    private long previousWaveLinkSends;
     private volatile int noOfSummaryReportedNodes = 0;
+    private long summaryRequestTimeNanos;
+    // summary collection: which nodes finished the round and which have been reported, so
+    // that the ones lost on their way up the broadcast tree can be asked directly
+    private final Set<Integer> finishedNodeIds = new HashSet<>();
+    private final Set<Integer> reportedNodeIds = new HashSet<>();
+    private final Set<Integer> directlyRequestedNodeIds = new HashSet<>();
+    private boolean unlistedSummaries;
+    private boolean collectingSummaries;
+    private int summaryRound;
+    // nodes asked for their own traffic summary outside of a collection round
+    private Set<Integer> pendingNodeSummaryRequests = ConcurrentHashMap.newKeySet();
 
     private StatisticsCollectorAndDisplay statisticsCollector;
+    private volatile RoundMetrics lastRound = new RoundMetrics();
 
     private TCPConnectionsCache tcpConnectionsCache;
 
@@ -62,12 +126,15 @@ public class Registry implements Node {
         registeredNodeSocketMap = new HashMap<>();
         registeredNodeListeningPortMap = new ConcurrentHashMap<>();
         random = new Random();
+        quiescenceDetector = Executors.newSingleThreadScheduledExecutor();
     }
 
     public static void main(String[] args) throws IOException {
         int port = Integer.parseInt(args[0]);
         Registry registry = new Registry(port);
         registry.tcpServerThread.start();
+        MetricsEndpoint.register("Registry", registry.new Metrics());
+        MetricsEndpoint.startIfConfigured();
         registry.commandParser.start();
     }
 
@@ -89,37 +156,162 @@ public class Registry implements Node {
             case Protocol.OVERLAY_NODE_REPORTS_TRAFFIC_SUMMARY:
                 respondToOverlayNodeReportsTrafficSummary(event);
                 break;
+            case Protocol.OVERLAY_NODE_REPORTS_TRAFFIC_SUMMARY_V2:
+                respondToOverlayNodeReportsTrafficSummaryV2(event);
+                break;
+            case Protocol.OVERLAY_NODE_REPORTS_AGGREGATED_TRAFFIC_SUMMARY:
+                respondToOverlayNodeReportsAggregatedTrafficSummary(event);
+                break;
             case Protocol.OVERLAY_NODE_REPORTS_TASK_FINISHED:
                 respondToOverlayNodeReportsTaskFinished(event);
                 break;
+            case Protocol.OVERLAY_NODE_REPORTS_TRAFFIC_COUNTERS:
+                respondToOverlayNodeReportsTrafficCounters(event);
+                break;
+            case Protocol.OVERLAY_NODE_REQUESTS_NODE_ADDRESS:
+                respondToOverlayNodeRequestsNodeAddress(event);
+                break;
+            case Protocol.OVERLAY_NODE_REQUESTS_CLOCK_SYNC:
+                respondToOverlayNodeRequestsClockSync(event);
+                break;
             default:
                 logger.warn("Unknown event type: " + type);
         }
     }
 
     public void start(int noOfPacketsToSend) {
-        if (overlaySetup) {
-            requestTaskInitiate(noOfPacketsToSend);
-        } else {
+        start(noOfPacketsToSend, 0, false, 0, 0, new Workload());
+    }
+
+    /**
+     * Asks every node to send packets, at packetsPerSecond each if it is not 0. In closed
+     * loop mode a node has at most window packets in flight, waiting for each to be
+     * acknowledged before sending another. Nodes split their packets over generatorThreads
+     * threads, or one per core if it is 0, and pick destinations and payload sizes as the
+     * workload says.
+     */
+    public void start(int noOfPacketsToSend, int packetsPerSecond, boolean closedLoop,
+                      int window, int generatorThreads, Workload workload) {
+        if (!overlaySetup) {
             logger.warn("Overlay has not been set up. Cannot start sending messages.");
+            return;
         }
+        if (workload.getTargetNodeId() != -1 &&
+                workload.getTargetPosition(overlayNodeIds) == -1) {
+            System.out.println("Node " + workload.getTargetNodeId() + " is not in the overlay.");
+            return;
+        }
+        System.out.println("Starting " + noOfPacketsToSend + " packets per node, workload " +
+                workload);
+        requestTaskInitiate(noOfPacketsToSend, packetsPerSecond, closedLoop, window,
+                generatorThreads, workload);
     }
 
-    private void requestTaskInitiate(int noOfPacketsToSend) {
+    private void requestTaskInitiate(int noOfPacketsToSend, int packetsPerSecond,
+                                     boolean closedLoop, int window, int generatorThreads,
+                                     Workload workload) {
         RegistryRequestsTaskInitiate taskInitiateEvent = new RegistryRequestsTaskInitiate();
         taskInitiateEvent.setNoOfPacketsToSend(noOfPacketsToSend);
+        taskInitiateEvent.setPacketsPerSecond(packetsPerSecond);
+        taskInitiateEvent.setClosedLoop(closedLoop);
+        taskInitiateEvent.setWindow(window);
+        taskInitiateEvent.setGeneratorThreads(generatorThreads);
+        taskInitiateEvent.setWorkload(workload);
+
+        synchronized (this) {
+            taskInitiateTimeNanos = WallClock.currentTimeNanos();
+            firstTaskStartTimeNanos = Long.MAX_VALUE;
+            lastTaskStartTimeNanos = Long.MIN_VALUE;
+            noOfLegacyFinishedNodes = 0;
+            finishedNodeIds.clear();
+        }
+        sendControlMessage(taskInitiateEvent);
+    }
+
+    /**
+     * Sends a message to every registered node, either directly or, with the broadcast tree
+     * on, to a few roots that pass it on over their fingers in O(log N) steps.
+     */
+    private void sendControlMessage(Event event) {
+        byte[] message = event.getBytes();
+        int[] nodeIds = overlayNodeIds;
+        if (usesBroadcastTree()) {
+            // split the ring evenly among the roots; each root covers the nodes up to the next
+            int noOfRoots = Math.min(Constants.BROADCAST_TREE_ROOTS, nodeIds.length);
+            for (int root = 0; root < noOfRoots; root++) {
+                int start = root * nodeIds.length / noOfRoots;
+                int end = (root + 1) * nodeIds.length / noOfRoots;
+                RegistryBroadcastsControlMessage broadcast =
+                        new RegistryBroadcastsControlMessage();
+                broadcast.setSpan(end - start);
+                broadcast.setDepth(1);
+                broadcast.setMessage(message);
+                sendToNode(broadcast.getBytes(), registeredNodeSocketMap.get(nodeIds[start]));
+            }
+            return;
+        }
 
         Collection<Socket> allSockets = registeredNodeSocketMap.values();
         for (Socket socket : allSockets) {
-            TCPConnection tcpConnection = tcpConnectionsCache.getConnection(socket);
-            try {
-                tcpConnection.sendData(taskInitiateEvent.getBytes());
-            } catch (IOException e) {
-                logger.error(e.getStackTrace());
-            }
+            sendToNode(message, socket);
         }
     }
 
+    private boolean usesBroadcastTree() {
+        int[] nodeIds = overlayNodeIds;
+        return broadcastTree && overlayHasSuccessors && nodeIds != null &&
+                nodeIds.length == registeredNodeSocketMap.size();
+    }
+
+    private void sendToNode(byte[] message, Socket socket) {
+        TCPConnection tcpConnection = tcpConnectionsCache.getConnection(socket);
+        try {
+            tcpConnection.sendData(message);
+        } catch (IOException e) {
+            logger.error(e.getStackTrace());
+        }
+    }
+
+    /**
+     * Turns dissemination of control messages over the overlay on or off. The tree needs
+     * every node to have a finger to its successor, i.e. a ring overlay or successor links.
+     */
+    public void setBroadcastTree(boolean enabled) {
+        broadcastTree = enabled;
+        System.out.println("Broadcast tree " + (enabled ? "enabled" : "disabled"));
+        if (enabled && overlaySetup && !overlayHasSuccessors) {
+            System.out.println("The current overlay has no successor links. Control messages " +
+                    "will be sent directly until an overlay with them is set up.");
+        }
+    }
+
+    /**
+     * Turns combining traffic summaries up the broadcast tree on or off. Aggregated rounds
+     * report one row per root of the tree; use requestNodeSummary for a single node.
+     */
+    public void setSummaryAggregation(boolean enabled) {
+        summaryAggregation = enabled;
+        System.out.println("Summary aggregation " + (enabled ? "enabled" : "disabled"));
+        if (enabled && !broadcastTree) {
+            System.out.println("Summaries are only aggregated with the broadcast tree on.");
+        }
+    }
+
+    /**
+     * Asks one node for its traffic summary of the last round.
+     */
+    public void requestNodeSummary(int nodeId) {
+        Socket socket = registeredNodeSocketMap.get(nodeId);
+        if (socket == null) {
+            System.out.println("Node " + nodeId + " is not registered.");
+            return;
+        }
+        pendingNodeSummaryRequests.add(nodeId);
+        RegistryRequestsTrafficSummary request = new RegistryRequestsTrafficSummary();
+        request.setSummaryVersion(Constants.TRAFFIC_SUMMARY_VERSION);
+        sendToNode(request.getBytes(), socket);
+    }
+
     public void listMessagingNodes() {
         ArrayList<Integer> nodeIds = new ArrayList<>(registeredNodeSocketMap.keySet());
         System.out.println("No. of Nodes: " + nodeIds.size());
@@ -140,54 +332,250 @@ public class Registry implements Node {
 
         if (registeredNodeSocketMap.containsKey(receivedNodeId)) {
             noOfTaskFinishedNodes++;
+            finishedNodeIds.add(receivedNodeId);
+            long taskStartTime = taskFinishedEvent.getTaskStartTimeNanos();
+            if (taskStartTime != 0) {
+                firstTaskStartTimeNanos = Math.min(firstTaskStartTimeNanos, taskStartTime);
+                lastTaskStartTimeNanos = Math.max(lastTaskStartTimeNanos, taskStartTime);
+            }
+            if (taskFinishedEvent.getSummaryVersion() < Constants.TRAFFIC_SUMMARY_VERSION) {
+                noOfLegacyFinishedNodes++;
+            }
         } else {
             logger.warn("Node " + receivedNodeId + " is not registered.");
         }
 
-        logger.info("Waiting for all nodes to finish sending messages.");
-        try {
-            Thread.sleep(1000);
-        } catch (InterruptedException e) {
-            logger.error(e.getStackTrace());
-        }
-
-        logger.debug("Waiting complete");
         logger.debug("noOfTaskFinishedNodes: " + noOfTaskFinishedNodes);
         logger.debug("noOfConfirmedOverlayNodes: " + noOfConfirmedOverlayNodes);
         if (noOfTaskFinishedNodes == noOfConfirmedOverlayNodes) {
-            // ready to request traffic summary
+            // packets may still be in flight; wait for the overlay to go quiet
             logger.debug("All nodes have finished sending data.");
-            RegistryRequestsTrafficSummary requestsTrafficSummaryEvent =
-                    new RegistryRequestsTrafficSummary();
+            allTasksFinishedTimeNanos = System.nanoTime();
+            if (noOfLegacyFinishedNodes > 0) {
+                // old nodes never answer the counter waves, so fall back to waiting
+                logger.info(noOfLegacyFinishedNodes + " nodes cannot report link counters. " +
+                        "Requesting traffic summaries after " +
+                        Constants.LEGACY_SUMMARY_DELAY_MS + " ms.");
+                quiescenceDetector.schedule(this::requestTrafficSummariesAfterDelay,
+                        Constants.LEGACY_SUMMARY_DELAY_MS, TimeUnit.MILLISECONDS);
+                return;
+            }
+            counterWave = 0;
+            previousWaveLinkSends = -1;
+            requestTrafficCounters();
+        }
+    }
+
+    private synchronized void requestTrafficSummariesAfterDelay() {
+        roundDurationNanos = WallClock.currentTimeNanos() - taskInitiateTimeNanos;
+        requestTrafficSummaries();
+    }
 
-            statisticsCollector = new StatisticsCollectorAndDisplay(noOfTaskFinishedNodes);
+    /**
+     * Starts the next wave of quiescence detection by asking every node for its link
+     * counters.
+     */
+    private synchronized void requestTrafficCounters() {
+        counterWave++;
+        noOfCounterReportedNodes = 0;
+        waveLinkSends = 0;
+        waveLinkReceives = 0;
 
-            for (Socket socket : registeredNodeSocketMap.values()) {
-                TCPConnection tcpConnection = tcpConnectionsCache.getConnection(socket);
-                try {
-                    tcpConnection.sendData(requestsTrafficSummaryEvent.getBytes());
-                } catch (IOException e) {
-                    logger.error(e.getStackTrace());
-                }
+        RegistryRequestsTrafficCounters countersRequest = new RegistryRequestsTrafficCounters();
+        countersRequest.setWave(counterWave);
+        sendControlMessage(countersRequest);
+    }
+
+    /**
+     * Detects that no data packets are in flight with the four counter method: the overlay
+     * is quiet once the packets received on links in one wave equal the packets sent on
+     * links in the wave before, and no packets were sent in between. Comparing against the
+     * earlier wave means a packet sent after one node reported but received before another
+     * did cannot make the overlay look quiet too early.
+     */
+    private synchronized void respondToOverlayNodeReportsTrafficCounters(Event event) {
+        OverlayNodeReportsTrafficCounters countersEvent =
+                (OverlayNodeReportsTrafficCounters) event;
+        if (countersEvent.getWave() != counterWave) {
+            logger.debug("Ignoring counters from stale wave " + countersEvent.getWave());
+            return;
+        }
+
+        noOfCounterReportedNodes++;
+        waveLinkSends += countersEvent.getPacketsSentOnLinks();
+        waveLinkReceives += countersEvent.getPacketsReceivedOnLinks();
+        if (noOfCounterReportedNodes < noOfTaskFinishedNodes) {
+            return;
+        }
+
+        if (waveLinkSends == previousWaveLinkSends && waveLinkReceives == previousWaveLinkSends) {
+            roundDurationNanos = WallClock.currentTimeNanos() - taskInitiateTimeNanos;
+            System.out.printf("Overlay quiescent %.3f ms after the last node finished " +
+                            "sending (%d counter waves, %.3f ms since the task was initiated)%n",
+                    (System.nanoTime() - allTasksFinishedTimeNanos) / 1e6, counterWave,
+                    roundDurationNanos / 1e6);
+            requestTrafficSummaries();
+            return;
+        }
+
+        previousWaveLinkSends = waveLinkSends;
+        // balanced counters only need confirming, so check again straight away
+        long delay = waveLinkSends == waveLinkReceives ? 0 :
+                Constants.QUIESCENCE_PROBE_INTERVAL_MS;
+        quiescenceDetector.schedule(this::requestTrafficCounters, delay, TimeUnit.MILLISECONDS);
+    }
+
+    private void requestTrafficSummaries() {
+        RegistryRequestsTrafficSummary requestsTrafficSummaryEvent =
+                new RegistryRequestsTrafficSummary();
+        requestsTrafficSummaryEvent.setAggregate(summaryAggregation && usesBroadcastTree());
+        // the overlay is quiet, so no packet of this round can be counted in the next
+        requestsTrafficSummaryEvent.setResetCounters(true);
+        // nodes that only know the first version ignore this and send that
+        requestsTrafficSummaryEvent.setSummaryVersion(Constants.TRAFFIC_SUMMARY_VERSION);
+
+        statisticsCollector = new StatisticsCollectorAndDisplay(noOfTaskFinishedNodes);
+        reportedNodeIds.clear();
+        directlyRequestedNodeIds.clear();
+        unlistedSummaries = false;
+        collectingSummaries = true;
+        int round = ++summaryRound;
+
+        printTaskStartSkew();
+        summaryRequestTimeNanos = System.nanoTime();
+        sendControlMessage(requestsTrafficSummaryEvent);
+        // the roots of the broadcast tree send what they have after
+        // SUMMARY_AGGREGATION_TIMEOUT_MS, so anything still missing after twice that is lost
+        quiescenceDetector.schedule(() -> requestMissingSummaries(round),
+                2 * Constants.SUMMARY_AGGREGATION_TIMEOUT_MS, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Asks the nodes whose summaries have not arrived, e.g. because a link of the broadcast
+     * tree closed, to report straight to the registry. A node that already reported to its
+     * parent sends the same summary again.
+     */
+    private synchronized void requestMissingSummaries(int round) {
+        if (round != summaryRound || !collectingSummaries) {
+            return;
+        }
+        if (unlistedSummaries) {
+            logger.warn("Some subtree summaries do not list their nodes. Cannot tell which " +
+                    "of the " + (noOfTaskFinishedNodes - noOfSummaryReportedNodes) +
+                    " missing summaries to request.");
+            return;
+        }
+        RegistryRequestsTrafficSummary request = new RegistryRequestsTrafficSummary();
+        request.setResetCounters(true);
+        request.setSummaryVersion(Constants.TRAFFIC_SUMMARY_VERSION);
+        byte[] message = request.getBytes();
+        for (int nodeId : finishedNodeIds) {
+            Socket socket = registeredNodeSocketMap.get(nodeId);
+            if (reportedNodeIds.contains(nodeId) || socket == null) {
+                continue;
             }
+            directlyRequestedNodeIds.add(nodeId);
+            sendToNode(message, socket);
+        }
+        System.out.println("Requested " + directlyRequestedNodeIds.size() + " missing " +
+                "traffic summaries directly");
+    }
+
+    private void printTaskStartSkew() {
+        if (lastTaskStartTimeNanos == Long.MIN_VALUE) {
+            return;
         }
+        System.out.printf("Task start skew across %d nodes: %.3f ms (first node started " +
+                        "%.3f ms and last %.3f ms after the request, broadcast tree %s)%n",
+                noOfTaskFinishedNodes,
+                (lastTaskStartTimeNanos - firstTaskStartTimeNanos) / 1e6,
+                (firstTaskStartTimeNanos - taskInitiateTimeNanos) / 1e6,
+                (lastTaskStartTimeNanos - taskInitiateTimeNanos) / 1e6,
+                broadcastTree && overlayHasSuccessors ? "on" : "off");
     }
 
     private synchronized void respondToOverlayNodeReportsTrafficSummary(Event event) {
         OverlayNodeReportsTrafficSummary trafficSummaryEvent =
                 (OverlayNodeReportsTrafficSummary) event;
 
-        noOfSummaryReportedNodes++;
+        if (pendingNodeSummaryRequests.remove(trafficSummaryEvent.getNodeId())) {
+            new StatisticsCollectorAndDisplay(1).add(trafficSummaryEvent);
+            return;
+        }
+
+        reportedNodeIds.add(trafficSummaryEvent.getNodeId());
+        statisticsCollector.add(trafficSummaryEvent);
+        onSummariesReported(1, false);
+    }
+
+    private synchronized void respondToOverlayNodeReportsTrafficSummaryV2(Event event) {
+        OverlayNodeReportsTrafficSummaryV2 trafficSummaryEvent =
+                (OverlayNodeReportsTrafficSummaryV2) event;
+
+        if (pendingNodeSummaryRequests.remove(trafficSummaryEvent.getNodeId())) {
+            new StatisticsCollectorAndDisplay(1).add(trafficSummaryEvent);
+            return;
+        }
 
+        reportedNodeIds.add(trafficSummaryEvent.getNodeId());
         statisticsCollector.add(trafficSummaryEvent);
+        onSummariesReported(1, false);
+    }
+
+    private synchronized void respondToOverlayNodeReportsAggregatedTrafficSummary(Event event) {
+        OverlayNodeReportsAggregatedTrafficSummary aggregatedSummary =
+                (OverlayNodeReportsAggregatedTrafficSummary) event;
+        int[] nodeIds = aggregatedSummary.getNodeIds();
+        if (nodeIds == null) {
+            unlistedSummaries = true;
+        } else {
+            for (int nodeId : nodeIds) {
+                if (directlyRequestedNodeIds.contains(nodeId)) {
+                    // every node of a summary this late has been asked directly
+                    logger.warn("Ignoring the late summary of the subtree of node " +
+                            aggregatedSummary.getNodeId());
+                    return;
+                }
+            }
+            for (int nodeId : nodeIds) {
+                reportedNodeIds.add(nodeId);
+            }
+        }
+
+        statisticsCollector.add(aggregatedSummary);
+        onSummariesReported(aggregatedSummary.getNoOfNodes(), true);
+    }
+
+    private void onSummariesReported(int noOfNodes, boolean aggregated) {
+        noOfSummaryReportedNodes += noOfNodes;
 
         if (noOfSummaryReportedNodes == noOfTaskFinishedNodes) {
+            System.out.printf("Collected the traffic summaries of %d nodes in %.3f ms (%s)%n",
+                    noOfSummaryReportedNodes, (System.nanoTime() - summaryRequestTimeNanos) / 1e6,
+                    aggregated ? "aggregated over the broadcast tree" : "reported directly");
+            lastRound = new RoundMetrics(lastRound.roundsCompleted + 1, roundDurationNanos,
+                    lastTaskStartTimeNanos == Long.MIN_VALUE ? 0 :
+                            lastTaskStartTimeNanos - firstTaskStartTimeNanos,
+                    System.nanoTime() - summaryRequestTimeNanos, statisticsCollector);
+            printThroughput();
             // clear counters for next iteration
+            collectingSummaries = false;
             noOfTaskFinishedNodes = 0;
             noOfSummaryReportedNodes = 0;
         }
     }
 
+    private void printThroughput() {
+        if (roundDurationNanos <= 0) {
+            return;
+        }
+        double seconds = roundDurationNanos / 1e9;
+        System.out.printf("Throughput: %.0f packets/s, %.3f MB/s of payload over %.3f s%n",
+                statisticsCollector.getGrandTotalReceived() / seconds,
+                statisticsCollector.getGrandTotalPayloadBytesReceived() / seconds / 1e6, seconds);
+        roundDurationNanos = 0;
+    }
+
     private void respondToNodeReportsOverlaySetupStatus(Event event) {
         NodeReportsOverlaySetupStatus overlaySetupStatusEvent = (NodeReportsOverlaySetupStatus) event;
 
@@ -204,6 +592,11 @@ public class Registry implements Node {
             logger.warn("Node " + successStatus + " not found in registered messaging " +
                     "nodes");
         }
+        // failed nodes also count as having answered, so setup completes either way
+        CountDownLatch readyLatch = overlayReadyLatch;
+        if (readyLatch != null) {
+            readyLatch.countDown();
+        }
 
         if (noOfConfirmedOverlayNodes == registeredNodeSocketMap.size()) {
             logger.info("Registry now ready to initiate tasks.");
@@ -211,6 +604,62 @@ public class Registry implements Node {
     }
 
 
+    /**
+     * Sends a node the address of another registered node it wants to open a shortcut to.
+     * An empty address means the node is not registered.
+     */
+    private void respondToOverlayNodeRequestsNodeAddress(Event event) {
+        OverlayNodeRequestsNodeAddress addressRequest = (OverlayNodeRequestsNodeAddress) event;
+        int requestedNodeId = addressRequest.getRequestedNodeId();
+
+        RegistryRespondsToNodeAddressRequest responseEvent =
+                new RegistryRespondsToNodeAddressRequest();
+        responseEvent.setNodeId(requestedNodeId);
+        Socket requestedNodeSocket = registeredNodeSocketMap.get(requestedNodeId);
+        Integer requestedNodePort = registeredNodeListeningPortMap.get(requestedNodeId);
+        if (requestedNodeSocket == null || requestedNodePort == null) {
+            logger.warn("Node " + addressRequest.getNodeId() + " requested the address of " +
+                    "unregistered node " + requestedNodeId);
+            responseEvent.setIpAddress(new byte[0]);
+        } else {
+            responseEvent.setIpAddress(requestedNodeSocket.getInetAddress().getAddress());
+            responseEvent.setPort(requestedNodePort);
+        }
+        responseEvent.setIpAddressLength((byte) responseEvent.getIpAddress().length);
+
+        TCPConnection tcpConnection = tcpConnectionsCache.getConnection(addressRequest.getSocket());
+        try {
+            tcpConnection.sendData(responseEvent.getBytes());
+        } catch (IOException e) {
+            logger.error(e.getStackTrace());
+        }
+    }
+
+    /**
+     * The registry's clock is the reference nodes synchronize with, so every node's packet
+     * timestamps can be compared with every other's.
+     */
+    private void respondToOverlayNodeRequestsClockSync(Event event) {
+        long receiveTimestamp = WallClock.currentTimeNanos();
+        OverlayNodeRequestsClockSync request = (OverlayNodeRequestsClockSync) event;
+
+        RegistryRespondsToClockSync response = new RegistryRespondsToClockSync();
+        response.setOriginateTimestamp(request.getOriginateTimestamp());
+        response.setReceiveTimestamp(receiveTimestamp);
+
+        TCPConnection tcpConnection = tcpConnectionsCache.getConnection(request.getSocket());
+        if (tcpConnection == null) {
+            logger.warn("Received a clock sync request on an unknown connection");
+            return;
+        }
+        try {
+            response.setTransmitTimestamp(WallClock.currentTimeNanos());
+            tcpConnection.sendData(response.getBytes());
+        } catch (IOException e) {
+            logger.error(e.getStackTrace());
+        }
+    }
+
     private synchronized void deregisterOverlayNode(Event event) {
         OverlayNodeSendsDeregistration overlayNodeSendsDeregistration =
                 (OverlayNodeSendsDeregistration) event;
@@ -327,52 +776,181 @@ public class Registry implements Node {
     }
 
     public void setupOverlay(final int tableSize) {
-        routingTables = new ConcurrentHashMap<>();
+        setupOverlay(tableSize, OverlayTopologies.getDefault(), 0);
+    }
+
+    /**
+     * Sends every registered node a manifest with the neighbors the topology gives it, plus
+     * links to the given number of successors on the ring of sorted IDs for redundancy.
+     * Nodes are placed in the topology in ascending order of their IDs. A table size that is
+     * not positive is replaced with the topology's optimal size for the number of registered
+     * nodes, and a size larger than useful is reduced.
+     */
+    public void setupOverlay(int tableSize, final OverlayTopology topology,
+                             final int noOfSuccessors) {
         Set<Integer> nodeIdsSet = registeredNodeSocketMap.keySet();
         ArrayList<Integer> sortedNodeIds = new ArrayList<>(nodeIdsSet);
         Collections.sort(sortedNodeIds);  // sort the NodeIDs in ascending order
-        int noOfRegisteredNodes = registeredNodeSocketMap.size();
-        for (int i = 0; i < sortedNodeIds.size(); i++) {
-            // ID of the node to which the current routing table should be sent
-            Integer nodeIdToSendRoutingTable = sortedNodeIds.get(i);
-
-            int[] nodeIdsToSend = new int[tableSize];
-            byte[] ipAddressLengthsToSend = new byte[tableSize];
-            byte[][] ipAddressesToSend = new byte[tableSize][];
-            int[] portsToSend = new int[tableSize];
-
-            // create a routing table to send to the current node
-            RoutingTable routingTable = new RoutingTable(tableSize);
-            for (int j = 0; j < tableSize; j++) {
-                // add routing entries to the current routing table
-                int distance = (int) Math.pow(2, j);    // distance is a power of 2
-                int nodePosition = (distance + i) % noOfRegisteredNodes;
-                int nodeId = sortedNodeIds.get(nodePosition);
-                Socket socket = registeredNodeSocketMap.get(nodeId);
+        int noOfRegisteredNodes = sortedNodeIds.size();
+        if (noOfRegisteredNodes < 2) {
+            System.out.println("At least 2 registered nodes are needed to set up the overlay");
+            return;
+        }
+
+        if (tableSize <= 0) {
+            tableSize = topology.getOptimalTableSize(noOfRegisteredNodes);
+            System.out.println("Using table size " + tableSize + " for " +
+                    noOfRegisteredNodes + " nodes");
+        } else if (topology.clampTableSize(tableSize, noOfRegisteredNodes) < tableSize) {
+            int clampedTableSize = topology.clampTableSize(tableSize, noOfRegisteredNodes);
+            System.out.println("Table size " + tableSize + " is too large for " +
+                    noOfRegisteredNodes + " nodes. Using " + clampedTableSize + " instead.");
+            tableSize = clampedTableSize;
+        }
+
+        // report the hops packets are expected to take before the nodes start using the tables
+        TopologyEvaluation evaluation = new TopologyEvaluation(topology, noOfRegisteredNodes,
+                tableSize);
+        System.out.println("Expected hops in the " + topology.getName() + " overlay of " +
+                noOfRegisteredNodes + " nodes with table size " + tableSize +
+                (noOfSuccessors > 0 ? " and " + noOfSuccessors + " successors" : "") + ":");
+        evaluation.printHopDistribution();
 
-                nodeIdsToSend[j] = nodeId;
-                ipAddressesToSend[j] = socket.getInetAddress().getHostAddress().getBytes();
-                ipAddressLengthsToSend[j] = (byte) ipAddressesToSend[j].length;
-                portsToSend[j] = registeredNodeListeningPortMap.get(nodeId);
+        long startTime = System.nanoTime();
+        final int finalTableSize = tableSize;
+        final int[] allNodeIds = arrayListToArray(sortedNodeIds);
 
-                RoutingEntry routingEntry = new RoutingEntry(distance, nodeId,
-                        socket.getInetAddress().getHostAddress(), socket.getPort());
-                routingTable.addRoutingEntry(routingEntry);
+        // build and encode every node's manifest in parallel; nodes only share read-only state
+        RoutingTable[] routingTablesToSend = new RoutingTable[noOfRegisteredNodes];
+        byte[][] manifestsToSend = new byte[noOfRegisteredNodes][];
+        IntStream.range(0, noOfRegisteredNodes).parallel().forEach(i -> {
+            routingTablesToSend[i] = buildRoutingTable(i, allNodeIds, topology, finalTableSize,
+                    noOfSuccessors);
+            manifestsToSend[i] = buildNodeManifest(routingTablesToSend[i], allNodeIds,
+                    topology, finalTableSize).getBytes();
+        });
+        long buildTime = System.nanoTime() - startTime;
+
+        ConcurrentHashMap<Integer, RoutingTable> newRoutingTables = new ConcurrentHashMap<>();
+        for (int i = 0; i < noOfRegisteredNodes; i++) {
+            newRoutingTables.put(allNodeIds[i], routingTablesToSend[i]);
+        }
+        routingTables = newRoutingTables;
+
+        CountDownLatch readyLatch = new CountDownLatch(noOfRegisteredNodes);
+        synchronized (this) {
+            noOfConfirmedOverlayNodes = 0;
+            overlayReadyLatch = readyLatch;
+        }
+        overlayNodeIds = allNodeIds;
+        overlayHasSuccessors = topology instanceof FingerRingTopology || noOfSuccessors > 0;
+        overlaySetup = true;
+        logger.info("Setting up " + topology.getName() + " overlay with table size " + tableSize);
+
+        // every node has its own connection, so the manifests can be written concurrently
+        ExecutorService dispatcher = Executors.newFixedThreadPool(
+                Math.min(noOfRegisteredNodes, Constants.MANIFEST_DISPATCH_THREADS));
+        for (int i = 0; i < noOfRegisteredNodes; i++) {
+            final byte[] manifest = manifestsToSend[i];
+            final Socket socket = registeredNodeSocketMap.get(allNodeIds[i]);
+            dispatcher.execute(() -> sendRoutingTable(manifest, socket));
+        }
+        dispatcher.shutdown();
+
+        try {
+            dispatcher.awaitTermination(Constants.OVERLAY_SETUP_TIMEOUT_MS,
+                    TimeUnit.MILLISECONDS);
+            long dispatchTime = System.nanoTime() - startTime;
+            if (readyLatch.await(Constants.OVERLAY_SETUP_TIMEOUT_MS, TimeUnit.MILLISECONDS)) {
+                System.out.printf("Overlay of %d nodes ready in %.1f ms (tables built in %.1f " +
+                                "ms, manifests sent in %.1f ms)%n", noOfRegisteredNodes,
+                        (System.nanoTime() - startTime) / 1e6, buildTime / 1e6,
+                        dispatchTime / 1e6);
+            } else {
+                System.out.println("Only " + (noOfRegisteredNodes - readyLatch.getCount()) +
+                        " of " + noOfRegisteredNodes + " nodes reported their overlay setup " +
+                        "status within " + Constants.OVERLAY_SETUP_TIMEOUT_MS + " ms");
             }
-            routingTables.put(nodeIdToSendRoutingTable, routingTable);
+        } catch (InterruptedException e) {
+            logger.error(e.getStackTrace());
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * Routing table of the node at the given position in the sorted list of node IDs.
+     */
+    private RoutingTable buildRoutingTable(int position, int[] allNodeIds,
+                                           OverlayTopology topology, int tableSize,
+                                           int noOfSuccessors) {
+        int noOfNodes = allNodeIds.length;
+        int[] neighborPositions = OverlayTopologies.withSuccessors(
+                topology.getNeighborPositions(position, noOfNodes, tableSize), position,
+                noOfNodes, noOfSuccessors);
+
+        RoutingTable routingTable = new RoutingTable(neighborPositions.length);
+        for (int nodePosition : neighborPositions) {
+            int distance = FingerRouting.clockwiseDistance(position, nodePosition, noOfNodes);
+            int nodeId = allNodeIds[nodePosition];
+            Socket socket = registeredNodeSocketMap.get(nodeId);
+            routingTable.addRoutingEntry(new RoutingEntry(distance, nodeId,
+                    socket.getInetAddress().getHostAddress(),
+                    registeredNodeListeningPortMap.get(nodeId)));
+        }
+        return routingTable;
+    }
 
-            RegistrySendsNodeManifest event = new RegistrySendsNodeManifest();
-            event.setNodesIds(nodeIdsToSend);
-            event.setIpAddresses(ipAddressesToSend);
-            event.setIpAddressLengths(ipAddressLengthsToSend);
-            event.setTableSize(tableSize);
-            event.setPorts(portsToSend);
+    private RegistrySendsNodeManifest buildNodeManifest(RoutingTable routingTable,
+                                                        int[] allNodeIds,
+                                                        OverlayTopology topology,
+                                                        int tableSize) {
+        int noOfEntries = routingTable.size();
+        int[] nodeIdsToSend = new int[noOfEntries];
+        byte[] ipAddressLengthsToSend = new byte[noOfEntries];
+        byte[][] ipAddressesToSend = new byte[noOfEntries][];
+        int[] portsToSend = new int[noOfEntries];
+        for (int j = 0; j < noOfEntries; j++) {
+            nodeIdsToSend[j] = routingTable.getNodeId(j);
+            ipAddressesToSend[j] = routingTable.getIpAddress(j).getBytes();
+            ipAddressLengthsToSend[j] = (byte) ipAddressesToSend[j].length;
+            portsToSend[j] = routingTable.getPort(j);
+        }
+
+        RegistrySendsNodeManifest event = new RegistrySendsNodeManifest();
+        event.setNodesIds(nodeIdsToSend);
+        event.setIpAddresses(ipAddressesToSend);
+        event.setIpAddressLengths(ipAddressLengthsToSend);
+        event.setTableSize(noOfEntries);
+        event.setPorts(portsToSend);
 
-            event.setNoOfAllNodeIds(sortedNodeIds.size());
-            event.setAllNodeIds(arrayListToArray(sortedNodeIds));
+        event.setNoOfAllNodeIds(allNodeIds.length);
+        event.setAllNodeIds(allNodeIds);
+        event.setTopologyId(topology.getId());
+        event.setTopologyTableSize(tableSize);
+        return event;
+    }
 
-            sendRoutingTable(event, registeredNodeSocketMap.get(nodeIdToSendRoutingTable));
-            overlaySetup = true;
+    /**
+     * Prints hop counts, relay load and relative throughput of every topology for an overlay
+     * of the given size, or of the registered nodes if noOfNodes is not positive. Each
+     * topology uses its optimal table size if tableSize is not positive.
+     */
+    public void evaluateTopologies(int noOfNodes, int tableSize) {
+        if (noOfNodes <= 0) {
+            noOfNodes = registeredNodeSocketMap.size();
+        }
+        if (noOfNodes < 2) {
+            System.out.println("At least 2 nodes are needed to evaluate topologies");
+            return;
+        }
+        System.out.println("Topologies for " + noOfNodes + " nodes (throughput in packets " +
+                "per unit of node capacity)");
+        TopologyEvaluation.printHeader();
+        for (OverlayTopology topology : OverlayTopologies.getAll()) {
+            int topologyTableSize = tableSize > 0 ?
+                    topology.clampTableSize(tableSize, noOfNodes) :
+                    topology.getOptimalTableSize(noOfNodes);
+            new TopologyEvaluation(topology, noOfNodes, topologyTableSize).print();
         }
     }
 
@@ -385,10 +963,10 @@ public class Registry implements Node {
         return array;
     }
 
-    private void sendRoutingTable(RegistrySendsNodeManifest event, Socket socket) {
+    private void sendRoutingTable(byte[] manifest, Socket socket) {
         TCPConnection tcpConnection = tcpConnectionsCache.getConnection(socket);
         try {
-            tcpConnection.sendData(event.getBytes());
+            tcpConnection.sendData(manifest);
         } catch (IOException e) {
             logger.error(e.getStackTrace());
         }
@@ -411,4 +989,115 @@ public class Registry implements Node {
         }
     }
 
+    /**
+     * What was measured of the last completed round; replaced as a whole so that metrics
+     * readers never see two rounds mixed.
+     */
+    private static class RoundMetrics {
+        private final long roundsCompleted;
+        private final long durationNanos;
+        private final long taskStartSkewNanos;
+        private final long summaryCollectionNanos;
+        private final long packetsReceived;
+        private final long payloadBytesReceived;
+        private final LatencyHistogram latency;
+
+        RoundMetrics() {
+            this(0, 0, 0, 0, 0, 0, new LatencyHistogram());
+        }
+
+        RoundMetrics(long roundsCompleted, long durationNanos, long taskStartSkewNanos,
+                     long summaryCollectionNanos, StatisticsCollectorAndDisplay statistics) {
+            this(roundsCompleted, durationNanos, taskStartSkewNanos, summaryCollectionNanos,
+                    statistics.getGrandTotalReceived(),
+                    statistics.getGrandTotalPayloadBytesReceived(),
+                    statistics.getEndToEndLatency().copy());
+        }
+
+        private RoundMetrics(long roundsCompleted, long durationNanos, long taskStartSkewNanos,
+                             long summaryCollectionNanos, long packetsReceived,
+                             long payloadBytesReceived, LatencyHistogram latency) {
+            this.roundsCompleted = roundsCompleted;
+            this.durationNanos = durationNanos;
+            this.taskStartSkewNanos = taskStartSkewNanos;
+            this.summaryCollectionNanos = summaryCollectionNanos;
+            this.packetsReceived = packetsReceived;
+            this.payloadBytesReceived = payloadBytesReceived;
+            this.latency = latency;
+        }
+    }
+
+    private class Metrics implements RegistryMXBean {
+        @Override
+        public int getRegisteredNodes() {
+            return registeredNodeListeningPortMap.size();
+        }
+
+        @Override
+        public boolean isOverlaySetup() {
+            return overlaySetup;
+        }
+
+        @Override
+        public int getConnections() {
+            return tcpConnectionsCache.size();
+        }
+
+        @Override
+        public long getRoundsCompleted() {
+            return lastRound.roundsCompleted;
+        }
+
+        @Override
+        public long getLastRoundDurationNanos() {
+            return lastRound.durationNanos;
+        }
+
+        @Override
+        public long getLastTaskStartSkewNanos() {
+            return lastRound.taskStartSkewNanos;
+        }
+
+        @Override
+        public long getLastSummaryCollectionNanos() {
+            return lastRound.summaryCollectionNanos;
+        }
+
+        @Override
+        public long getLastRoundPacketsReceived() {
+            return lastRound.packetsReceived;
+        }
+
+        @Override
+        public long getLastRoundPayloadBytesReceived() {
+            return lastRound.payloadBytesReceived;
+        }
+
+        @Override
+        public double getLastRoundPacketsPerSecond() {
+            RoundMetrics round = lastRound;
+            return round.durationNanos <= 0 ? 0 :
+                    round.packetsReceived / (round.durationNanos / 1e9);
+        }
+
+        @Override
+        public long getLastRoundLatencyP50Nanos() {
+            return lastRound.latency.getValueAtPercentile(50);
+        }
+
+        @Override
+        public long getLastRoundLatencyP99Nanos() {
+            return lastRound.latency.getValueAtPercentile(99);
+        }
+
+        @Override
+        public long getLastRoundLatencyP999Nanos() {
+            return lastRound.latency.getValueAtPercentile(99.9);
+        }
+
+        @Override
+        public long getLastRoundLatencyMaxNanos() {
+            return lastRound.latency.getMaxValue();
+        }
+    }
 }
@@ -0,0 +1,38 @@
+package cs455.overlay.node;
+
+/**
+ * State of the registry and of the last completed round, published over JMX and the metrics
+ * endpoint. Times and latencies are in nanoseconds.
+ */
+public interface RegistryMXBean {
+    int getRegisteredNodes();
+
+    boolean isOverlaySetup();
+
+    int getConnections();
+
+    long getRoundsCompleted();
+
+    /**
+     * From the task initiate to the overlay going quiet.
+     */
+    long getLastRoundDurationNanos();
+
+    long getLastTaskStartSkewNanos();
+
+    long getLastSummaryCollectionNanos();
+
+    long getLastRoundPacketsReceived();
+
+    long getLastRoundPayloadBytesReceived();
+
+    double getLastRoundPacketsPerSecond();
+
+    long getLastRoundLatencyP50Nanos();
+
+    long getLastRoundLatencyP99Nanos();
+
+    long getLastRoundLatencyP999Nanos();
+
+    long getLastRoundLatencyMaxNanos();
+}
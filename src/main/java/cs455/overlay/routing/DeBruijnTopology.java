@@ -0,0 +1,95 @@
+package cs455.overlay.routing;
+
+import java.util.Arrays;
+
+/**
+ * Generalized de Bruijn graph of degree k = max(2, tableSize): the node at position x connects
+ * to (k * x + r) mod N for r in [0, k). After t hops a packet can be at k^t * x + r for any
+ * r < k^t, so any destination is reachable in ceil(log_k N) hops by sending the digits of r in
+ * base k, most significant first.
+ */
+public class DeBruijnTopology implements OverlayTopology {
+    public static final byte ID = 1;
+
+    @Override
+    public byte getId() {
+        return ID;
+    }
+
+    @Override
+    public String getName() {
+        return "de-bruijn";
+    }
+
+    private static int degree(int tableSize) {
+        return Math.max(2, tableSize);
+    }
+
+    @Override
+    public int[] getNeighborPositions(int position, int noOfNodes, int tableSize) {
+        int k = degree(tableSize);
+        int[] neighbors = new int[k];
+        int noOfNeighbors = 0;
+        for (int r = 0; r < k; r++) {
+            int neighbor = (int) (((long) k * position + r) % noOfNodes);
+            boolean duplicate = neighbor == position;
+            for (int i = 0; i < noOfNeighbors && !duplicate; i++) {
+                duplicate = neighbors[i] == neighbor;
+            }
+            if (!duplicate) {
+                neighbors[noOfNeighbors++] = neighbor;
+            }
+        }
+        return Arrays.copyOf(neighbors, noOfNeighbors);
+    }
+
+    @Override
+    public int getNextHop(int position, int destinationPosition, int noOfNodes, int tableSize) {
+        if (position == destinationPosition) {
+            return -1;
+        }
+        long k = degree(tableSize);
+
+        // smallest t such that the destination is k^t * x + r for some r < k^t
+        long power = k;   // k^t
+        long r = Math.floorMod(destinationPosition - k % noOfNodes * position, noOfNodes);
+        while (r >= power) {
+            power *= k;
+            r = Math.floorMod(destinationPosition - power % noOfNodes * position % noOfNodes,
+                    noOfNodes);
+        }
+
+        // a leading digit leading back to this node is a self loop; skipping it leaves the
+        // remaining digits valid since k * x + digit = x (mod N)
+        while (power > 1) {
+            power /= k;
+            int next = (int) ((k * position + r / power) % noOfNodes);
+            if (next != position) {
+                return next;
+            }
+            r %= power;
+        }
+        return -1;
+    }
+
+    @Override
+    public int getHopBound(int noOfNodes, int tableSize) {
+        int k = degree(tableSize);
+        int hops = 0;
+        for (long power = 1; power < noOfNodes; power *= k) {
+            hops++;
+        }
+        return hops;
+    }
+
+    @Override
+    public int getOptimalTableSize(int noOfNodes) {
+        return Math.max(2, FingerRouting.ceilLog2(noOfNodes));
+    }
+
+    @Override
+    public int clampTableSize(int tableSize, int noOfNodes) {
+        // with degree N every node is one hop away
+        return Math.min(tableSize, Math.max(2, noOfNodes));
+    }
+}
@@ -0,0 +1,107 @@
+package cs455.overlay.routing;
+
+import java.util.Arrays;
+
+/**
+ * Ring of sorted node IDs where every node has fingers to the nodes 1, 2, 4, ... 2^(tableSize-1)
+ * positions ahead of it. Packets go to the farthest finger that does not overshoot the
+ * destination, so each hop covers more than half of the remaining distance.
+ */
+public class FingerRingTopology implements OverlayTopology {
+    public static final byte ID = 0;
+
+    @Override
+    public byte getId() {
+        return ID;
+    }
+
+    @Override
+    public String getName() {
+        return "ring";
+    }
+
+    @Override
+    public int[] getNeighborPositions(int position, int noOfNodes, int tableSize) {
+        int[] neighbors = new int[tableSize];
+        int noOfNeighbors = 0;
+        for (int j = 0; j < tableSize; j++) {
+            // fingers past the end of the ring wrap around; drop those landing on this node
+            // or on a node that is already a finger
+            int neighbor = (int) ((position + (1L << Math.min(j, 62))) % noOfNodes);
+            if (neighbor != position && !contains(neighbors, noOfNeighbors, neighbor)) {
+                neighbors[noOfNeighbors++] = neighbor;
+            }
+        }
+        return Arrays.copyOf(neighbors, noOfNeighbors);
+    }
+
+    private static boolean contains(int[] values, int length, int value) {
+        for (int i = 0; i < length; i++) {
+            if (values[i] == value) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    @Override
+    public int getNextHop(int position, int destinationPosition, int noOfNodes, int tableSize) {
+        int distance = FingerRouting.clockwiseDistance(position, destinationPosition, noOfNodes);
+        if (distance == 0) {
+            return -1;
+        }
+        return (position + farthestFinger(distance, noOfNodes, tableSize)) % noOfNodes;
+    }
+
+    @Override
+    public int getHopCount(int fromPosition, int toPosition, int noOfNodes, int tableSize) {
+        int distance = FingerRouting.clockwiseDistance(fromPosition, toPosition, noOfNodes);
+        int hops = 0;
+        while (distance > 0) {
+            distance -= farthestFinger(distance, noOfNodes, tableSize);
+            hops++;
+        }
+        return hops;
+    }
+
+    /**
+     * Clockwise distance of the farthest finger that does not overshoot the given distance.
+     * The finger 1 position ahead always qualifies.
+     */
+    private static int farthestFinger(int distance, int noOfNodes, int tableSize) {
+        int best = 1;
+        for (int j = 0; j < tableSize && j < 62; j++) {
+            int fingerDistance = (int) ((1L << j) % noOfNodes);
+            if (fingerDistance <= distance && fingerDistance > best) {
+                best = fingerDistance;
+            }
+        }
+        return best;
+    }
+
+    @Override
+    public int getHopBound(int noOfNodes, int tableSize) {
+        int logarithmicBound = FingerRouting.ceilLog2(noOfNodes);
+        if (tableSize >= logarithmicBound) {
+            return logarithmicBound;
+        }
+        // the largest finger is 2^(tableSize - 1); greedy routing covers the rest in binary
+        int largestFinger = 1 << Math.max(0, tableSize - 1);
+        int maxDistance = noOfNodes - 1;
+        return maxDistance / largestFinger + Integer.bitCount(largestFinger - 1);
+    }
+
+    @Override
+    public int getOptimalTableSize(int noOfNodes) {
+        return Math.max(1, FingerRouting.ceilLog2(noOfNodes));
+    }
+
+    /**
+     * Fingers beyond 2^(ceil(log2 N) - 1) wrap around the ring onto nodes that are already
+     * fingers, or onto the node itself.
+     */
+    @Override
+    public int clampTableSize(int tableSize, int noOfNodes) {
+        return Math.min(tableSize, getOptimalTableSize(noOfNodes));
+    }
+}
@@ -0,0 +1,86 @@
+package cs455.overlay.routing;
+
+/**
+ * Greedy finger routing on the ring of sorted node IDs. Positions are indices into the sorted
+ * list of all node IDs, and distances are measured clockwise, i.e. towards increasing
+ * positions, wrapping around at the end of the list.
+ */
+public class FingerRouting {
+
+    private FingerRouting() {
+    }
+
+    public static int clockwiseDistance(int fromPosition, int toPosition, int noOfNodes) {
+        return ((toPosition - fromPosition) % noOfNodes + noOfNodes) % noOfNodes;
+    }
+
+    /**
+     * Smallest h such that 2^h >= n. This is the maximum number of hops a packet takes when
+     * every node has fingers at all power of two distances below n.
+     */
+    public static int ceilLog2(int n) {
+        return n <= 1 ? 0 : 32 - Integer.numberOfLeadingZeros(n - 1);
+    }
+
+    /**
+     * Returns the index of the finger farthest along the ring that does not overshoot a
+     * destination the given clockwise distance away, or -1 if every finger overshoots.
+     * Fingers with a non-positive distance are ignored.
+     */
+    public static int selectFinger(int[] fingerDistances, int distance) {
+        int bestFinger = -1;
+        for (int i = 0; i < fingerDistances.length; i++) {
+            int fingerDistance = fingerDistances[i];
+            if (fingerDistance > 0 && fingerDistance <= distance &&
+                    (bestFinger == -1 || fingerDistance > fingerDistances[bestFinger])) {
+                bestFinger = i;
+            }
+        }
+        return bestFinger;
+    }
+
+    /**
+     * Number of hops greedy routing takes for every clockwise distance from 0 to noOfNodes - 1,
+     * assuming every node in the overlay has fingers at the same distances. Distances that
+     * cannot be reached are set to Integer.MAX_VALUE.
+     */
+    public static int[] expectedHops(int[] fingerDistances, int noOfNodes) {
+        int[] hops = new int[noOfNodes];
+        for (int distance = 1; distance < noOfNodes; distance++) {
+            int finger = selectFinger(fingerDistances, distance);
+            if (finger == -1 || hops[distance - fingerDistances[finger]] == Integer.MAX_VALUE) {
+                hops[distance] = Integer.MAX_VALUE;
+            } else {
+                hops[distance] = hops[distance - fingerDistances[finger]] + 1;
+            }
+        }
+        return hops;
+    }
+
+    /**
+     * Splits the span of nodes starting with this node among its fingers to build a broadcast
+     * tree: every finger within the span is responsible for the nodes from itself up to the
+     * next finger, or the end of the span. Returns the span of each finger, 0 for fingers
+     * that get nothing. The spans cover every node as long as there is a finger at distance 1.
+     */
+    public static int[] broadcastSpans(int[] fingerDistances, int span) {
+        int[] spans = new int[fingerDistances.length];
+        for (int i = 0; i < fingerDistances.length; i++) {
+            int fingerDistance = fingerDistances[i];
+            if (fingerDistance <= 0 || fingerDistance >= span) {
+                continue;
+            }
+            int end = span;
+            boolean duplicate = false;
+            for (int j = 0; j < fingerDistances.length; j++) {
+                if (fingerDistances[j] > fingerDistance && fingerDistances[j] < end) {
+                    end = fingerDistances[j];
+                }
+                // only the first of several entries at the same distance gets the span
+                duplicate |= j < i && fingerDistances[j] == fingerDistance;
+            }
+            spans[i] = duplicate ? 0 : end - fingerDistance;
+        }
+        return spans;
+    }
+}
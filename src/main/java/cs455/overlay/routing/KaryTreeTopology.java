@@ -0,0 +1,83 @@
+package cs455.overlay.routing;
+
+import java.util.Arrays;
+
+/**
+ * Complete k-ary tree with k = max(2, tableSize), laid out in breadth first order: the node at
+ * position x has parent (x - 1) / k and children k * x + 1 .. k * x + k. Nodes connect to
+ * their parent and their children, and packets go down towards the destination if it is in
+ * the node's subtree and up towards the root otherwise.
+ */
+public class KaryTreeTopology implements OverlayTopology {
+    public static final byte ID = 3;
+
+    @Override
+    public byte getId() {
+        return ID;
+    }
+
+    @Override
+    public String getName() {
+        return "tree";
+    }
+
+    private static int arity(int tableSize) {
+        return Math.max(2, tableSize);
+    }
+
+    @Override
+    public int[] getNeighborPositions(int position, int noOfNodes, int tableSize) {
+        int k = arity(tableSize);
+        int[] neighbors = new int[k + 1];
+        int noOfNeighbors = 0;
+        if (position > 0) {
+            neighbors[noOfNeighbors++] = (position - 1) / k;
+        }
+        for (long child = (long) k * position + 1;
+             child <= (long) k * position + k && child < noOfNodes; child++) {
+            neighbors[noOfNeighbors++] = (int) child;
+        }
+        return Arrays.copyOf(neighbors, noOfNeighbors);
+    }
+
+    @Override
+    public int getNextHop(int position, int destinationPosition, int noOfNodes, int tableSize) {
+        if (position == destinationPosition) {
+            return -1;
+        }
+        int k = arity(tableSize);
+        // walk up from the destination; if we pass through this node, the last node visited
+        // below it is the child to forward to
+        int ancestor = destinationPosition;
+        while (ancestor > position) {
+            int parent = (ancestor - 1) / k;
+            if (parent == position) {
+                return ancestor;
+            }
+            ancestor = parent;
+        }
+        return (position - 1) / k;
+    }
+
+    @Override
+    public int getHopBound(int noOfNodes, int tableSize) {
+        int k = arity(tableSize);
+        int depth = 0;
+        for (long lastPosition = 0; lastPosition < noOfNodes - 1; ) {
+            lastPosition = lastPosition * k + k;
+            depth++;
+        }
+        return 2 * depth;
+    }
+
+    @Override
+    public int getOptimalTableSize(int noOfNodes) {
+        return Math.max(2, FingerRouting.ceilLog2(noOfNodes));
+    }
+
+    @Override
+    public int clampTableSize(int tableSize, int noOfNodes) {
+        // the root's children then include every other node
+        return Math.min(tableSize, Math.max(2, noOfNodes - 1));
+    }
+}
@@ -0,0 +1,27 @@
+package cs455.overlay.routing;
+
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Smoothed round trip times to the nodes this node is connected to, keyed by node ID. RTTs are
+ * smoothed with the same exponentially weighted moving average TCP uses (alpha = 1/8).
+ */
+public class LinkLatencies {
+    public static final long UNKNOWN = -1;
+
+    private final ConcurrentHashMap<Integer, Long> smoothedRttNanos = new ConcurrentHashMap<>();
+
+    public void recordRtt(int nodeId, long rttNanos) {
+        smoothedRttNanos.merge(nodeId, rttNanos,
+                (previous, sample) -> previous + (sample - previous) / 8);
+    }
+
+    /**
+     * Returns the smoothed RTT to the node in nanoseconds, or UNKNOWN if it has not been
+     * measured yet.
+     */
+    public long getRttNanos(int nodeId) {
+        Long rtt = smoothedRttNanos.get(nodeId);
+        return rtt == null ? UNKNOWN : rtt;
+    }
+}
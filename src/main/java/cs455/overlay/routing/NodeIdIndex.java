@@ -0,0 +1,50 @@
+package cs455.overlay.routing;
+
+import java.util.Arrays;
+
+/**
+ * Open addressing (linear probing) map from node ID to a position in the routing table's
+ * parallel arrays. Node IDs are always positive, so -1 marks an empty slot.
+ */
+class NodeIdIndex {
+    private static final int EMPTY = -1;
+
+    private final int[] keys;
+    private final int[] values;
+    private final int mask;
+
+    NodeIdIndex(int expectedSize) {
+        int capacity = Integer.highestOneBit(Math.max(2, expectedSize) * 2 - 1) << 1;
+        keys = new int[capacity];
+        values = new int[capacity];
+        mask = capacity - 1;
+        Arrays.fill(keys, EMPTY);
+    }
+
+    void put(int nodeId, int position) {
+        int slot = slot(nodeId);
+        while (keys[slot] != EMPTY && keys[slot] != nodeId) {
+            slot = (slot + 1) & mask;
+        }
+        keys[slot] = nodeId;
+        values[slot] = position;
+    }
+
+    /**
+     * Returns the position stored for the node ID or -1 if the node ID is not indexed.
+     */
+    int get(int nodeId) {
+        int slot = slot(nodeId);
+        while (keys[slot] != EMPTY) {
+            if (keys[slot] == nodeId) {
+                return values[slot];
+            }
+            slot = (slot + 1) & mask;
+        }
+        return -1;
+    }
+
+    private int slot(int nodeId) {
+        return (nodeId * 0x9E3779B9 >>> 16) & mask;
+    }
+}
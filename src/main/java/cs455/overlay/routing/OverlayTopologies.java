@@ -0,0 +1,83 @@
+package cs455.overlay.routing;
+
+import java.util.Arrays;
+
+/**
+ * The overlay topologies the registry can set up.
+ */
+public class OverlayTopologies {
+    private static final OverlayTopology[] TOPOLOGIES = {
+            new FingerRingTopology(),
+            new DeBruijnTopology(),
+            new XorBucketTopology(),
+            new KaryTreeTopology()
+    };
+
+    private OverlayTopologies() {
+    }
+
+    public static OverlayTopology[] getAll() {
+        return TOPOLOGIES.clone();
+    }
+
+    public static OverlayTopology getDefault() {
+        return TOPOLOGIES[FingerRingTopology.ID];
+    }
+
+    /**
+     * Returns the topology with the given manifest ID, or null if there is none.
+     */
+    public static OverlayTopology getById(byte id) {
+        for (OverlayTopology topology : TOPOLOGIES) {
+            if (topology.getId() == id) {
+                return topology;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Returns the topology with the given name, or null if there is none.
+     */
+    public static OverlayTopology getByName(String name) {
+        for (OverlayTopology topology : TOPOLOGIES) {
+            if (topology.getName().equalsIgnoreCase(name)) {
+                return topology;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Adds the given number of successors on the ring of sorted node IDs to a node's
+     * neighbors, so that every node also has links to the nodes right after it.
+     */
+    public static int[] withSuccessors(int[] neighborPositions, int position, int noOfNodes,
+                                       int noOfSuccessors) {
+        int[] neighbors = Arrays.copyOf(neighborPositions,
+                neighborPositions.length + Math.max(0, noOfSuccessors));
+        int noOfNeighbors = neighborPositions.length;
+        for (int distance = 1; distance <= noOfSuccessors && distance < noOfNodes; distance++) {
+            int successor = (position + distance) % noOfNodes;
+            boolean duplicate = false;
+            for (int i = 0; i < noOfNeighbors && !duplicate; i++) {
+                duplicate = neighbors[i] == successor;
+            }
+            if (!duplicate) {
+                neighbors[noOfNeighbors++] = successor;
+            }
+        }
+        return Arrays.copyOf(neighbors, noOfNeighbors);
+    }
+
+    public static String getNames() {
+        StringBuilder names = new StringBuilder();
+        for (OverlayTopology topology : TOPOLOGIES) {
+            if (names.length() > 0) {
+                names.append('|');
+            }
+            names.append(topology.getName());
+        }
+        return names.toString();
+    }
+}
@@ -0,0 +1,66 @@
+package cs455.overlay.routing;
+
+/**
+ * Layout of the overlay. Nodes are identified by their position in the sorted list of all node
+ * IDs, so a topology only depends on the number of nodes and the requested table size. The
+ * registry uses it to pick each node's neighbors and nodes use it to route packets, so both
+ * sides agree on the paths packets take.
+ */
+public interface OverlayTopology {
+
+    /**
+     * Identifier sent in the node manifest.
+     */
+    byte getId();
+
+    /**
+     * Name used to select the topology with the setup-overlay command.
+     */
+    String getName();
+
+    /**
+     * Positions of the nodes the node at the given position connects to. Never contains the
+     * position itself or duplicates.
+     */
+    int[] getNeighborPositions(int position, int noOfNodes, int tableSize);
+
+    /**
+     * Position of the neighbor a packet at the given position should be forwarded to in order
+     * to reach the destination, or -1 if the position is the destination.
+     */
+    int getNextHop(int position, int destinationPosition, int noOfNodes, int tableSize);
+
+    /**
+     * Number of hops getNextHop takes to get from one position to another.
+     */
+    default int getHopCount(int fromPosition, int toPosition, int noOfNodes, int tableSize) {
+        int hops = 0;
+        int position = fromPosition;
+        while (position != toPosition) {
+            position = getNextHop(position, toPosition, noOfNodes, tableSize);
+            hops++;
+            if (position == -1 || hops > noOfNodes) {
+                return Integer.MAX_VALUE;
+            }
+        }
+        return hops;
+    }
+
+    /**
+     * Largest number of hops any packet should take with this topology.
+     */
+    int getHopBound(int noOfNodes, int tableSize);
+
+    /**
+     * Table size giving about log2 N neighbors and hops for an overlay of the given size.
+     */
+    int getOptimalTableSize(int noOfNodes);
+
+    /**
+     * Largest useful table size for an overlay of the given size; larger tables only add
+     * duplicate neighbors.
+     */
+    default int clampTableSize(int tableSize, int noOfNodes) {
+        return tableSize;
+    }
+}
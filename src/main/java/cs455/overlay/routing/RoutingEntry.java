@@ -1,13 +1,10 @@
 package cs455.overlay.routing;
 
-import java.net.Socket;
-
 public class RoutingEntry {
     private int distance;
     private int nodeId;
     private String ipAddress;
     private int port;
-    private Socket socket;
 
     public RoutingEntry(int distance, int nodeId, String ipAddress, int port) {
         this.distance = distance;
@@ -16,14 +13,6 @@ public class RoutingEntry {
         this.port = port;
     }
 
-    public Socket getSocket() {
-        return socket;
-    }
-
-    public void setSocket(Socket socket) {
-        this.socket = socket;
-    }
-
     public String getIpAddress() {
         return ipAddress;
     }
@@ -0,0 +1,394 @@
+package cs455.overlay.routing;
+
+import java.util.Arrays;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+import cs455.overlay.transport.TCPConnection;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+/**
+ * A node's routing state for one manifest: the routing table, the IDs of all nodes in the
+ * overlay and the precomputed next hop for every destination. The next hop tables are never
+ * changed once built, but the routing table is shared rather than copied, so it must not be
+ * modified after the snapshot is created. A node publishes a new snapshot through a single
+ * volatile reference whenever a manifest arrives, so threads routing packets never lock and
+ * always see a complete, consistent state.
+ */
+public final class RoutingSnapshot {
+    private static final Logger logger = LogManager.getLogger(RoutingSnapshot.class);
+    private static final int LOOKUP_SAMPLING_MASK = 1023; // time about one in 1024 lookups
+
+    private final int nodeId;
+    private final RoutingTable routingTable;
+    private final int[] allNodeIds;
+    private final OverlayTopology topology;
+    private final int topologyTableSize;
+    private final LinkLatencies linkLatencies;
+
+    private final int ownPosition;
+    private final int[] positionsByNodeId;  // dense node ID -> position, -1 if absent
+    private final int[] hopsToPosition;     // hops the topology takes from here per position
+    private final int hopSlack;
+
+    // [remaining hop slack][destination node ID] -> finger to forward to, -1 if unroutable
+    private final int[][] nextHopFingers;
+    // [remaining hop slack][destination node ID] -> all fingers within the hop budget
+    private final int[][][] candidateFingers;
+    private final long buildTimeNanos;
+    private final int maxExpectedHops;
+    private final int hopBound;
+
+    // striped, as every routing thread counts every lookup
+    private final LongAdder nextHopLookups = new LongAdder();
+    private final AtomicLong sampledLookupTimeNanos = new AtomicLong(0);
+    private final AtomicLong sampledLookups = new AtomicLong(0);
+
+    public RoutingSnapshot(int nodeId, RoutingTable routingTable, int[] allNodeIds) {
+        this(nodeId, routingTable, allNodeIds, OverlayTopologies.getDefault(),
+                routingTable.size(), null, 0);
+    }
+
+    /**
+     * Precomputes the next hop for every node in the overlay so that routing a packet is an
+     * array access. The connections to the nodes in the routing table must have been
+     * established before the snapshot is created.
+     *
+     * The topology and table size must be the ones the registry built the routing tables
+     * with. The topology's next hop is used unless hopSlack allows detours: a finger is a
+     * candidate for a destination if the packet can still reach it within hopSlack hops more
+     * than the topology would take from the packet's source. When link latencies are given,
+     * proximity routing is used and the candidate with the lowest RTT becomes the next hop.
+     */
+    public RoutingSnapshot(int nodeId, RoutingTable routingTable, int[] allNodeIds,
+                           OverlayTopology topology, int topologyTableSize,
+                           LinkLatencies linkLatencies, int hopSlack) {
+        long startTime = System.nanoTime();
+        this.nodeId = nodeId;
+        this.routingTable = routingTable;
+        this.allNodeIds = allNodeIds.clone();
+        Arrays.sort(this.allNodeIds);
+        this.topology = topology;
+        this.topologyTableSize = topologyTableSize;
+        this.linkLatencies = linkLatencies;
+        this.hopSlack = Math.max(0, hopSlack);
+
+        int noOfNodes = this.allNodeIds.length;
+        ownPosition = Arrays.binarySearch(this.allNodeIds, nodeId);
+
+        int maxNodeId = 0;
+        for (int id : this.allNodeIds) {
+            maxNodeId = Math.max(maxNodeId, id);
+        }
+        positionsByNodeId = new int[maxNodeId + 1];
+        Arrays.fill(positionsByNodeId, -1);
+        for (int position = 0; position < noOfNodes; position++) {
+            positionsByNodeId[this.allNodeIds[position]] = position;
+        }
+
+        // fingers that are not part of the overlay, or that are this node, are never selected
+        int[] fingerPositions = new int[routingTable.size()];
+        long[] fingerRtts = new long[routingTable.size()];
+        for (int i = 0; i < fingerPositions.length; i++) {
+            int fingerPosition = Arrays.binarySearch(this.allNodeIds, routingTable.getNodeId(i));
+            fingerPositions[i] = fingerPosition == ownPosition ? -1 : Math.max(-1, fingerPosition);
+            fingerRtts[i] = linkLatencies == null ? LinkLatencies.UNKNOWN :
+                    linkLatencies.getRttNanos(routingTable.getNodeId(i));
+        }
+
+        hopsToPosition = new int[noOfNodes];
+        nextHopFingers = new int[this.hopSlack + 1][maxNodeId + 1];
+        candidateFingers = new int[this.hopSlack + 1][maxNodeId + 1][];
+        for (int[] fingers : nextHopFingers) {
+            Arrays.fill(fingers, -1);
+        }
+        int[] hopsViaFinger = new int[fingerPositions.length];
+        for (int position = 0; position < noOfNodes && ownPosition >= 0; position++) {
+            if (position == ownPosition) {
+                continue;
+            }
+            for (int i = 0; i < fingerPositions.length; i++) {
+                hopsViaFinger[i] = hopsVia(fingerPositions[i], position, noOfNodes);
+            }
+            int topologyFinger = findTopologyFinger(fingerPositions, hopsViaFinger, position,
+                    noOfNodes);
+            if (topologyFinger == -1) {
+                hopsToPosition[position] = Integer.MAX_VALUE;
+                logger.warn("No finger of node " + nodeId + " leads to node " +
+                        this.allNodeIds[position]);
+                continue;
+            }
+            hopsToPosition[position] = hopsViaFinger[topologyFinger];
+            for (int slack = 0; slack <= this.hopSlack; slack++) {
+                int hopBudget = hopsToPosition[position] + slack;
+                nextHopFingers[slack][this.allNodeIds[position]] = selectNearestFinger(
+                        hopsViaFinger, fingerRtts, hopBudget, topologyFinger);
+                candidateFingers[slack][this.allNodeIds[position]] =
+                        findCandidateFingers(hopsViaFinger, hopBudget);
+            }
+        }
+
+        int maxHops = 0;
+        for (int hops : hopsToPosition) {
+            maxHops = Math.max(maxHops, hops);
+        }
+        maxExpectedHops = maxHops;
+        int topologyBound = topology.getHopBound(noOfNodes, topologyTableSize);
+        if (ownPosition >= 0 && hasTopologyNeighbors(fingerPositions, noOfNodes)) {
+            assert maxExpectedHops <= topologyBound :
+                    maxExpectedHops + " hops exceeds " + topology.getName() + " bound of " +
+                            topologyBound;
+        }
+        if (maxExpectedHops > topologyBound) {
+            logger.warn("Routing table of size " + routingTable.size() + " needs up to " +
+                    maxExpectedHops + " hops, more than the " + topology.getName() +
+                    " bound of " + topologyBound + " for " + noOfNodes + " nodes");
+        }
+        hopBound = maxExpectedHops == Integer.MAX_VALUE ? Integer.MAX_VALUE :
+                Math.max(maxExpectedHops, topologyBound) + this.hopSlack;
+
+        buildTimeNanos = System.nanoTime() - startTime;
+        logger.debug("Next hop table built for " + noOfNodes + " nodes in " +
+                buildTimeNanos + " ns");
+    }
+
+    /**
+     * Hops a packet takes to the destination if it is forwarded to the finger at the given
+     * position, or Integer.MAX_VALUE if the finger is unusable.
+     */
+    private int hopsVia(int fingerPosition, int destinationPosition, int noOfNodes) {
+        if (fingerPosition < 0) {
+            return Integer.MAX_VALUE;
+        }
+        int remainingHops = topology.getHopCount(fingerPosition, destinationPosition,
+                noOfNodes, topologyTableSize);
+        return remainingHops == Integer.MAX_VALUE ? Integer.MAX_VALUE : remainingHops + 1;
+    }
+
+    /**
+     * Returns the finger the topology routes to, or the finger with the fewest hops if the
+     * routing table does not match the topology.
+     */
+    private int findTopologyFinger(int[] fingerPositions, int[] hopsViaFinger,
+                                   int destinationPosition, int noOfNodes) {
+        int nextHop = topology.getNextHop(ownPosition, destinationPosition, noOfNodes,
+                topologyTableSize);
+        int bestFinger = -1;
+        for (int i = 0; i < fingerPositions.length; i++) {
+            if (fingerPositions[i] == nextHop && hopsViaFinger[i] != Integer.MAX_VALUE) {
+                return i;
+            }
+            if (hopsViaFinger[i] != Integer.MAX_VALUE &&
+                    (bestFinger == -1 || hopsViaFinger[i] < hopsViaFinger[bestFinger])) {
+                bestFinger = i;
+            }
+        }
+        return bestFinger;
+    }
+
+    /**
+     * Among the fingers that reach the destination within the hop budget, returns the one
+     * with the lowest known RTT. Falls back to the topology's finger when no RTTs are known.
+     */
+    private int selectNearestFinger(int[] hopsViaFinger, long[] fingerRtts, int hopBudget,
+                                    int topologyFinger) {
+        int bestFinger = topologyFinger;
+        long bestRtt = fingerRtts[topologyFinger];
+        for (int i = 0; i < hopsViaFinger.length; i++) {
+            if (hopsViaFinger[i] > hopBudget || fingerRtts[i] == LinkLatencies.UNKNOWN) {
+                continue;
+            }
+            if (bestRtt == LinkLatencies.UNKNOWN || fingerRtts[i] < bestRtt) {
+                bestFinger = i;
+                bestRtt = fingerRtts[i];
+            }
+        }
+        return bestFinger;
+    }
+
+    /**
+     * Fingers that reach the destination within the hop budget.
+     */
+    private int[] findCandidateFingers(int[] hopsViaFinger, int hopBudget) {
+        int[] candidates = new int[hopsViaFinger.length];
+        int noOfCandidates = 0;
+        for (int i = 0; i < hopsViaFinger.length; i++) {
+            if (hopsViaFinger[i] <= hopBudget) {
+                candidates[noOfCandidates++] = i;
+            }
+        }
+        return Arrays.copyOf(candidates, noOfCandidates);
+    }
+
+    /**
+     * Whether the routing table contains every neighbor the topology gives this node, in
+     * which case the topology's hop bound must hold.
+     */
+    private boolean hasTopologyNeighbors(int[] fingerPositions, int noOfNodes) {
+        for (int neighbor : topology.getNeighborPositions(ownPosition, noOfNodes,
+                topologyTableSize)) {
+            boolean found = false;
+            for (int fingerPosition : fingerPositions) {
+                found |= fingerPosition == neighbor;
+            }
+            if (!found) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Returns a snapshot with the same routing table and nodes whose next hops are chosen
+     * with the given link latencies, or purely greedily if linkLatencies is null.
+     */
+    public RoutingSnapshot withLinkLatencies(LinkLatencies linkLatencies, int hopSlack) {
+        return new RoutingSnapshot(nodeId, routingTable, allNodeIds, topology, topologyTableSize,
+                linkLatencies, hopSlack);
+    }
+
+    public int getNodeId() {
+        return nodeId;
+    }
+
+    public RoutingTable getRoutingTable() {
+        return routingTable;
+    }
+
+    public OverlayTopology getTopology() {
+        return topology;
+    }
+
+    public int getTopologyTableSize() {
+        return topologyTableSize;
+    }
+
+    public int getNoOfNodes() {
+        return allNodeIds.length;
+    }
+
+    public int getNodeIdAt(int index) {
+        return allNodeIds[index];
+    }
+
+    /**
+     * Returns a copy of all node IDs in the overlay, sorted.
+     */
+    public int[] getNodeIds() {
+        return allNodeIds.clone();
+    }
+
+    public boolean isProximityRouting() {
+        return linkLatencies != null;
+    }
+
+    /**
+     * Returns the connection to which a packet originating at this node for the given
+     * destination should be written, or null if the destination is unknown.
+     */
+    public TCPConnection getNextHopConnection(int destinationId) {
+        int finger = getNextHopFinger(nodeId, destinationId, 0);
+        return finger == -1 ? null : routingTable.getConnection(finger);
+    }
+
+    /**
+     * Returns the position in the routing table of the finger a packet should be forwarded
+     * to, or -1 if the destination is unknown. The source and the number of hops the packet
+     * has already taken determine how much of its hop slack is left for proximity routing.
+     */
+    public int getNextHopFinger(int sourceId, int destinationId, int hopsTaken) {
+        nextHopLookups.increment();
+        // sampled per thread, so the decision does not touch memory shared between threads
+        if ((ThreadLocalRandom.current().nextInt() & LOOKUP_SAMPLING_MASK) != 0) {
+            return lookupNextHop(sourceId, destinationId, hopsTaken);
+        }
+        long startTime = System.nanoTime();
+        int finger = lookupNextHop(sourceId, destinationId, hopsTaken);
+        sampledLookupTimeNanos.getAndAdd(System.nanoTime() - startTime);
+        sampledLookups.getAndIncrement();
+        return finger;
+    }
+
+    private int lookupNextHop(int sourceId, int destinationId, int hopsTaken) {
+        if (destinationId < 0 || destinationId >= positionsByNodeId.length) {
+            return -1;
+        }
+        return nextHopFingers[remainingSlack(sourceId, destinationId, hopsTaken)][destinationId];
+    }
+
+    /**
+     * Returns the positions in the routing table of all fingers a packet may be forwarded to
+     * without exceeding its hop budget, or an empty array if the destination is unknown.
+     */
+    public int[] getCandidateFingers(int sourceId, int destinationId, int hopsTaken) {
+        if (destinationId < 0 || destinationId >= positionsByNodeId.length ||
+                candidateFingers[0][destinationId] == null) {
+            return new int[0];
+        }
+        return candidateFingers[remainingSlack(sourceId, destinationId, hopsTaken)]
+                [destinationId];
+    }
+
+    private int remainingSlack(int sourceId, int destinationId, int hopsTaken) {
+        int remainingSlack = 0;
+        if (hopSlack > 0 && sourceId >= 0 && sourceId < positionsByNodeId.length) {
+            int sourcePosition = positionsByNodeId[sourceId];
+            int destinationPosition = positionsByNodeId[destinationId];
+            if (sourcePosition >= 0 && destinationPosition >= 0) {
+                int hopBudget = topology.getHopCount(sourcePosition, destinationPosition,
+                        allNodeIds.length, topologyTableSize) + hopSlack - hopsTaken;
+                int hopsNeeded = hopsToPosition[destinationPosition];
+                remainingSlack = Math.max(0, Math.min(hopSlack, hopBudget - hopsNeeded));
+            }
+        }
+        return remainingSlack;
+    }
+
+    /**
+     * Maximum number of hops any packet should take in the overlay described by this
+     * snapshot: the topology's bound, or more if the routing table does not achieve it, plus
+     * the hop slack allowed for proximity and multipath routing.
+     */
+    public int getHopBound() {
+        return hopBound;
+    }
+
+    public int getMaxExpectedHops() {
+        return maxExpectedHops;
+    }
+
+    public long getBuildTimeNanos() {
+        return buildTimeNanos;
+    }
+
+    public long getNextHopLookups() {
+        return nextHopLookups.sum();
+    }
+
+    public double getAverageLookupTimeNanos() {
+        long samples = sampledLookups.get();
+        return samples == 0 ? 0 : (double) sampledLookupTimeNanos.get() / samples;
+    }
+
+    public void printRoutingMetrics() {
+        System.out.println("Topology: " + topology.getName() + " (table size " +
+                topologyTableSize + ")");
+        System.out.println("Next hop table build time (ns): " + buildTimeNanos);
+        System.out.println("Expected maximum hops: " + maxExpectedHops +
+                " (bound: " + hopBound + ")");
+        System.out.println("Next hop lookups: " + getNextHopLookups());
+        System.out.printf("Average next hop lookup time (ns, sampled): %.1f%n",
+                getAverageLookupTimeNanos());
+        System.out.println("Proximity routing: " + (isProximityRouting() ?
+                "on (hop slack " + hopSlack + ")" : "off"));
+        if (linkLatencies != null) {
+            for (int i = 0; i < routingTable.size(); i++) {
+                long rtt = linkLatencies.getRttNanos(routingTable.getNodeId(i));
+                System.out.println("  RTT to node " + routingTable.getNodeId(i) + ": " +
+                        (rtt == LinkLatencies.UNKNOWN ? "unknown" : (rtt / 1000) + " us"));
+            }
+        }
+    }
+}
@@ -1,31 +1,72 @@
 package cs455.overlay.routing;
 
-import java.util.ArrayList;
+import java.net.InetAddress;
+import java.net.UnknownHostException;
 import java.util.Arrays;
 
-import cs455.overlay.wireformats.OverlayNodeSendsData;
+import cs455.overlay.transport.TCPConnection;
 import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
 
+/**
+ * Routing entries are kept in parallel primitive arrays indexed by their position in the
+ * table, with an open addressing index for node ID lookups. A routing table is filled in
+ * while a manifest is processed and must not be modified once a {@link RoutingSnapshot} has
+ * been created from it.
+ */
 public class RoutingTable {
     private static final Logger logger = LogManager.getLogger(RoutingTable.class);
-    private ArrayList<RoutingEntry> routingEntries;
+    private static final int ADDRESS_STRIDE = 16;   // large enough for an IPv6 address
     private final int tableSize;
+    private int noOfEntries;
+
+    private final int[] nodeIds;
+    private final int[] distances;
+    private final byte[] addresses;         // packed, ADDRESS_STRIDE bytes per entry
+    private final byte[] addressLengths;
+    private final int[] ports;
+    private final int[] connectionIndices;  // index into connections, -1 if not connected
+    private final NodeIdIndex nodeIdIndex;
+    private TCPConnection[] connections;
+    private int noOfConnections;
 
     public RoutingTable(int tableSize) {
         this.tableSize = tableSize;
-        routingEntries = new ArrayList<>();
-    }
-
-    public ArrayList<RoutingEntry> getRoutingEntries() {
-        return routingEntries;
+        nodeIds = new int[tableSize];
+        distances = new int[tableSize];
+        addresses = new byte[tableSize * ADDRESS_STRIDE];
+        addressLengths = new byte[tableSize];
+        ports = new int[tableSize];
+        connectionIndices = new int[tableSize];
+        Arrays.fill(connectionIndices, -1);
+        nodeIdIndex = new NodeIdIndex(tableSize);
+        connections = new TCPConnection[tableSize];
     }
 
     public void addRoutingEntry(RoutingEntry routingEntry) {
-        if (routingEntries.size() < tableSize) {
-            routingEntries.add(routingEntry);
-        } else {
+        if (noOfEntries >= tableSize) {
             logger.warn("Adding more entries will exceed routing table size (" + tableSize + ")");
+            return;
+        }
+        int position = noOfEntries;
+        nodeIds[position] = routingEntry.getNodeId();
+        distances[position] = routingEntry.getDistance();
+        ports[position] = routingEntry.getPort();
+
+        byte[] address = toAddressBytes(routingEntry.getIpAddress());
+        System.arraycopy(address, 0, addresses, position * ADDRESS_STRIDE, address.length);
+        addressLengths[position] = (byte) address.length;
+
+        nodeIdIndex.put(routingEntry.getNodeId(), position);
+        noOfEntries++;
+    }
+
+    private static byte[] toAddressBytes(String ipAddress) {
+        try {
+            return InetAddress.getByName(ipAddress).getAddress();
+        } catch (UnknownHostException e) {
+            logger.warn("Unable to resolve address " + ipAddress);
+            return new byte[0];
         }
     }
 
@@ -33,78 +74,66 @@ public class RoutingTable {
         return tableSize;
     }
 
-    public void printRoutingTable() {
-        System.out.printf("%-12s %-16s %-15s %s\n", "DISTANCE", "NODE ID", "IP", "PORT");
-
-        ArrayList<RoutingEntry> routingEntries = getRoutingEntries();
-        for (RoutingEntry routingEntry : routingEntries) {
-            System.out.printf("%-12s %-16s %-15s %s\n",
-                    routingEntry.getDistance(),
-                    routingEntry.getNodeId(),
-                    routingEntry.getIpAddress(),
-                    routingEntry.getPort()
-            );
-        }
+    public int size() {
+        return noOfEntries;
     }
 
-    public boolean containsNodeId(int nodeId) {
-        for (RoutingEntry routingEntry : routingEntries) {
-            if (routingEntry.getNodeId() == nodeId) {
-                return true;
-            }
-        }
-        return false;
+    public int getNodeId(int position) {
+        return nodeIds[position];
     }
 
-    public RoutingEntry getRoutingEntry(int nodeId) {
-        for (RoutingEntry routingEntry : routingEntries) {
-            if (routingEntry.getNodeId() == nodeId) {
-                return routingEntry;
-            }
-        }
-        logger.warn("Unable to retrieve node " + nodeId + " from the routing table");
-        return null;
+    public int getDistance(int position) {
+        return distances[position];
     }
 
-    public int getNextBestNode(OverlayNodeSendsData sendsDataEvent, int[] allNodeIds) {
-        int bestNodeToSendData = -1;
-        int sourceId = sendsDataEvent.getSourceId();
-        int destinationId = sendsDataEvent.getDestinationId();
-        int noOfHops;
-
-        int sourceIdIndex = Arrays.binarySearch(allNodeIds, sourceId);
-        int destinationIdIndex = Arrays.binarySearch(allNodeIds, destinationId);
-        int bestNodeDistance = -1;
+    public int getPort(int position) {
+        return ports[position];
+    }
 
+    public byte[] getAddress(int position) {
+        int offset = position * ADDRESS_STRIDE;
+        return Arrays.copyOfRange(addresses, offset, offset + addressLengths[position]);
+    }
 
-        if (destinationIdIndex < sourceIdIndex) {
-            noOfHops = allNodeIds.length - sourceIdIndex + destinationIdIndex;
-        } else { // destinationIdIndex > sourceIdIndex
-            noOfHops = destinationIdIndex - sourceIdIndex;
+    public String getIpAddress(int position) {
+        try {
+            return InetAddress.getByAddress(getAddress(position)).getHostAddress();
+        } catch (UnknownHostException e) {
+            return "unknown";
         }
+    }
 
-        for (RoutingEntry routingEntry : routingEntries) {
-            if (routingEntry.getDistance() < noOfHops &&
-                    routingEntry.getDistance() > bestNodeDistance) {
-                bestNodeDistance = routingEntry.getDistance();
-            }
-        }
+    public TCPConnection getConnection(int position) {
+        int connectionIndex = connectionIndices[position];
+        return connectionIndex == -1 ? null : connections[connectionIndex];
+    }
+
+    public void setConnection(int position, TCPConnection tcpConnection) {
+        connectionIndices[position] = noOfConnections;
+        connections[noOfConnections++] = tcpConnection;
+    }
 
-        if (bestNodeDistance == -1) {
-            logger.info("Error in choosing the best node");
-            return -1;
-        } else {
-            int bestNodeIndex = -1;
-            for (RoutingEntry r : routingEntries) {
-                if (r.getDistance() == bestNodeDistance) {
-                    bestNodeIndex = Arrays.binarySearch(allNodeIds, r.getNodeId());
-                    break;
-                }
-            }
-            bestNodeToSendData = allNodeIds[bestNodeIndex];
+    public void printRoutingTable() {
+        System.out.printf("%-12s %-16s %-15s %s\n", "DISTANCE", "NODE ID", "IP", "PORT");
 
+        for (int i = 0; i < noOfEntries; i++) {
+            System.out.printf("%-12s %-16s %-15s %s\n",
+                    distances[i],
+                    nodeIds[i],
+                    getIpAddress(i),
+                    ports[i]
+            );
         }
+    }
+
+    /**
+     * Returns the position of the node in the routing table, or -1 if it is not present.
+     */
+    public int indexOf(int nodeId) {
+        return nodeIdIndex.get(nodeId);
+    }
 
-        return bestNodeToSendData;
+    public boolean containsNodeId(int nodeId) {
+        return nodeIdIndex.get(nodeId) != -1;
     }
 }
@@ -0,0 +1,229 @@
+package cs455.overlay.routing;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+import cs455.overlay.transport.TCPConnection;
+import cs455.overlay.transport.TCPConnectionsCache;
+import cs455.overlay.util.Constants;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+/**
+ * Direct connections to the destinations a node routes the most packets to, bypassing the
+ * overlay. Destinations are counted as packets are routed; once a destination has been seen
+ * often enough a shortcut to it can be opened, and when more shortcuts are open than the
+ * budget allows the least recently used one is evicted.
+ *
+ * Lookups only read arrays indexed by node ID so they never block routing threads. A
+ * connection handed out by get() is retained until the routing thread has queued its packet,
+ * and an evicted connection is only closed once nothing retains it and its send queue has
+ * drained, so no packet routed over a shortcut is lost to its eviction.
+ */
+public class ShortcutCache {
+    private static final Logger logger = LogManager.getLogger(ShortcutCache.class);
+
+    private final AtomicReferenceArray<TCPConnection> connections =
+            new AtomicReferenceArray<>(Constants.MAX_NODES + 1);
+    private final AtomicLongArray lastUsedNanos = new AtomicLongArray(Constants.MAX_NODES + 1);
+    private final AtomicIntegerArray destinationCounts =
+            new AtomicIntegerArray(Constants.MAX_NODES + 1);
+    private final AtomicLong lookups = new AtomicLong(0);
+    private final AtomicLong hits = new AtomicLong(0);
+    private final AtomicLong evictions = new AtomicLong(0);
+
+    private final TCPConnectionsCache tcpConnectionsCache;
+    private final int threshold;
+    private volatile int budget;
+
+    // guarded by this
+    private int size;
+    private final boolean[] requested = new boolean[Constants.MAX_NODES + 1];
+    private final ArrayList<TCPConnection> retiredConnections = new ArrayList<>();
+
+    /**
+     * @param tcpConnectionsCache cache the shortcuts' connections are removed from once
+     *                            they are closed
+     */
+    public ShortcutCache(TCPConnectionsCache tcpConnectionsCache, int budget, int threshold) {
+        this.tcpConnectionsCache = tcpConnectionsCache;
+        this.budget = budget;
+        this.threshold = threshold;
+    }
+
+    /**
+     * Returns the shortcut to the destination, or null if there is none. The connection is
+     * retained, so the caller must release it once it has queued its packet.
+     */
+    public TCPConnection get(int destinationId) {
+        if (destinationId < 0 || destinationId > Constants.MAX_NODES) {
+            return null;
+        }
+        lookups.getAndIncrement();
+        TCPConnection tcpConnection = connections.get(destinationId);
+        if (tcpConnection == null) {
+            return null;
+        }
+        tcpConnection.retain();
+        // retired in the meantime; it may be closed as soon as it looks idle, so it is not
+        // used
+        if (connections.get(destinationId) != tcpConnection) {
+            tcpConnection.release();
+            return null;
+        }
+        hits.getAndIncrement();
+        lastUsedNanos.set(destinationId, System.nanoTime());
+        return tcpConnection;
+    }
+
+    /**
+     * Counts a packet routed towards the destination. Returns true exactly once per
+     * destination, when it has become hot enough to open a shortcut to.
+     */
+    public boolean recordDestination(int destinationId) {
+        if (destinationId < 0 || destinationId > Constants.MAX_NODES || budget == 0) {
+            return false;
+        }
+        if (destinationCounts.incrementAndGet(destinationId) != threshold) {
+            return false;
+        }
+        synchronized (this) {
+            if (requested[destinationId] || connections.get(destinationId) != null) {
+                return false;
+            }
+            requested[destinationId] = true;
+            return true;
+        }
+    }
+
+    /**
+     * Adds a shortcut, evicting the least recently used ones if the budget is exceeded.
+     */
+    public synchronized void put(int destinationId, TCPConnection tcpConnection) {
+        requested[destinationId] = false;
+        if (budget == 0) {
+            close(tcpConnection);
+            return;
+        }
+        TCPConnection previous = connections.getAndSet(destinationId, tcpConnection);
+        lastUsedNanos.set(destinationId, System.nanoTime());
+        if (previous == null) {
+            size++;
+        } else {
+            retire(previous);
+        }
+        evictToBudget();
+        closeIdleRetired();
+    }
+
+    /**
+     * Forgets a destination whose address could not be resolved so that it may be requested
+     * again once it is hot.
+     */
+    public synchronized void cancelRequest(int destinationId) {
+        requested[destinationId] = false;
+        destinationCounts.set(destinationId, 0);
+    }
+
+    public synchronized void setBudget(int budget) {
+        this.budget = Math.max(0, budget);
+        evictToBudget();
+        closeIdleRetired();
+    }
+
+    /**
+     * Retires all shortcuts and forgets the destination counts, e.g. when a new overlay is
+     * set up.
+     */
+    public synchronized void clear() {
+        for (int id = 0; id <= Constants.MAX_NODES; id++) {
+            TCPConnection tcpConnection = connections.getAndSet(id, null);
+            if (tcpConnection != null) {
+                retire(tcpConnection);
+            }
+            destinationCounts.set(id, 0);
+            requested[id] = false;
+        }
+        size = 0;
+        closeIdleRetired();
+    }
+
+    private void evictToBudget() {
+        while (size > budget) {
+            int leastRecentlyUsed = -1;
+            for (int id = 0; id <= Constants.MAX_NODES; id++) {
+                if (connections.get(id) != null && (leastRecentlyUsed == -1 ||
+                        lastUsedNanos.get(id) < lastUsedNanos.get(leastRecentlyUsed))) {
+                    leastRecentlyUsed = id;
+                }
+            }
+            logger.info("Evicting shortcut to node " + leastRecentlyUsed);
+            retire(connections.getAndSet(leastRecentlyUsed, null));
+            destinationCounts.set(leastRecentlyUsed, 0);
+            size--;
+            evictions.getAndIncrement();
+        }
+    }
+
+    private void retire(TCPConnection tcpConnection) {
+        retiredConnections.add(tcpConnection);
+    }
+
+    /**
+     * Closes the retired connections that no routing thread retains and that have nothing
+     * left to send. It is called whenever shortcuts are retired, and should also be called
+     * periodically for connections that were still busy then.
+     */
+    public synchronized void closeIdleRetired() {
+        Iterator<TCPConnection> iterator = retiredConnections.iterator();
+        while (iterator.hasNext()) {
+            TCPConnection tcpConnection = iterator.next();
+            // a thread retains the connection before checking that it is still a shortcut,
+            // so once it is out of the array and idle no thread can start using it
+            if (tcpConnection.getPendingSends() == 0) {
+                close(tcpConnection);
+                iterator.remove();
+            }
+        }
+    }
+
+    private void close(TCPConnection tcpConnection) {
+        tcpConnectionsCache.removeConnection(tcpConnection.getSocket());
+        try {
+            tcpConnection.close();
+        } catch (IOException e) {
+            logger.error(e.getStackTrace());
+        }
+    }
+
+    public boolean contains(int destinationId) {
+        return destinationId >= 0 && destinationId <= Constants.MAX_NODES &&
+                connections.get(destinationId) != null;
+    }
+
+    public int getBudget() {
+        return budget;
+    }
+
+    public double getHitRate() {
+        long total = lookups.get();
+        return total == 0 ? 0 : (double) hits.get() / total;
+    }
+
+    public void printShortcuts() {
+        System.out.printf("Shortcuts: %d of %d, hit rate %.1f%% (%d of %d lookups), " +
+                        "%d evictions%n", size, budget, getHitRate() * 100, hits.get(),
+                lookups.get(), evictions.get());
+        for (int id = 0; id <= Constants.MAX_NODES; id++) {
+            if (connections.get(id) != null) {
+                System.out.println("  Shortcut to node " + id + ", " +
+                        destinationCounts.get(id) + " packets routed");
+            }
+        }
+    }
+}
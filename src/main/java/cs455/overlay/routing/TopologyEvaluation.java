@@ -0,0 +1,142 @@
+package cs455.overlay.routing;
+
+/**
+ * Routes a packet between every ordered pair of nodes with a topology and measures the hop
+ * counts, the number of packets each node relays and the throughput the overlay can sustain.
+ * Throughput assumes uniform all-to-all traffic and that every node can handle the same
+ * number of packets per second, whether it sends, relays or receives them; it is given as the
+ * number of packets delivered per unit of that per-node capacity, so the node doing the most
+ * work is the bottleneck.
+ */
+public class TopologyEvaluation {
+    private final OverlayTopology topology;
+    private final int noOfNodes;
+    private final int tableSize;
+
+    private long pairs;
+    private long totalHops;
+    private int maxHops;
+    private int hopBound;
+    private long undeliverable;
+    private long totalRelays;
+    private long maxRelays;
+    private int maxDegree;
+    private long totalDegree;
+    private long[] hopCounts;   // number of pairs per hop count
+
+    public TopologyEvaluation(OverlayTopology topology, int noOfNodes, int tableSize) {
+        this.topology = topology;
+        this.noOfNodes = noOfNodes;
+        this.tableSize = tableSize;
+        evaluate();
+    }
+
+    private void evaluate() {
+        hopBound = topology.getHopBound(noOfNodes, tableSize);
+        hopCounts = new long[noOfNodes + 1];
+        long[] relays = new long[noOfNodes];
+        for (int source = 0; source < noOfNodes; source++) {
+            int degree = topology.getNeighborPositions(source, noOfNodes, tableSize).length;
+            totalDegree += degree;
+            maxDegree = Math.max(maxDegree, degree);
+            for (int destination = 0; destination < noOfNodes; destination++) {
+                if (source == destination) {
+                    continue;
+                }
+                pairs++;
+                int hops = 0;
+                int position = source;
+                while (position != destination && position != -1 && hops <= noOfNodes) {
+                    position = topology.getNextHop(position, destination, noOfNodes, tableSize);
+                    hops++;
+                    if (position != destination && position != -1) {
+                        relays[position]++;
+                    }
+                }
+                if (position != destination) {
+                    undeliverable++;
+                    continue;
+                }
+                totalHops += hops;
+                hopCounts[hops]++;
+                maxHops = Math.max(maxHops, hops);
+            }
+        }
+        for (long relayCount : relays) {
+            totalRelays += relayCount;
+            maxRelays = Math.max(maxRelays, relayCount);
+        }
+    }
+
+    public double getMeanHops() {
+        long delivered = pairs - undeliverable;
+        return delivered == 0 ? 0 : (double) totalHops / delivered;
+    }
+
+    public int getMaxHops() {
+        return maxHops;
+    }
+
+    public int getHopBound() {
+        return hopBound;
+    }
+
+    public long getUndeliverable() {
+        return undeliverable;
+    }
+
+    public double getMeanRelays() {
+        return noOfNodes == 0 ? 0 : (double) totalRelays / noOfNodes;
+    }
+
+    public long getMaxRelays() {
+        return maxRelays;
+    }
+
+    public double getMeanDegree() {
+        return noOfNodes == 0 ? 0 : (double) totalDegree / noOfNodes;
+    }
+
+    public int getMaxDegree() {
+        return maxDegree;
+    }
+
+    /**
+     * Packets delivered per unit of per-node capacity: every node sends and receives
+     * noOfNodes - 1 packets, and the busiest node also relays maxRelays.
+     */
+    public double getRelativeThroughput() {
+        long busiestNodeLoad = 2L * (noOfNodes - 1) + maxRelays;
+        return busiestNodeLoad == 0 ? 0 : (double) pairs / busiestNodeLoad;
+    }
+
+    /**
+     * Fraction of source and destination pairs a packet travels between in each number of
+     * hops.
+     */
+    public void printHopDistribution() {
+        long delivered = pairs - undeliverable;
+        for (int hops = 1; hops <= maxHops; hops++) {
+            double percentage = delivered == 0 ? 0 : 100.0 * hopCounts[hops] / delivered;
+            System.out.printf("  %2d hops: %6.2f%% %s%n", hops, percentage,
+                    new String(new char[(int) Math.round(percentage / 2)]).replace('\0', '#'));
+        }
+        System.out.printf("  mean %.2f hops, max %d hops (bound %d)%n", getMeanHops(), maxHops,
+                hopBound);
+    }
+
+    public static void printHeader() {
+        System.out.printf("%-10s %6s %8s %8s %8s %8s %10s %10s %12s%n", "topology", "table",
+                "degree", "meanHops", "maxHops", "bound", "meanRelay", "maxRelay", "throughput");
+    }
+
+    public void print() {
+        System.out.printf("%-10s %6d %8.2f %8.2f %8d %8d %10.1f %10d %12.2f%n",
+                topology.getName(), tableSize, getMeanDegree(), getMeanHops(), maxHops, hopBound, getMeanRelays(), maxRelays,
+                getRelativeThroughput());
+        if (undeliverable > 0) {
+            System.out.println("  " + undeliverable + " of " + pairs +
+                    " packets could not be delivered");
+        }
+    }
+}
@@ -0,0 +1,94 @@
+package cs455.overlay.routing;
+
+import java.util.Arrays;
+
+/**
+ * Kademlia-style layout. Bucket j of the node at position x holds the positions that share all
+ * bits above bit j with x and differ from it in bit j. Every node keeps up to tableSize
+ * contacts per bucket, those closest in XOR distance to x with bit j flipped. Packets go to the
+ * contact closest in XOR distance to the destination, which fixes at least the highest
+ * differing bit on every hop.
+ */
+public class XorBucketTopology implements OverlayTopology {
+    public static final byte ID = 2;
+
+    @Override
+    public byte getId() {
+        return ID;
+    }
+
+    @Override
+    public String getName() {
+        return "kademlia";
+    }
+
+    private static int contactsPerBucket(int tableSize) {
+        return Math.max(1, tableSize);
+    }
+
+    @Override
+    public int[] getNeighborPositions(int position, int noOfNodes, int tableSize) {
+        int bits = FingerRouting.ceilLog2(noOfNodes);
+        int contacts = contactsPerBucket(tableSize);
+        int[] neighbors = new int[bits * contacts];
+        int noOfNeighbors = 0;
+        for (int j = 0; j < bits; j++) {
+            int bucketSize = 1 << j;
+            int target = position ^ bucketSize;
+            // XOR distances to target within the bucket are 0 .. bucketSize - 1
+            for (int offset = 0, added = 0; offset < bucketSize && added < contacts; offset++) {
+                int contact = target ^ offset;
+                if (contact < noOfNodes) {
+                    neighbors[noOfNeighbors++] = contact;
+                    added++;
+                }
+            }
+        }
+        return Arrays.copyOf(neighbors, noOfNeighbors);
+    }
+
+    @Override
+    public int getNextHop(int position, int destinationPosition, int noOfNodes, int tableSize) {
+        if (position == destinationPosition) {
+            return -1;
+        }
+        // the destination lies in the bucket of the highest bit in which it differs from us;
+        // the contact of that bucket closest to the destination is the next hop
+        int j = 31 - Integer.numberOfLeadingZeros(position ^ destinationPosition);
+        int bucketSize = 1 << j;
+        int target = position ^ bucketSize;
+        int contacts = contactsPerBucket(tableSize);
+        int best = -1;
+        for (int offset = 0, added = 0; offset < bucketSize && added < contacts; offset++) {
+            int contact = target ^ offset;
+            if (contact < noOfNodes) {
+                if (best == -1 || (contact ^ destinationPosition) <
+                        (best ^ destinationPosition)) {
+                    best = contact;
+                }
+                added++;
+            }
+        }
+        return best;
+    }
+
+    @Override
+    public int getHopBound(int noOfNodes, int tableSize) {
+        return FingerRouting.ceilLog2(noOfNodes);
+    }
+
+    /**
+     * One contact in each of the ceil(log2 N) buckets.
+     */
+    @Override
+    public int getOptimalTableSize(int noOfNodes) {
+        return 1;
+    }
+
+    @Override
+    public int clampTableSize(int tableSize, int noOfNodes) {
+        // the largest bucket holds half of the positions
+        return Math.min(tableSize, Math.max(1, Integer.highestOneBit(Math.max(1,
+                noOfNodes - 1))));
+    }
+}
@@ -0,0 +1,264 @@
+package cs455.overlay.simulator;
+
+import java.util.Arrays;
+import java.util.PriorityQueue;
+import java.util.SplittableRandom;
+
+import cs455.overlay.routing.FingerRouting;
+import cs455.overlay.routing.OverlayTopologies;
+import cs455.overlay.routing.OverlayTopology;
+import cs455.overlay.routing.RoutingEntry;
+import cs455.overlay.routing.RoutingSnapshot;
+import cs455.overlay.routing.RoutingTable;
+import cs455.overlay.util.HopCountHistogram;
+import cs455.overlay.util.LatencyHistogram;
+
+/**
+ * Discrete event simulation of an overlay of virtual nodes, up to about a million, routing
+ * packets with the same topology code the registry uses to build routing tables and the
+ * nodes use to route. Nodes have no per-node tables: next hops come from the topology in
+ * closed form, and a sample of nodes has its real RoutingTable and RoutingSnapshot built to
+ * check that they route exactly like the simulation.
+ *
+ * Every node sends one packet at a time at the configured bandwidth, so packets queue at busy
+ * nodes; each link adds a fixed latency plus jitter derived from its endpoints. Packets are
+ * injected at random sources towards random destinations as a Poisson process.
+ */
+public class OverlaySimulator {
+    private final SimulationConfig config;
+    private final OverlayTopology topology;
+    private final int noOfNodes;
+    private final int tableSize;
+
+    private final long[] busyUntilNanos;    // when each node finishes its current send
+    private final int[] relays;
+    private final HopCountHistogram hopCountHistogram = new HopCountHistogram();
+    private final LatencyHistogram latencyHistogram = new LatencyHistogram();
+    private final PriorityQueue<PacketArrival> events = new PriorityQueue<>();
+    private final SplittableRandom random;
+
+    private long delivered;
+    private long undeliverable;
+    private long lastDeliveryNanos;
+    private long sequence;
+
+    /**
+     * A packet arriving at a node; packets are ordered by arrival time, then by the order in
+     * which they were scheduled so that runs are reproducible.
+     */
+    private static final class PacketArrival implements Comparable<PacketArrival> {
+        final long timeNanos;
+        final long sequence;
+        final int node;
+        final int destination;
+        final int hops;
+        final long sendTimeNanos;
+
+        PacketArrival(long timeNanos, long sequence, int node, int destination, int hops,
+                      long sendTimeNanos) {
+            this.timeNanos = timeNanos;
+            this.sequence = sequence;
+            this.node = node;
+            this.destination = destination;
+            this.hops = hops;
+            this.sendTimeNanos = sendTimeNanos;
+        }
+
+        @Override
+        public int compareTo(PacketArrival other) {
+            int byTime = Long.compare(timeNanos, other.timeNanos);
+            return byTime != 0 ? byTime : Long.compare(sequence, other.sequence);
+        }
+    }
+
+    public OverlaySimulator(SimulationConfig config) {
+        this.config = config;
+        this.topology = config.getTopology();
+        this.noOfNodes = config.getNoOfNodes();
+        this.tableSize = config.getTableSize();
+        busyUntilNanos = new long[noOfNodes];
+        relays = new int[noOfNodes];
+        random = new SplittableRandom(config.getSeed());
+    }
+
+    public static void main(String[] args) {
+        SimulationConfig config;
+        try {
+            config = SimulationConfig.parse(args);
+        } catch (IllegalArgumentException e) {
+            System.out.println(e.getMessage());
+            System.exit(1);
+            return;
+        }
+        OverlaySimulator simulator = new OverlaySimulator(config);
+        System.out.println("Simulating " + config);
+        simulator.printTableStatistics();
+        simulator.verifyRoutingTables();
+        long startTime = System.nanoTime();
+        simulator.run();
+        System.out.printf("Simulation took %.1f s%n", (System.nanoTime() - startTime) / 1e9);
+        simulator.printResults();
+    }
+
+    /**
+     * Degrees of the routing tables the registry would send, computed node by node without
+     * keeping the tables.
+     */
+    public void printTableStatistics() {
+        long totalDegree = 0;
+        int maxDegree = 0;
+        for (int position = 0; position < noOfNodes; position++) {
+            int degree = getNeighborPositions(position).length;
+            totalDegree += degree;
+            maxDegree = Math.max(maxDegree, degree);
+        }
+        System.out.printf("Routing tables: mean %.2f entries, max %d entries, hop bound %d%n",
+                (double) totalDegree / noOfNodes, maxDegree,
+                topology.getHopBound(noOfNodes, tableSize));
+    }
+
+    private int[] getNeighborPositions(int position) {
+        return OverlayTopologies.withSuccessors(
+                topology.getNeighborPositions(position, noOfNodes, tableSize), position,
+                noOfNodes, config.getNoOfSuccessors());
+    }
+
+    /**
+     * Builds the RoutingTable and RoutingSnapshot of a few random nodes exactly as a
+     * messaging node does from its manifest and checks that they pick the same next hop as
+     * the simulation for every destination.
+     */
+    public void verifyRoutingTables() {
+        int[] allNodeIds = new int[noOfNodes];
+        for (int position = 0; position < noOfNodes; position++) {
+            allNodeIds[position] = position;
+        }
+        int mismatches = 0;
+        for (int sample = 0; sample < config.getNoOfNodesToVerify(); sample++) {
+            int position = random.nextInt(noOfNodes);
+            int[] neighborPositions = getNeighborPositions(position);
+            RoutingTable routingTable = new RoutingTable(neighborPositions.length);
+            for (int neighborPosition : neighborPositions) {
+                routingTable.addRoutingEntry(new RoutingEntry(
+                        FingerRouting.clockwiseDistance(position, neighborPosition, noOfNodes),
+                        neighborPosition, "127.0.0.1", 0));
+            }
+            RoutingSnapshot snapshot = new RoutingSnapshot(position, routingTable, allNodeIds,
+                    topology, tableSize, null, 0);
+            for (int destination = 0; destination < noOfNodes; destination++) {
+                if (destination == position) {
+                    continue;
+                }
+                int finger = snapshot.getNextHopFinger(position, destination, 0);
+                int expected = topology.getNextHop(position, destination, noOfNodes, tableSize);
+                if (finger == -1 || routingTable.getNodeId(finger) != expected) {
+                    mismatches++;
+                }
+            }
+        }
+        System.out.println("Verified the routing tables of " + config.getNoOfNodesToVerify() +
+                " nodes against the simulation: " + mismatches + " mismatched next hops");
+    }
+
+    public void run() {
+        long injectionTimeNanos = 0;
+        long injected = 0;
+        double meanGapNanos = 1e9 / config.getPacketsPerSecond();
+        long transmissionNanos = config.getTransmissionNanos();
+
+        // injections are generated in time order alongside the event queue, so the queue only
+        // holds packets in flight
+        while (injected < config.getNoOfPackets() || !events.isEmpty()) {
+            if (injected < config.getNoOfPackets() &&
+                    (events.isEmpty() || injectionTimeNanos <= events.peek().timeNanos)) {
+                int source = random.nextInt(noOfNodes);
+                int destination = random.nextInt(noOfNodes - 1);
+                if (destination >= source) {
+                    destination++;
+                }
+                forward(source, destination, 0, injectionTimeNanos, injectionTimeNanos,
+                        transmissionNanos);
+                injected++;
+                injectionTimeNanos += (long) (-Math.log(1 - random.nextDouble()) * meanGapNanos);
+                continue;
+            }
+
+            PacketArrival arrival = events.poll();
+            if (arrival.node == arrival.destination) {
+                delivered++;
+                hopCountHistogram.record(arrival.hops,
+                        topology.getHopBound(noOfNodes, tableSize));
+                latencyHistogram.record(arrival.timeNanos - arrival.sendTimeNanos);
+                lastDeliveryNanos = arrival.timeNanos;
+            } else {
+                relays[arrival.node]++;
+                forward(arrival.node, arrival.destination, arrival.hops, arrival.timeNanos,
+                        arrival.sendTimeNanos, transmissionNanos);
+            }
+        }
+    }
+
+    /**
+     * Queues the packet behind the node's earlier sends and schedules its arrival at the
+     * next hop.
+     */
+    private void forward(int node, int destination, int hops, long nowNanos, long sendTimeNanos,
+                         long transmissionNanos) {
+        int nextHop = topology.getNextHop(node, destination, noOfNodes, tableSize);
+        if (nextHop < 0 || hops >= noOfNodes) {
+            undeliverable++;
+            return;
+        }
+        long departureNanos = Math.max(nowNanos, busyUntilNanos[node]) + transmissionNanos;
+        busyUntilNanos[node] = departureNanos;
+        events.add(new PacketArrival(departureNanos + linkLatencyNanos(node, nextHop),
+                sequence++, nextHop, destination, hops + 1, sendTimeNanos));
+    }
+
+    /**
+     * Fixed latency of the link between two nodes: the base latency plus jitter derived from
+     * a hash of the endpoints, so every link keeps the same latency for the whole run.
+     */
+    private long linkLatencyNanos(int from, int to) {
+        long jitter = config.getLinkJitterNanos();
+        if (jitter == 0) {
+            return config.getLinkLatencyNanos();
+        }
+        long hash = (from * 0x9E3779B97F4A7C15L) ^ (to * 0xC2B2AE3D27D4EB4FL);
+        hash ^= hash >>> 31;
+        hash *= 0xBF58476D1CE4E5B9L;
+        hash ^= hash >>> 29;
+        return config.getLinkLatencyNanos() + Math.floorMod(hash, jitter + 1);
+    }
+
+    public void printResults() {
+        System.out.println("Packets delivered: " + delivered + ", undeliverable: " +
+                undeliverable);
+        System.out.println("Hop counts: " + hopCountHistogram);
+        System.out.printf("Mean hops: %.2f, max hops: %d, packets over the hop bound: %d%n",
+                hopCountHistogram.getMean(), hopCountHistogram.getMax(),
+                hopCountHistogram.getBoundViolations());
+        System.out.println("End-to-end latency: " + latencyHistogram.toPercentileString());
+
+        int[] sortedRelays = relays.clone();
+        Arrays.sort(sortedRelays);
+        long totalRelays = 0;
+        for (int relayCount : sortedRelays) {
+            totalRelays += relayCount;
+        }
+        System.out.printf("Packets relayed per node: mean %.1f, p50 %d, p99 %d, max %d%n",
+                (double) totalRelays / noOfNodes, sortedRelays[noOfNodes / 2],
+                sortedRelays[(int) Math.min(noOfNodes - 1, (long) noOfNodes * 99 / 100)],
+                sortedRelays[noOfNodes - 1]);
+
+        double seconds = lastDeliveryNanos / 1e9;
+        System.out.printf("Throughput: %.0f packets/s delivered over %.3f simulated s " +
+                        "(offered %.0f packets/s)%n", seconds == 0 ? 0 : delivered / seconds,
+                seconds, config.getPacketsPerSecond());
+        // the busiest node sends, relays and receives; it saturates first
+        double busiestNodeShare = (double) (sortedRelays[noOfNodes - 1] + 2 * delivered /
+                noOfNodes) / Math.max(1, delivered);
+        System.out.printf("Estimated saturation throughput: %.0f packets/s%n",
+                1e9 / config.getTransmissionNanos() / Math.max(busiestNodeShare, 1e-12));
+    }
+}
@@ -0,0 +1,159 @@
+package cs455.overlay.simulator;
+
+import cs455.overlay.routing.OverlayTopologies;
+import cs455.overlay.routing.OverlayTopology;
+
+/**
+ * Parameters of a simulation run, parsed from the command line as the number of nodes, the
+ * number of packets and any number of key=value options.
+ */
+public class SimulationConfig {
+    public static final String USAGE = "Usage: OverlaySimulator <nodes> <packets> " +
+            "[topology=" + OverlayTopologies.getNames() + "] [table=<size>|auto] " +
+            "[successors=<n>] [rate=<packets per second>] [latency-us=<n>] " +
+            "[jitter-us=<n>] [bandwidth-mbps=<n>] [packet-bytes=<n>] [seed=<n>] " +
+            "[verify=<nodes>]";
+
+    private int noOfNodes;
+    private long noOfPackets;
+    private OverlayTopology topology = OverlayTopologies.getDefault();
+    private int tableSize = 0;                  // 0 means the topology's optimal size
+    private int noOfSuccessors = 0;
+    private double packetsPerSecond = 1_000_000;
+    private long linkLatencyNanos = 100_000;
+    private long linkJitterNanos = 50_000;
+    private double bandwidthBitsPerSecond = 1e9;
+    private int packetBytes = 64;
+    private long seed = 42;
+    private int noOfNodesToVerify = -1;         // -1 means based on the number of nodes
+
+    public static SimulationConfig parse(String[] args) {
+        if (args.length < 2) {
+            throw new IllegalArgumentException(USAGE);
+        }
+        SimulationConfig config = new SimulationConfig();
+        config.noOfNodes = Integer.parseInt(args[0]);
+        config.noOfPackets = Long.parseLong(args[1]);
+        for (int i = 2; i < args.length; i++) {
+            String[] option = args[i].split("=", 2);
+            if (option.length != 2) {
+                throw new IllegalArgumentException(USAGE);
+            }
+            String value = option[1];
+            switch (option[0]) {
+                case "topology":
+                    config.topology = OverlayTopologies.getByName(value);
+                    if (config.topology == null) {
+                        throw new IllegalArgumentException("Unknown topology: " + value);
+                    }
+                    break;
+                case "table":
+                    config.tableSize = value.equals("auto") ? 0 : Integer.parseInt(value);
+                    break;
+                case "successors":
+                    config.noOfSuccessors = Integer.parseInt(value);
+                    break;
+                case "rate":
+                    config.packetsPerSecond = Double.parseDouble(value);
+                    break;
+                case "latency-us":
+                    config.linkLatencyNanos = Long.parseLong(value) * 1000;
+                    break;
+                case "jitter-us":
+                    config.linkJitterNanos = Long.parseLong(value) * 1000;
+                    break;
+                case "bandwidth-mbps":
+                    config.bandwidthBitsPerSecond = Double.parseDouble(value) * 1e6;
+                    break;
+                case "packet-bytes":
+                    config.packetBytes = Integer.parseInt(value);
+                    break;
+                case "seed":
+                    config.seed = Long.parseLong(value);
+                    break;
+                case "verify":
+                    config.noOfNodesToVerify = Integer.parseInt(value);
+                    break;
+                default:
+                    throw new IllegalArgumentException("Unknown option: " + option[0] + "\n" +
+                            USAGE);
+            }
+        }
+        if (config.noOfNodes < 2 || config.noOfPackets < 0 || config.packetsPerSecond <= 0 ||
+                config.bandwidthBitsPerSecond <= 0) {
+            throw new IllegalArgumentException(USAGE);
+        }
+        if (config.noOfNodesToVerify < 0) {
+            // a node's snapshot takes O(N log^2 N) to build, seconds for a million nodes
+            config.noOfNodesToVerify = config.noOfNodes <= 100_000 ? 4 : 1;
+        }
+        if (config.tableSize <= 0) {
+            config.tableSize = config.topology.getOptimalTableSize(config.noOfNodes);
+        } else {
+            config.tableSize = config.topology.clampTableSize(config.tableSize,
+                    config.noOfNodes);
+        }
+        return config;
+    }
+
+    public int getNoOfNodes() {
+        return noOfNodes;
+    }
+
+    public long getNoOfPackets() {
+        return noOfPackets;
+    }
+
+    public OverlayTopology getTopology() {
+        return topology;
+    }
+
+    public int getTableSize() {
+        return tableSize;
+    }
+
+    public int getNoOfSuccessors() {
+        return noOfSuccessors;
+    }
+
+    public double getPacketsPerSecond() {
+        return packetsPerSecond;
+    }
+
+    public long getLinkLatencyNanos() {
+        return linkLatencyNanos;
+    }
+
+    public long getLinkJitterNanos() {
+        return linkJitterNanos;
+    }
+
+    /**
+     * Time it takes a node to put one packet on the wire.
+     */
+    public long getTransmissionNanos() {
+        return Math.max(1, (long) (packetBytes * 8 * 1e9 / bandwidthBitsPerSecond));
+    }
+
+    public int getPacketBytes() {
+        return packetBytes;
+    }
+
+    public long getSeed() {
+        return seed;
+    }
+
+    public int getNoOfNodesToVerify() {
+        return noOfNodesToVerify;
+    }
+
+    @Override
+    public String toString() {
+        return noOfNodes + " nodes, " + noOfPackets + " packets, topology " +
+                topology.getName() + " (table size " + tableSize + ", " + noOfSuccessors +
+                " successors), " + (long) packetsPerSecond + " packets/s, link latency " +
+                linkLatencyNanos / 1000 + " us + up to " + linkJitterNanos / 1000 +
+                " us jitter, " + (long) (bandwidthBitsPerSecond / 1e6) + " Mbit/s per node, " +
+                packetBytes + " byte packets, seed " + seed;
+    }
+}
@@ -0,0 +1,191 @@
+package cs455.overlay.transport;
+
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.concurrent.locks.LockSupport;
+import java.util.function.BooleanSupplier;
+
+/**
+ * A bounded multi-producer, multi-consumer queue on a ring buffer. Every slot carries a
+ * sequence number that says whether it is ready to be written or read in the current lap,
+ * so producers and consumers only contend on a compare-and-set of the tail or head and never
+ * take a lock.
+ *
+ * A consumer that keeps finding the queue empty blocks in take() until a producer adds an
+ * element. Producers only take the lock to wake it while some consumer is blocked, so a busy
+ * queue stays lock free and an idle one costs no CPU.
+ */
+public class BoundedQueue<E> {
+    private static final int SPIN_ATTEMPTS = 64;
+    private static final int YIELD_ATTEMPTS = 128;
+    private static final long PARK_NANOS = 50_000;
+
+    private final AtomicReferenceArray<E> buffer;
+    private final AtomicLongArray sequences;
+    private final int mask;
+    // next position to read from and to write to
+    private final AtomicLong head = new AtomicLong();
+    private final AtomicLong tail = new AtomicLong();
+    // consumers blocked, or about to block, on the lock in take()
+    private final AtomicInteger waitingConsumers = new AtomicInteger();
+    private final Object lock = new Object();
+
+    /**
+     * @param capacity rounded up to a power of two
+     */
+    public BoundedQueue(int capacity) {
+        int size = Integer.highestOneBit(Math.max(2, capacity) - 1) << 1;
+        buffer = new AtomicReferenceArray<>(size);
+        sequences = new AtomicLongArray(size);
+        for (int i = 0; i < size; i++) {
+            sequences.set(i, i);
+        }
+        mask = size - 1;
+    }
+
+    /**
+     * Adds the element if there is room and returns whether it was added.
+     */
+    public boolean offer(E element) {
+        long position = tail.get();
+        while (true) {
+            int index = (int) position & mask;
+            long difference = sequences.get(index) - position;
+            if (difference == 0) {
+                if (tail.compareAndSet(position, position + 1)) {
+                    buffer.lazySet(index, element);
+                    // publishes the element to the consumer that claims this position
+                    sequences.set(index, position + 1);
+                    // the element is published before the check, and a consumer counts
+                    // itself waiting before checking the queue, so one of them sees the other
+                    if (waitingConsumers.get() > 0) {
+                        synchronized (lock) {
+                            lock.notify();
+                        }
+                    }
+                    return true;
+                }
+                position = tail.get();
+            } else if (difference < 0) {
+                // the slot still holds the element from the previous lap
+                return false;
+            } else {
+                position = tail.get();
+            }
+        }
+    }
+
+    /**
+     * Removes and returns the oldest element, or null if the queue is empty.
+     */
+    public E poll() {
+        long position = head.get();
+        while (true) {
+            int index = (int) position & mask;
+            long difference = sequences.get(index) - (position + 1);
+            if (difference == 0) {
+                if (head.compareAndSet(position, position + 1)) {
+                    E element = buffer.get(index);
+                    buffer.lazySet(index, null);
+                    // frees the slot for the producer one lap ahead
+                    sequences.set(index, position + mask + 1);
+                    return element;
+                }
+                position = head.get();
+            } else if (difference < 0) {
+                return null;
+            } else {
+                position = head.get();
+            }
+        }
+    }
+
+    /**
+     * Removes and returns the oldest element, waiting for one while keepWaiting is true.
+     * Returns null if it is false, or if the consumer was woken with the queue empty, so the
+     * caller can check why before calling again. Whatever makes keepWaiting false must call
+     * wakeConsumers() afterwards.
+     */
+    public E take(BooleanSupplier keepWaiting) {
+        int attempt = 0;
+        while (keepWaiting.getAsBoolean()) {
+            E element = poll();
+            if (element != null) {
+                return element;
+            }
+            if (attempt < YIELD_ATTEMPTS) {
+                idle(attempt++);
+                continue;
+            }
+            synchronized (lock) {
+                waitingConsumers.getAndIncrement();
+                try {
+                    if (isEmpty() && keepWaiting.getAsBoolean()) {
+                        lock.wait();
+                    }
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    return null;
+                } finally {
+                    waitingConsumers.getAndDecrement();
+                }
+            }
+            return poll();
+        }
+        return null;
+    }
+
+    /**
+     * Wakes every consumer blocked in take(), e.g. after a change to what they wait for.
+     */
+    public void wakeConsumers() {
+        synchronized (lock) {
+            lock.notifyAll();
+        }
+    }
+
+    /**
+     * Adds the element, waiting for room if the queue is full. This is what pushes back on
+     * whatever feeds a stage that cannot keep up.
+     */
+    public void put(E element) {
+        int attempt = 0;
+        while (!offer(element)) {
+            idle(attempt++);
+        }
+    }
+
+    /**
+     * Number of elements in the queue; only a snapshot while other threads are using it.
+     */
+    public int size() {
+        long size = tail.get() - head.get();
+        return (int) Math.max(0, Math.min(size, capacity()));
+    }
+
+    public boolean isEmpty() {
+        return tail.get() == head.get();
+    }
+
+    public int capacity() {
+        return mask + 1;
+    }
+
+    /**
+     * Waits a little longer the more often a thread has found a queue empty or full in a
+     * row: spinning first, then yielding, then parking. Consumers that find it empty for
+     * longer than that block in take() instead.
+     */
+    public static void idle(int attempt) {
+        if (attempt < SPIN_ATTEMPTS) {
+            return;
+        }
+        if (attempt < YIELD_ATTEMPTS) {
+            Thread.yield();
+        } else {
+            LockSupport.parkNanos(PARK_NANOS);
+        }
+    }
+}
@@ -0,0 +1,46 @@
+package cs455.overlay.transport;
+
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+
+/**
+ * A message waiting to be sent, made of a header and an optional body that is a slice of some
+ * other array, e.g. of the message a relay received. The two are written back to back, so a
+ * relayed payload goes out without being copied into a new array.
+ */
+final class Frame {
+    private static final ByteBuffer EMPTY = ByteBuffer.allocate(0);
+
+    private final byte[] header;
+    private final ByteBuffer body;
+
+    Frame(byte[] data) {
+        this(data, EMPTY);
+    }
+
+    Frame(byte[] header, ByteBuffer body) {
+        this.header = header;
+        this.body = body;
+    }
+
+    byte getMessageType() {
+        return header[0];
+    }
+
+    int length() {
+        return header.length + body.remaining();
+    }
+
+    /**
+     * Writes the length prefixed message. Bodies larger than the stream's buffer are written
+     * straight to the socket.
+     */
+    void writeTo(DataOutputStream dout) throws IOException {
+        dout.writeInt(length());
+        dout.write(header, 0, header.length);
+        if (body.hasRemaining()) {
+            dout.write(body.array(), body.arrayOffset() + body.position(), body.remaining());
+        }
+    }
+}
@@ -0,0 +1,106 @@
+package cs455.overlay.transport;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Consumer;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+/**
+ * One stage of a staged pipeline: a bounded queue drained by a resizable set of threads that
+ * each pass elements to the stage's handler. A stage that falls behind fills its queue and
+ * blocks the stage feeding it, instead of stalling the stages after it.
+ */
+public class Stage<E> {
+    private static final Logger logger = LogManager.getLogger(Stage.class);
+    public static final int MAX_THREADS = 64;
+
+    private final String name;
+    private final BoundedQueue<E> queue;
+    private final Consumer<E> handler;
+    private final Thread[] threads = new Thread[MAX_THREADS];
+    private volatile int noOfThreads;
+    private final AtomicLong processed = new AtomicLong();
+
+    public Stage(String name, int capacity, int noOfThreads, Consumer<E> handler) {
+        this.name = name;
+        this.queue = new BoundedQueue<>(capacity);
+        this.handler = handler;
+        setNoOfThreads(noOfThreads);
+    }
+
+    public void submit(E element) {
+        queue.put(element);
+    }
+
+    /**
+     * Starts or retires threads until the stage has the given number. Retiring threads
+     * finish the element they are handling first.
+     */
+    public synchronized void setNoOfThreads(int noOfThreads) {
+        if (noOfThreads < 1 || noOfThreads > MAX_THREADS) {
+            throw new IllegalArgumentException("A stage needs between 1 and " + MAX_THREADS +
+                    " threads");
+        }
+        this.noOfThreads = noOfThreads;
+        // threads blocked on an empty queue have to see that they are to retire
+        queue.wakeConsumers();
+        for (int i = 0; i < noOfThreads; i++) {
+            if (threads[i] == null) {
+                int index = i;
+                threads[i] = new Thread(() -> run(index), name + "-" + i);
+                threads[i].setDaemon(true);
+                threads[i].start();
+            }
+        }
+    }
+
+    private void run(int index) {
+        while (index < noOfThreads || !retire(index)) {
+            E element = queue.take(() -> index < noOfThreads);
+            if (element == null) {
+                continue;
+            }
+            try {
+                handler.accept(element);
+            } catch (RuntimeException e) {
+                logger.error("Error in stage " + name);
+                logger.error(e.getStackTrace());
+            }
+            processed.getAndIncrement();
+        }
+    }
+
+    private synchronized boolean retire(int index) {
+        if (index < noOfThreads) {
+            return false;
+        }
+        threads[index] = null;
+        return true;
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    public int getNoOfThreads() {
+        return noOfThreads;
+    }
+
+    public int getQueueDepth() {
+        return queue.size();
+    }
+
+    public int getCapacity() {
+        return queue.capacity();
+    }
+
+    public long getProcessed() {
+        return processed.get();
+    }
+
+    @Override
+    public String toString() {
+        return String.format("%s: %d/%d queued, %d threads, %d processed", name,
+                getQueueDepth(), getCapacity(), noOfThreads, getProcessed());
+    }
+}
@@ -2,7 +2,12 @@ package cs455.overlay.transport;
 
 import java.io.IOException;
 import java.net.Socket;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
 import cs455.overlay.node.Node;
+import cs455.overlay.util.Constants;
 import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
 
@@ -13,9 +18,20 @@ public class TCPConnection {
     private TCPReceiverThread tcpReceiverThread;
     private Node node;  // node associated with the TCPConnection
 
+    // number of threads currently writing, or waiting to write, to this connection
+    private final AtomicInteger pendingSends = new AtomicInteger(0);
+    private final AtomicLong packetsSent = new AtomicLong(0);
+    private final AtomicLong bytesSent = new AtomicLong(0);
+    // messages waiting for the link's sender thread, which is started by the first queueData
+    private volatile BoundedQueue<Frame> sendQueue;
+    // node at the other end of an overlay link; 0 for the registry and accepted connections
+    private volatile int peerNodeId;
+    private volatile boolean closed;
+
     public TCPConnection(Socket socket, Node node) throws IOException {
         this.socket = socket;
         this.node = node;
+        tcpSender = new TCPSender(socket);
         tcpReceiverThread = new TCPReceiverThread(socket, node);
         tcpReceiverThread.start();
     }
@@ -25,14 +41,169 @@ public class TCPConnection {
     }
 
     public void sendData(byte[] data) throws IOException {
-        if (tcpSender == null) {
-            tcpSender = new TCPSender(socket);
-        }
+        pendingSends.getAndIncrement();
         try {
             tcpSender.sendData(data);
+            packetsSent.getAndIncrement();
+            bytesSent.getAndAdd(data.length);
         } catch (IOException e) {
             logger.error("Error while sending data ...");
             logger.error(e.getMessage());
+        } finally {
+            pendingSends.getAndDecrement();
+        }
+    }
+
+    /**
+     * Hands the message to this link's sender thread, waiting only if its queue is full, so
+     * that a slow link holds up nothing but the messages queued for it. Returns false,
+     * without waiting, if the connection has been closed.
+     */
+    public boolean queueData(byte[] data) {
+        return queueFrame(new Frame(data));
+    }
+
+    /**
+     * Queues a message made of a header followed by the body's remaining bytes. The body is
+     * sent from its own array, so it must not be modified until it has been sent.
+     */
+    public boolean queueData(byte[] header, ByteBuffer body) {
+        return queueFrame(new Frame(header, body));
+    }
+
+    private boolean queueFrame(Frame frame) {
+        if (closed) {
+            node.onMessageDropped(frame.getMessageType());
+            return false;
+        }
+        BoundedQueue<Frame> queue = sendQueue;
+        if (queue == null) {
+            queue = startSenderThread();
+        }
+        for (int attempt = 0; !queue.offer(frame); attempt++) {
+            if (closed) {
+                node.onMessageDropped(frame.getMessageType());
+                return false;
+            }
+            BoundedQueue.idle(attempt);
+        }
+        if (closed) {
+            // close() may have emptied the queue before the frame went in
+            dropQueuedFrames(queue);
+        }
+        return true;
+    }
+
+    private synchronized BoundedQueue<Frame> startSenderThread() {
+        if (sendQueue == null) {
+            BoundedQueue<Frame> queue = new BoundedQueue<>(Constants.LINK_SEND_QUEUE_CAPACITY);
+            Thread senderThread = new Thread(() -> drainSendQueue(queue),
+                    "link-sender-" + socket.getPort());
+            senderThread.setDaemon(true);
+            senderThread.start();
+            sendQueue = queue;
+        }
+        return sendQueue;
+    }
+
+    private void drainSendQueue(BoundedQueue<Frame> queue) {
+        Frame[] batch = new Frame[Constants.LINK_SEND_BATCH_SIZE];
+        while (!closed) {
+            Frame frame = queue.take(() -> !closed);
+            if (frame == null) {
+                continue;
+            }
+            int batchSize = 0;
+            batch[batchSize++] = frame;
+            while (batchSize < batch.length && (frame = queue.poll()) != null) {
+                batch[batchSize++] = frame;
+            }
+            try {
+                tcpSender.sendData(batch, batchSize);
+                packetsSent.getAndAdd(batchSize);
+                for (int i = 0; i < batchSize; i++) {
+                    bytesSent.getAndAdd(batch[i].length());
+                }
+            } catch (IOException e) {
+                logger.error("Error while sending data ...");
+                logger.error(e.getMessage());
+                for (int i = 0; i < batchSize; i++) {
+                    node.onMessageDropped(batch[i].getMessageType());
+                }
+                closeQuietly();
+            }
+            Arrays.fill(batch, 0, batchSize, null);
+        }
+        dropQueuedFrames(queue);
+    }
+
+    private void dropQueuedFrames(BoundedQueue<Frame> queue) {
+        Frame frame;
+        while ((frame = queue.poll()) != null) {
+            node.onMessageDropped(frame.getMessageType());
+        }
+    }
+
+    /**
+     * Counts a thread that is about to queue a message on this connection as a pending send,
+     * so that the connection does not look idle until it calls release().
+     */
+    public void retain() {
+        pendingSends.getAndIncrement();
+    }
+
+    public void release() {
+        pendingSends.getAndDecrement();
+    }
+
+    /**
+     * Number of sends in progress or queued on this connection, i.e. its current outbound
+     * queue depth.
+     */
+    public int getPendingSends() {
+        BoundedQueue<Frame> queue = sendQueue;
+        return pendingSends.get() + (queue == null ? 0 : queue.size());
+    }
+
+    public int getPeerNodeId() {
+        return peerNodeId;
+    }
+
+    public void setPeerNodeId(int peerNodeId) {
+        this.peerNodeId = peerNodeId;
+    }
+
+    public long getPacketsSent() {
+        return packetsSent.get();
+    }
+
+    public long getBytesSent() {
+        return bytesSent.get();
+    }
+
+    /**
+     * Closes the socket, which also stops the receiver thread. Messages still queued are
+     * dropped and reported to the node, and later ones are refused.
+     */
+    public void close() throws IOException {
+        closed = true;
+        try {
+            socket.close();
+        } finally {
+            BoundedQueue<Frame> queue = sendQueue;
+            if (queue != null) {
+                // lets a sender thread blocked on an empty queue exit
+                queue.wakeConsumers();
+                dropQueuedFrames(queue);
+            }
+        }
+    }
+
+    private void closeQuietly() {
+        try {
+            close();
+        } catch (IOException e) {
+            logger.error(e.getMessage());
         }
     }
 
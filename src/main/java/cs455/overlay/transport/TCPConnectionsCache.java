@@ -26,6 +26,10 @@ public class TCPConnectionsCache {
         return cachedConnections.containsKey(socket);
     }
 
+    public synchronized int size() {
+        return cachedConnections.size();
+    }
+
     public void printConnections() {
         Set<Socket> sockets = cachedConnections.keySet();
         if (sockets.size() == 0) {
@@ -29,7 +29,9 @@ public class TCPReceiverThread extends Thread {
                 dataLength = din.readInt();
                 byte[] data = new byte[dataLength];
                 din.readFully(data, 0, dataLength);
-                node.onEvent(EventFactory.getInstance().getEvent(data, socket));
+                if (!node.offerMessage(data, socket)) {
+                    node.onEvent(EventFactory.getInstance().getEvent(data, socket));
+                }
             } catch (IOException se) {
                 logger.error(se.getStackTrace());
                 break;
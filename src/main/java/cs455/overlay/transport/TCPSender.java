@@ -26,4 +26,16 @@ public class TCPSender {
             dout.flush();
         }
     }
+
+    /**
+     * Sends several messages with a single flush.
+     */
+    void sendData(Frame[] batch, int batchSize) throws IOException {
+        synchronized (socket) {
+            for (int i = 0; i < batchSize; i++) {
+                batch[i].writeTo(dout);
+            }
+            dout.flush();
+        }
+    }
 }
@@ -0,0 +1,39 @@
+package cs455.overlay.util;
+
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Tracks the chunks of large messages arriving at their destination, so a message is only
+ * counted once all of its chunks are in. Chunks can take different paths and arrive in any
+ * order; only how many are still missing is kept, as nothing reads the payload bytes.
+ */
+public class ChunkReassembler {
+    // source ID and message ID -> chunks still missing
+    private final ConcurrentHashMap<Long, Integer> missingChunks = new ConcurrentHashMap<>();
+
+    /**
+     * Adds one chunk and returns true if it completed its message.
+     */
+    public boolean addChunk(int sourceId, int messageId, int noOfChunks) {
+        long key = ((long) sourceId << 32) | (messageId & 0xFFFFFFFFL);
+        Integer missing = missingChunks.compute(key, (k, remaining) -> {
+            int stillMissing = (remaining == null ? noOfChunks : remaining) - 1;
+            return stillMissing == 0 ? null : stillMissing;
+        });
+        return missing == null;
+    }
+
+    /**
+     * Number of messages with some but not all chunks received.
+     */
+    public int getIncompleteMessages() {
+        return missingChunks.size();
+    }
+
+    /**
+     * Forgets incomplete messages, e.g. ones whose other chunks could not be routed.
+     */
+    public void clear() {
+        missingChunks.clear();
+    }
+}
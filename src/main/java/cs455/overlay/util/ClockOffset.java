@@ -0,0 +1,65 @@
+package cs455.overlay.util;
+
+/**
+ * Offset of this node's wall clock from the registry's, estimated NTP style from timestamped
+ * request and response pairs. Of the last few samples, the one with the shortest round trip
+ * is used, as queueing delays make the others less symmetric and so less accurate.
+ */
+public class ClockOffset {
+    private final long[] offsetSamples = new long[Constants.CLOCK_SYNC_SAMPLES];
+    private final long[] rttSamples = new long[Constants.CLOCK_SYNC_SAMPLES];
+    private int noOfSamples;
+    private int nextSample;
+
+    // registry time minus local time, of the sample in use; read on every packet
+    private volatile long offsetNanos;
+    private volatile long rttNanos = -1;
+
+    /**
+     * Adds one exchange.
+     *
+     * @param originate local time the request was sent
+     * @param receive registry time the request was received
+     * @param transmit registry time the response was sent
+     * @param destination local time the response was received
+     */
+    public synchronized void recordSample(long originate, long receive, long transmit,
+                                          long destination) {
+        offsetSamples[nextSample] = ((receive - originate) + (transmit - destination)) / 2;
+        rttSamples[nextSample] = Math.max(0, (destination - originate) - (transmit - receive));
+        nextSample = (nextSample + 1) % offsetSamples.length;
+        noOfSamples = Math.min(noOfSamples + 1, offsetSamples.length);
+
+        int best = 0;
+        for (int i = 1; i < noOfSamples; i++) {
+            if (rttSamples[i] < rttSamples[best]) {
+                best = i;
+            }
+        }
+        offsetNanos = offsetSamples[best];
+        rttNanos = rttSamples[best];
+    }
+
+    /**
+     * Converts a local wall clock time to the registry's clock. Before the first exchange the
+     * offset is taken to be 0.
+     */
+    public long toRegistryTime(long localTimeNanos) {
+        return localTimeNanos + offsetNanos;
+    }
+
+    public long getOffsetNanos() {
+        return offsetNanos;
+    }
+
+    /**
+     * Round trip time of the sample in use, or -1 if there has been no exchange yet.
+     */
+    public long getRttNanos() {
+        return rttNanos;
+    }
+
+    public boolean isSynchronized() {
+        return rttNanos != -1;
+    }
+}
@@ -10,12 +10,81 @@ public class Constants {
     public static final String LIST_ROUTING_TABLES = "list-routing-tables";
     public static final String SETUP_OVERLAY = "setup-overlay";
     public static final String START = "start";
+    public static final String EVALUATE_TOPOLOGIES = "evaluate-topologies";
+    public static final String BROADCAST_TREE = "broadcast-tree";
+    public static final String AGGREGATE_SUMMARIES = "aggregate-summaries";
+    public static final String NODE_SUMMARY = "node-summary";
 
     // MessagingNode Commands
     public static final String PRINT_COUNTERS_AND_DIAGNOSTICS
             = "print-counters-and-diagnostics";
     public static final String EXIT_OVERLAY = "exit-overlay";
+    public static final String PROXIMITY_ROUTING = "proximity-routing";
+    public static final String MULTIPATH_ROUTING = "multipath";
+    public static final String SHORTCUTS = "shortcuts";
+    public static final String RELAY_THREADS = "relay-threads";
 
     public static final int MAX_NODES = 127;
-}
 
+    // Overlay setup
+    public static final int MANIFEST_DISPATCH_THREADS = 16;
+    public static final long OVERLAY_SETUP_TIMEOUT_MS = 30000;
+    // nodes the registry sends broadcast control messages to directly
+    public static final int BROADCAST_TREE_ROOTS = 4;
+
+    // Task completion
+    // newest traffic summary the registry asks nodes for; 2 has 64-bit packet counts
+    public static final byte TRAFFIC_SUMMARY_VERSION = 2;
+    // how often the registry re-reads the link counters while packets are still in flight
+    public static final long QUIESCENCE_PROBE_INTERVAL_MS = 20;
+    // how long the registry lets packets in flight arrive before asking for the summaries
+    // when some node is too old to report its link counters
+    public static final long LEGACY_SUMMARY_DELAY_MS = 1000;
+    // how long a root of the broadcast tree waits for its subtree's traffic summaries; nodes
+    // at depth d wait this divided by d
+    public static final long SUMMARY_AGGREGATION_TIMEOUT_MS = 2000;
+
+    // Traffic generation
+    // packets a node may have unacknowledged in closed loop mode unless the registry says
+    public static final int DEFAULT_CLOSED_LOOP_WINDOW = 1;
+    // how long a closed loop generator waits for an acknowledgement before giving up on it
+    public static final long ACKNOWLEDGEMENT_TIMEOUT_MS = 5000;
+    public static final double DEFAULT_ZIPF_EXPONENT = 1.0;
+    // bytes a message may carry besides its int payload
+    public static final int MAX_PAYLOAD_BYTES = 64 << 20;
+    // messages with more payload bytes are split into chunks of this size, each sent as a
+    // data packet of its own
+    public static final int PAYLOAD_CHUNK_BYTES = 64 << 10;
+
+    // Proximity and multipath routing
+    public static final long LINK_PROBE_INTERVAL_MS = 1000;
+    // extra hops, beyond greedy finger routing, a packet may take to use lower latency or
+    // less loaded links
+    public static final int ROUTING_HOP_SLACK = 1;
+
+    // system property with the local port to serve metrics from, e.g.
+    // -Dcs455.overlay.metrics.port=9100; not served if unset
+    public static final String METRICS_PORT_PROPERTY = "cs455.overlay.metrics.port";
+
+    // how long print-counters-and-diagnostics measures rates over
+    public static final long DIAGNOSTICS_SAMPLE_MS = 1000;
+
+    // Clock synchronization with the registry
+    public static final long CLOCK_SYNC_INTERVAL_MS = 1000;
+    // exchanges the offset estimate picks the shortest round trip from
+    public static final int CLOCK_SYNC_SAMPLES = 8;
+
+    // Relay pipeline
+    public static final int RELAY_STAGE_CAPACITY = 4096;
+    public static final int RELAY_DECODE_THREADS = 1;
+    public static final int RELAY_ROUTE_THREADS = 2;
+    // messages queued for a link's sender thread, and written with one flush
+    public static final int LINK_SEND_QUEUE_CAPACITY = 4096;
+    public static final int LINK_SEND_BATCH_SIZE = 64;
+
+    // Shortcuts
+    // maximum number of direct connections to frequent destinations
+    public static final int DEFAULT_SHORTCUT_BUDGET = 4;
+    // packets routed to a destination before a shortcut to it is opened
+    public static final int SHORTCUT_THRESHOLD = 64;
+}
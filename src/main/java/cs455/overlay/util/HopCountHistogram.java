@@ -0,0 +1,75 @@
+package cs455.overlay.util;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Number of packets received per hop count. Hop counts above MAX_HOPS are recorded in the last
+ * bucket.
+ */
+public class HopCountHistogram {
+    private static final int MAX_HOPS = 64;
+
+    private final AtomicLongArray counts = new AtomicLongArray(MAX_HOPS + 1);
+    private final AtomicLong boundViolations = new AtomicLong(0);
+
+    /**
+     * Records a packet that took the given number of hops, counting it as a violation when it
+     * took more hops than the expected bound.
+     */
+    public void record(int hops, int hopBound) {
+        counts.getAndIncrement(Math.min(Math.max(hops, 0), MAX_HOPS));
+        if (hops > hopBound) {
+            boundViolations.getAndIncrement();
+        }
+    }
+
+    public long getCount(int hops) {
+        return counts.get(hops);
+    }
+
+    public long getBoundViolations() {
+        return boundViolations.get();
+    }
+
+    public void reset() {
+        for (int i = 0; i <= MAX_HOPS; i++) {
+            counts.set(i, 0);
+        }
+        boundViolations.set(0);
+    }
+
+    public double getMean() {
+        long total = 0;
+        long weighted = 0;
+        for (int i = 0; i <= MAX_HOPS; i++) {
+            total += counts.get(i);
+            weighted += i * counts.get(i);
+        }
+        return total == 0 ? 0 : (double) weighted / total;
+    }
+
+    public int getMax() {
+        for (int i = MAX_HOPS; i >= 0; i--) {
+            if (counts.get(i) > 0) {
+                return i;
+            }
+        }
+        return 0;
+    }
+
+    @Override
+    public String toString() {
+        StringBuilder builder = new StringBuilder("{");
+        for (int i = 0; i <= MAX_HOPS; i++) {
+            long count = counts.get(i);
+            if (count > 0) {
+                if (builder.length() > 1) {
+                    builder.append(", ");
+                }
+                builder.append(i).append(" hops=").append(count);
+            }
+        }
+        return builder.append('}').toString();
+    }
+}
@@ -2,11 +2,15 @@ package cs455.overlay.util;
 
 import java.io.IOException;
 import java.net.InetAddress;
+import java.util.ArrayList;
 import java.util.Scanner;
 
 import cs455.overlay.node.MessagingNode;
 import cs455.overlay.node.Node;
 import cs455.overlay.node.Registry;
+import cs455.overlay.routing.OverlayTopologies;
+import cs455.overlay.routing.OverlayTopology;
+import cs455.overlay.workload.Workload;
 import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
 
@@ -53,28 +57,94 @@ public class InteractiveCommandParser extends Thread {
             } else if (nextCommand.contains(Constants.LIST_ROUTING_TABLES)) {
                 registry.listRoutingTables();
             } else if (nextCommand.contains(Constants.START)) {
+                // start <number-of-messages> [packets-per-second|max] [open|closed] [window]
+                //       [generator-threads] [workload options, as key=value]
+                ArrayList<String> positional = new ArrayList<>();
+                ArrayList<String> workloadOptions = new ArrayList<>();
+                for (String arg : nextCommand.trim().split("\\s+")) {
+                    (arg.contains("=") ? workloadOptions : positional).add(arg);
+                }
+                String[] args = positional.toArray(new String[0]);
                 try {
-                    int numberOfMessages = Integer.parseInt(nextCommand.split(" ")[1]);
-                    ((Registry) node).start(numberOfMessages);
-                } catch (NumberFormatException e) {
-                    logger.error("Invalid number of messages entered");
+                    int numberOfMessages = Integer.parseInt(args[1]);
+                    int packetsPerSecond = args.length >= 3 && !args[2].equals("max") ?
+                            Integer.parseInt(args[2]) : 0;
+                    boolean closedLoop = args.length >= 4 && args[3].equals("closed");
+                    if (args.length >= 4 && !closedLoop && !args[3].equals("open")) {
+                        throw new NumberFormatException(args[3]);
+                    }
+                    int window = args.length >= 5 ? Integer.parseInt(args[4]) :
+                            Constants.DEFAULT_CLOSED_LOOP_WINDOW;
+                    int generatorThreads = args.length >= 6 ? Integer.parseInt(args[5]) : 0;
+                    Workload workload = Workload.parse(workloadOptions.toArray(new String[0]));
+                    ((Registry) node).start(numberOfMessages, packetsPerSecond, closedLoop,
+                            window, generatorThreads, workload);
+                } catch (IllegalArgumentException | ArrayIndexOutOfBoundsException e) {
+                    logger.error("Invalid start command: " + e.getMessage());
+                    System.out.println("Usage: " + Constants.START + " <number-of-messages> " +
+                            "[packets-per-second|max] [open|closed] [window] " +
+                            "[generator-threads] " + Workload.OPTIONS);
                 }
             } else if (nextCommand.contains(Constants.SETUP_OVERLAY)) {
+                // setup-overlay [table-size|auto] [topology] [successors]
                 String[] args = nextCommand.split("\\s+");
-                int tableSize = 0;
-                if (args.length == 2) {
-                    try {
+                int tableSize = 0;  // computed from the number of registered nodes
+                int noOfSuccessors = 0;
+                OverlayTopology topology = OverlayTopologies.getDefault();
+                try {
+                    if (args.length >= 2 && !args[1].equals("auto")) {
                         tableSize = Integer.parseInt(args[1]);
-                    } catch (NumberFormatException e) {
-                        System.out.println("Enter a whole number as the table size");
+                    }
+                    if (args.length >= 4) {
+                        noOfSuccessors = Integer.parseInt(args[3]);
+                    }
+                } catch (NumberFormatException e) {
+                    System.out.println("Enter whole numbers as the table size and the " +
+                            "number of successors");
+                    continue;
+                }
+                if (args.length >= 3) {
+                    topology = OverlayTopologies.getByName(args[2]);
+                    if (topology == null) {
+                        System.out.println("Usage: " + Constants.SETUP_OVERLAY +
+                                " [table-size|auto] [" + OverlayTopologies.getNames() +
+                                "] [successors]");
                         continue;
                     }
+                }
+                registry.setupOverlay(tableSize, topology, noOfSuccessors);
+            } else if (nextCommand.contains(Constants.BROADCAST_TREE)) {
+                String[] args = nextCommand.split("\\s+");
+                if (args.length == 2 && (args[1].equals("on") || args[1].equals("off"))) {
+                    registry.setBroadcastTree(args[1].equals("on"));
+                } else {
+                    System.out.println("Usage: " + Constants.BROADCAST_TREE + " on|off");
+                }
+            } else if (nextCommand.contains(Constants.AGGREGATE_SUMMARIES)) {
+                String[] args = nextCommand.split("\\s+");
+                if (args.length == 2 && (args[1].equals("on") || args[1].equals("off"))) {
+                    registry.setSummaryAggregation(args[1].equals("on"));
                 } else {
-                    System.out.println("Table size not provided. Proceeding with the default " +
-                            "value: 3");
-                    tableSize = 3;
+                    System.out.println("Usage: " + Constants.AGGREGATE_SUMMARIES + " on|off");
+                }
+            } else if (nextCommand.contains(Constants.NODE_SUMMARY)) {
+                String[] args = nextCommand.split("\\s+");
+                try {
+                    registry.requestNodeSummary(Integer.parseInt(args[1]));
+                } catch (NumberFormatException | ArrayIndexOutOfBoundsException e) {
+                    System.out.println("Usage: " + Constants.NODE_SUMMARY + " <node-id>");
+                }
+            } else if (nextCommand.contains(Constants.EVALUATE_TOPOLOGIES)) {
+                String[] args = nextCommand.split("\\s+");
+                try {
+                    int tableSize = args.length >= 2 && !args[1].equals("auto") ?
+                            Integer.parseInt(args[1]) : 0;
+                    int noOfNodes = args.length >= 3 ? Integer.parseInt(args[2]) : 0;
+                    registry.evaluateTopologies(noOfNodes, tableSize);
+                } catch (NumberFormatException e) {
+                    System.out.println("Usage: " + Constants.EVALUATE_TOPOLOGIES +
+                            " [table-size|auto] [no-of-nodes]");
                 }
-                registry.setupOverlay(tableSize);
             } else if (nextCommand.trim().equals("")) {
                 continue;
             } else {
@@ -90,15 +160,47 @@ public class InteractiveCommandParser extends Thread {
         String nextCommand;
         MessagingNode messagingNode = (MessagingNode) node;
         while (acceptingCommands) {
-            nextCommand = scanner.next().trim();
+            nextCommand = scanner.nextLine().trim();
             if (nextCommand.contains(Constants.PRINT_COUNTERS_AND_DIAGNOSTICS)) {
-                System.out.println("TODO: " + Constants.PRINT_COUNTERS_AND_DIAGNOSTICS);
+                messagingNode.printCountersAndDiagnostics();
             } else if (nextCommand.contains(Constants.EXIT_OVERLAY)) {
                 messagingNode.exitOverlay();
             } else if (nextCommand.contains("print-routing-table")) {
                 messagingNode.printRoutingTable();
             } else if (nextCommand.contains("print-id")) {
                 messagingNode.printNodeId();
+            } else if (nextCommand.contains(Constants.PROXIMITY_ROUTING)) {
+                String[] args = nextCommand.split("\\s+");
+                if (args.length == 2 && (args[1].equals("on") || args[1].equals("off"))) {
+                    messagingNode.setProximityRouting(args[1].equals("on"));
+                } else {
+                    System.out.println("Usage: " + Constants.PROXIMITY_ROUTING + " on|off");
+                }
+            } else if (nextCommand.contains(Constants.MULTIPATH_ROUTING)) {
+                String[] args = nextCommand.split("\\s+");
+                if (args.length == 2 && (args[1].equals("on") || args[1].equals("off"))) {
+                    messagingNode.setMultipathRouting(args[1].equals("on"));
+                } else {
+                    System.out.println("Usage: " + Constants.MULTIPATH_ROUTING + " on|off");
+                }
+            } else if (nextCommand.contains(Constants.SHORTCUTS)) {
+                String[] args = nextCommand.split("\\s+");
+                try {
+                    messagingNode.setShortcutBudget(Integer.parseInt(args[1]));
+                } catch (NumberFormatException | ArrayIndexOutOfBoundsException e) {
+                    System.out.println("Usage: " + Constants.SHORTCUTS + " <budget>");
+                }
+            } else if (nextCommand.contains(Constants.RELAY_THREADS)) {
+                String[] args = nextCommand.split("\\s+");
+                try {
+                    messagingNode.setRelayThreads(Integer.parseInt(args[1]),
+                            Integer.parseInt(args[2]));
+                } catch (IllegalArgumentException | ArrayIndexOutOfBoundsException e) {
+                    System.out.println("Usage: " + Constants.RELAY_THREADS +
+                            " <decode-threads> <route-threads>");
+                }
+            } else if (nextCommand.equals("")) {
+                continue;
             } else {
                 System.out.println("Invalid command for messaging node: " + nextCommand);
             }
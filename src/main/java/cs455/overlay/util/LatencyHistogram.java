@@ -0,0 +1,178 @@
+package cs455.overlay.util;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Concurrent log-linear histogram of non-negative values (typically nanoseconds), in the style
+ * of HdrHistogram. Values below 128 are recorded exactly; larger values fall into one of 64
+ * linear sub-buckets per power of two, which keeps every recorded value within 1.6% of its
+ * true value while using a fixed amount of memory.
+ */
+public class LatencyHistogram {
+    private static final int SUB_BUCKET_BITS = 7;
+    private static final int SUB_BUCKET_COUNT = 1 << SUB_BUCKET_BITS;       // 128
+    private static final int SUB_BUCKET_HALF_COUNT = SUB_BUCKET_COUNT / 2;  // 64
+    private static final int NO_OF_BUCKETS =
+            SUB_BUCKET_COUNT + (63 - SUB_BUCKET_BITS) * SUB_BUCKET_HALF_COUNT;
+
+    private final AtomicLongArray counts = new AtomicLongArray(NO_OF_BUCKETS);
+    private final AtomicLong totalCount = new AtomicLong(0);
+    private final AtomicLong maxValue = new AtomicLong(0);
+
+    public void record(long value) {
+        long clamped = Math.max(value, 0);
+        counts.getAndIncrement(bucketIndex(clamped));
+        totalCount.getAndIncrement();
+        if (clamped > maxValue.get()) {
+            maxValue.accumulateAndGet(clamped, Math::max);
+        }
+    }
+
+    static int bucketIndex(long value) {
+        if (value < SUB_BUCKET_COUNT) {
+            return (int) value;
+        }
+        // shift so that the value falls in [SUB_BUCKET_HALF_COUNT, SUB_BUCKET_COUNT)
+        int shift = 63 - Long.numberOfLeadingZeros(value) - (SUB_BUCKET_BITS - 1);
+        return SUB_BUCKET_COUNT + (shift - 1) * SUB_BUCKET_HALF_COUNT +
+                (int) (value >>> shift) - SUB_BUCKET_HALF_COUNT;
+    }
+
+    /**
+     * Largest value that falls into the bucket at the given index.
+     */
+    static long highestValueInBucket(int index) {
+        if (index < SUB_BUCKET_COUNT) {
+            return index;
+        }
+        int shift = (index - SUB_BUCKET_COUNT) / SUB_BUCKET_HALF_COUNT + 1;
+        long subBucket = (index - SUB_BUCKET_COUNT) % SUB_BUCKET_HALF_COUNT + SUB_BUCKET_HALF_COUNT;
+        return ((subBucket + 1) << shift) - 1;
+    }
+
+    public long getTotalCount() {
+        return totalCount.get();
+    }
+
+    public long getMaxValue() {
+        return maxValue.get();
+    }
+
+    /**
+     * Value below which the given percentage (0 to 100) of recorded values fall, or 0 if
+     * nothing has been recorded.
+     */
+    public long getValueAtPercentile(double percentile) {
+        long total = totalCount.get();
+        if (total == 0) {
+            return 0;
+        }
+        long target = Math.max(1, (long) Math.ceil(percentile / 100.0 * total));
+        long cumulative = 0;
+        for (int i = 0; i < NO_OF_BUCKETS; i++) {
+            cumulative += counts.get(i);
+            if (cumulative >= target) {
+                return Math.min(highestValueInBucket(i), maxValue.get());
+            }
+        }
+        return maxValue.get();
+    }
+
+    /**
+     * Adds the values recorded by another histogram, e.g. to combine the histograms of
+     * several nodes.
+     */
+    public void add(LatencyHistogram other) {
+        for (int i = 0; i < NO_OF_BUCKETS; i++) {
+            long count = other.counts.get(i);
+            if (count > 0) {
+                counts.getAndAdd(i, count);
+            }
+        }
+        totalCount.getAndAdd(other.totalCount.get());
+        maxValue.accumulateAndGet(other.maxValue.get(), Math::max);
+    }
+
+    /**
+     * Returns a histogram of the values recorded so far, unaffected by later records and
+     * resets of this one.
+     */
+    public LatencyHistogram copy() {
+        LatencyHistogram copy = new LatencyHistogram();
+        copy.add(this);
+        return copy;
+    }
+
+    /**
+     * int: Number of non-empty buckets
+     * int: Bucket index, then long: count; for each non-empty bucket
+     * long: Maximum value
+     */
+    public void writeTo(DataOutputStream dout) throws IOException {
+        int noOfNonEmptyBuckets = 0;
+        long[] snapshot = new long[NO_OF_BUCKETS];
+        for (int i = 0; i < NO_OF_BUCKETS; i++) {
+            snapshot[i] = counts.get(i);
+            if (snapshot[i] > 0) {
+                noOfNonEmptyBuckets++;
+            }
+        }
+        dout.writeInt(noOfNonEmptyBuckets);
+        for (int i = 0; i < NO_OF_BUCKETS; i++) {
+            if (snapshot[i] > 0) {
+                dout.writeInt(i);
+                dout.writeLong(snapshot[i]);
+            }
+        }
+        dout.writeLong(maxValue.get());
+    }
+
+    public static LatencyHistogram readFrom(DataInputStream din) throws IOException {
+        LatencyHistogram histogram = new LatencyHistogram();
+        int noOfNonEmptyBuckets = din.readInt();
+        for (int i = 0; i < noOfNonEmptyBuckets; i++) {
+            int index = din.readInt();
+            long count = din.readLong();
+            if (index < 0 || index >= NO_OF_BUCKETS) {
+                throw new IOException("Invalid histogram bucket " + index);
+            }
+            // a total that wraps would make the percentiles as wrong as a negative count
+            if (count < 0 || count > Long.MAX_VALUE - histogram.totalCount.get()) {
+                throw new IOException("Invalid count " + count + " in histogram bucket " +
+                        index);
+            }
+            histogram.counts.getAndAdd(index, count);
+            histogram.totalCount.getAndAdd(count);
+        }
+        long maxValue = din.readLong();
+        if (maxValue < 0) {
+            throw new IOException("Invalid histogram maximum " + maxValue);
+        }
+        histogram.maxValue.set(maxValue);
+        return histogram;
+    }
+
+    public void reset() {
+        for (int i = 0; i < NO_OF_BUCKETS; i++) {
+            counts.set(i, 0);
+        }
+        totalCount.set(0);
+        maxValue.set(0);
+    }
+
+    /**
+     * Percentiles formatted in microseconds, assuming values were recorded in nanoseconds.
+     */
+    public String toPercentileString() {
+        return String.format("count=%d, p50=%.1fus, p99=%.1fus, p99.9=%.1fus, max=%.1fus",
+                getTotalCount(),
+                getValueAtPercentile(50) / 1000.0,
+                getValueAtPercentile(99) / 1000.0,
+                getValueAtPercentile(99.9) / 1000.0,
+                getMaxValue() / 1000.0);
+    }
+}
@@ -0,0 +1,153 @@
+package cs455.overlay.util;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.lang.management.ManagementFactory;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.concurrent.Executors;
+import javax.management.JMException;
+import javax.management.MBeanAttributeInfo;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+/**
+ * Publishes a node's or the registry's metrics. Each registers an MXBean in the platform MBean
+ * server, where JMX clients such as jconsole can read it. If the metrics port system property
+ * is set, the same attributes are also served in the Prometheus text format from
+ * http://127.0.0.1:port/metrics, so a load test can be monitored without using stdin.
+ *
+ * Every numeric attribute is exported as a gauge, as most counters reset between rounds.
+ */
+public class MetricsEndpoint {
+    private static final Logger logger = LogManager.getLogger(MetricsEndpoint.class);
+    public static final String DOMAIN = "cs455.overlay";
+
+    private MetricsEndpoint() {
+    }
+
+    /**
+     * Registers the MXBean as DOMAIN:type=type, replacing one registered before.
+     */
+    public static void register(String type, Object mxBean) {
+        MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+        try {
+            ObjectName name = new ObjectName(DOMAIN, "type", type);
+            if (server.isRegistered(name)) {
+                server.unregisterMBean(name);
+            }
+            server.registerMBean(mxBean, name);
+        } catch (JMException e) {
+            logger.error("Could not register the " + type + " MBean: " + e.getMessage());
+        }
+    }
+
+    /**
+     * Starts serving the metrics if the metrics port system property is set; port 0 picks a
+     * free port. The server only listens on the loopback address.
+     */
+    public static void startIfConfigured() {
+        String port = System.getProperty(Constants.METRICS_PORT_PROPERTY);
+        if (port == null) {
+            return;
+        }
+        try {
+            HttpServer server = HttpServer.create(
+                    new InetSocketAddress(InetAddress.getLoopbackAddress(), Integer.parseInt(port)),
+                    0);
+            server.createContext("/metrics", MetricsEndpoint::serveMetrics);
+            server.setExecutor(Executors.newSingleThreadExecutor(runnable -> {
+                Thread thread = new Thread(runnable, "metrics-endpoint");
+                thread.setDaemon(true);
+                return thread;
+            }));
+            server.start();
+            System.out.println("Serving metrics on http://127.0.0.1:" +
+                    server.getAddress().getPort() + "/metrics");
+        } catch (IOException | NumberFormatException e) {
+            logger.error("Could not serve metrics on port " + port + ": " + e.getMessage());
+        }
+    }
+
+    private static void serveMetrics(HttpExchange exchange) throws IOException {
+        byte[] body = toPrometheusText().getBytes(StandardCharsets.UTF_8);
+        exchange.getResponseHeaders().set("Content-Type", "text/plain; version=0.0.4");
+        exchange.sendResponseHeaders(200, body.length);
+        try (OutputStream out = exchange.getResponseBody()) {
+            out.write(body);
+        }
+    }
+
+    /**
+     * Reads the numeric and boolean attributes of every MBean in DOMAIN, e.g. PacketsSent of
+     * type MessagingNode becomes cs455_overlay_messaging_node_packets_sent.
+     */
+    static String toPrometheusText() {
+        MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+        StringBuilder text = new StringBuilder();
+        Set<ObjectName> names;
+        try {
+            names = new TreeSet<>(server.queryNames(new ObjectName(DOMAIN + ":*"), null));
+        } catch (JMException e) {
+            logger.error(e.getMessage());
+            return "";
+        }
+        for (ObjectName name : names) {
+            String prefix = snakeCase(DOMAIN.replace('.', '_') + "_" + name.getKeyProperty("type"));
+            try {
+                for (MBeanAttributeInfo attribute : server.getMBeanInfo(name).getAttributes()) {
+                    if (!attribute.isReadable()) {
+                        continue;
+                    }
+                    Object value = server.getAttribute(name, attribute.getName());
+                    String metric = prefix + "_" + snakeCase(attribute.getName());
+                    if (value instanceof Number) {
+                        appendGauge(text, metric, ((Number) value).doubleValue());
+                    } else if (value instanceof Boolean) {
+                        appendGauge(text, metric, (Boolean) value ? 1 : 0);
+                    }
+                }
+            } catch (JMException e) {
+                logger.error("Could not read " + name + ": " + e.getMessage());
+            }
+        }
+        return text.toString();
+    }
+
+    private static void appendGauge(StringBuilder text, String metric, double value) {
+        text.append("# TYPE ").append(metric).append(" gauge\n");
+        text.append(metric).append(' ');
+        if (value == Math.rint(value) && Math.abs(value) < 1e15) {
+            text.append((long) value);
+        } else {
+            text.append(value);
+        }
+        text.append('\n');
+    }
+
+    /**
+     * PacketsSent -> packets_sent, EndToEndLatencyP99Nanos -> end_to_end_latency_p99_nanos
+     */
+    static String snakeCase(String name) {
+        StringBuilder snakeCase = new StringBuilder();
+        for (int i = 0; i < name.length(); i++) {
+            char c = name.charAt(i);
+            if (Character.isUpperCase(c)) {
+                if (i > 0 && name.charAt(i - 1) != '_') {
+                    snakeCase.append('_');
+                }
+                snakeCase.append(Character.toLowerCase(c));
+            } else {
+                snakeCase.append(c);
+            }
+        }
+        return snakeCase.toString();
+    }
+}
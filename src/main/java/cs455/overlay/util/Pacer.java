@@ -0,0 +1,66 @@
+package cs455.overlay.util;
+
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Spaces events evenly at a target rate. The n-th event is due at start + n / rate, so time
+ * lost to a slow event is made up by sending the following ones early rather than by
+ * lowering the rate, which keeps the offered load of an open loop generator constant.
+ * Long waits park the thread and the last stretch before a deadline is spun for accuracy.
+ */
+public class Pacer {
+    private static final long SPIN_NANOS = 50_000;
+
+    private final double intervalNanos;
+    private long startNanos;
+    private long noOfEvents;
+    private long lateEvents;
+
+    /**
+     * @param eventsPerSecond target rate; 0 to never wait
+     */
+    public Pacer(double eventsPerSecond) {
+        intervalNanos = eventsPerSecond > 0 ? 1e9 / eventsPerSecond : 0;
+    }
+
+    public void start() {
+        startNanos = System.nanoTime();
+        noOfEvents = 0;
+        lateEvents = 0;
+    }
+
+    /**
+     * Waits until the next event is due.
+     */
+    public void pace() {
+        if (intervalNanos == 0) {
+            return;
+        }
+        long deadline = startNanos + (long) (noOfEvents * intervalNanos);
+        noOfEvents++;
+
+        long remaining = deadline - System.nanoTime();
+        if (remaining < -intervalNanos) {
+            // more than one interval behind
+            lateEvents++;
+        }
+        while (remaining > 0) {
+            if (remaining > SPIN_NANOS) {
+                LockSupport.parkNanos(remaining - SPIN_NANOS);
+            }
+            remaining = deadline - System.nanoTime();
+        }
+    }
+
+    /**
+     * Returns how many events were due more than one interval before they could be sent,
+     * i.e. how often the generator could not keep up with the target rate.
+     */
+    public long getLateEvents() {
+        return lateEvents;
+    }
+
+    public double getElapsedSeconds() {
+        return (System.nanoTime() - startNanos) / 1e9;
+    }
+}
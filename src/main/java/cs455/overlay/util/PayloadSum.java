@@ -0,0 +1,81 @@
+package cs455.overlay.util;
+
+import java.math.BigInteger;
+
+/**
+ * A signed 128-bit sum of packet payloads. Payloads are random ints, so a long sum can wrap
+ * after about four billion packets; 128 bits cannot in any run the overlay could make.
+ */
+public final class PayloadSum {
+    public static final PayloadSum ZERO = new PayloadSum(0, 0);
+
+    private final long high;
+    // the low 64 bits, read as unsigned
+    private final long low;
+
+    public PayloadSum(long high, long low) {
+        this.high = high;
+        this.low = low;
+    }
+
+    public static PayloadSum valueOf(long value) {
+        return new PayloadSum(value >> 63, value);
+    }
+
+    /**
+     * Returns the sum of highHalves * 2^16 + lowHalves, the form in which TrafficCounters
+     * accumulates payloads.
+     */
+    public static PayloadSum fromHalves(long highHalves, long lowHalves) {
+        return new PayloadSum(highHalves >> 48, highHalves << 16).add(lowHalves);
+    }
+
+    public PayloadSum add(long value) {
+        return add(valueOf(value));
+    }
+
+    public PayloadSum add(PayloadSum other) {
+        long sumLow = low + other.low;
+        long carry = Long.compareUnsigned(sumLow, low) < 0 ? 1 : 0;
+        return new PayloadSum(high + other.high + carry, sumLow);
+    }
+
+    public long getHigh() {
+        return high;
+    }
+
+    public long getLow() {
+        return low;
+    }
+
+    public BigInteger toBigInteger() {
+        return BigInteger.valueOf(high).shiftLeft(64)
+                .add(new BigInteger(Long.toUnsignedString(low)));
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) {
+            return true;
+        }
+        if (!(o instanceof PayloadSum)) {
+            return false;
+        }
+        PayloadSum that = (PayloadSum) o;
+        return high == that.high && low == that.low;
+    }
+
+    @Override
+    public int hashCode() {
+        return Long.hashCode(high) * 31 + Long.hashCode(low);
+    }
+
+    @Override
+    public String toString() {
+        if (high == low >> 63) {
+            // fits in a long
+            return Long.toString(low);
+        }
+        return toBigInteger().toString();
+    }
+}
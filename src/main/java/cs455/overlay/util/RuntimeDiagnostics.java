@@ -0,0 +1,122 @@
+package cs455.overlay.util;
+
+import java.lang.management.GarbageCollectorMXBean;
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * What the JVM a node runs in is doing at one point in time: the state of its threads, the
+ * bytes they have allocated and the time spent collecting garbage. Only counters the JVM keeps
+ * anyway are read, without stack traces, so taking one does not stop the node's other threads
+ * and is safe under full load.
+ */
+public class RuntimeDiagnostics {
+    private final long timeNanos;
+    // by live threads only, so a thread that exits takes its allocations with it; -1 if the
+    // JVM does not measure them
+    private final long allocatedBytes;
+    private final long gcCount;
+    // time spent in the collectors; for stop-the-world collectors this is the pause time
+    private final long gcTimeMillis;
+    // thread name without its trailing number -> threads of that name in each state
+    private final Map<String, EnumMap<Thread.State, Integer>> threadStates;
+
+    private RuntimeDiagnostics(long timeNanos, long allocatedBytes, long gcCount,
+                               long gcTimeMillis,
+                               Map<String, EnumMap<Thread.State, Integer>> threadStates) {
+        this.timeNanos = timeNanos;
+        this.allocatedBytes = allocatedBytes;
+        this.gcCount = gcCount;
+        this.gcTimeMillis = gcTimeMillis;
+        this.threadStates = threadStates;
+    }
+
+    public static RuntimeDiagnostics take() {
+        long timeNanos = System.nanoTime();
+
+        ThreadGroup root = Thread.currentThread().getThreadGroup();
+        while (root.getParent() != null) {
+            root = root.getParent();
+        }
+        Thread[] threads = new Thread[root.activeCount() * 2];
+        int noOfThreads = root.enumerate(threads, true);
+
+        Map<String, EnumMap<Thread.State, Integer>> threadStates = new TreeMap<>();
+        long[] threadIds = new long[noOfThreads];
+        for (int i = 0; i < noOfThreads; i++) {
+            threadIds[i] = threads[i].getId();
+            String name = threads[i].getName().replaceFirst("-\\d+$", "");
+            threadStates.computeIfAbsent(name, key -> new EnumMap<>(Thread.State.class))
+                    .merge(threads[i].getState(), 1, Integer::sum);
+        }
+
+        long allocatedBytes = -1;
+        ThreadMXBean threadBean = ManagementFactory.getThreadMXBean();
+        if (threadBean instanceof com.sun.management.ThreadMXBean) {
+            com.sun.management.ThreadMXBean allocationBean =
+                    (com.sun.management.ThreadMXBean) threadBean;
+            if (allocationBean.isThreadAllocatedMemoryEnabled()) {
+                allocatedBytes = 0;
+                for (long threadAllocatedBytes :
+                        allocationBean.getThreadAllocatedBytes(threadIds)) {
+                    allocatedBytes += Math.max(0, threadAllocatedBytes);
+                }
+            }
+        }
+
+        long gcCount = 0;
+        long gcTimeMillis = 0;
+        List<GarbageCollectorMXBean> collectors = ManagementFactory.getGarbageCollectorMXBeans();
+        for (GarbageCollectorMXBean collector : collectors) {
+            gcCount += Math.max(0, collector.getCollectionCount());
+            gcTimeMillis += Math.max(0, collector.getCollectionTime());
+        }
+
+        return new RuntimeDiagnostics(timeNanos, allocatedBytes, gcCount, gcTimeMillis,
+                threadStates);
+    }
+
+    /**
+     * Prints this view, with rates over the time since an earlier one.
+     */
+    public void print(RuntimeDiagnostics earlier) {
+        double seconds = (timeNanos - earlier.timeNanos) / 1e9;
+        if (allocatedBytes >= 0 && earlier.allocatedBytes >= 0) {
+            System.out.printf("Allocation rate: %.2f MB/s%n",
+                    Math.max(0, allocatedBytes - earlier.allocatedBytes) / seconds / 1e6);
+        } else {
+            System.out.println("Allocation rate: not measured by this JVM");
+        }
+        System.out.printf("Garbage collection: %d collections taking %d ms in total, %d " +
+                        "taking %d ms in the last %.1f s%n", gcCount, gcTimeMillis,
+                gcCount - earlier.gcCount, gcTimeMillis - earlier.gcTimeMillis, seconds);
+        System.out.println("Threads:");
+        for (Map.Entry<String, EnumMap<Thread.State, Integer>> entry : threadStates.entrySet()) {
+            System.out.printf("  %-28s %s%n", entry.getKey(), entry.getValue());
+        }
+    }
+
+    public long getTimeNanos() {
+        return timeNanos;
+    }
+
+    public long getAllocatedBytes() {
+        return allocatedBytes;
+    }
+
+    public long getGcCount() {
+        return gcCount;
+    }
+
+    public long getGcTimeMillis() {
+        return gcTimeMillis;
+    }
+
+    public Map<String, EnumMap<Thread.State, Integer>> getThreadStates() {
+        return threadStates;
+    }
+}
@@ -1,7 +1,9 @@
 package cs455.overlay.util;
 
 import java.util.ArrayList;
+import cs455.overlay.wireformats.OverlayNodeReportsAggregatedTrafficSummary;
 import cs455.overlay.wireformats.OverlayNodeReportsTrafficSummary;
+import cs455.overlay.wireformats.OverlayNodeReportsTrafficSummaryV2;
 import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
 
@@ -9,19 +11,30 @@ public class StatisticsCollectorAndDisplay {
     private static final Logger logger = LogManager.getLogger(StatisticsCollectorAndDisplay.class);
     private int totalNodes;
     private ArrayList<Row> rows;
-    private int grandTotalSent;
-    private int grandTotalReceived;
-    private int grantTotalRelayed;
-    private long grandTotalValuesSent;
-    private long grandTotalValuesReceived;
+    // nodes covered by the rows so far; an aggregated row covers a whole subtree
+    private int reportedNodes;
+    private boolean aggregated;
+    private long grandTotalSent;
+    private long grandTotalReceived;
+    private long grantTotalRelayed;
+    private PayloadSum grandTotalValuesSent = PayloadSum.ZERO;
+    private PayloadSum grandTotalValuesReceived = PayloadSum.ZERO;
+    private long grandTotalPayloadBytesSent;
+    private long grandTotalPayloadBytesReceived;
+    // merged from the nodes' histograms, so the percentiles are those of every packet
+    private LatencyHistogram endToEndLatency = new LatencyHistogram();
+    private LatencyHistogram perHopLatency = new LatencyHistogram();
 
     private class Row {
         int nodeId;
-        int packetsSent;
-        int packetsReceived;
-        int packetsRelayed;
-        long sumValuesSent;
-        long sumValuesReceived;
+        int noOfNodes;
+        long packetsSent;
+        long packetsReceived;
+        long packetsRelayed;
+        PayloadSum sumValuesSent;
+        PayloadSum sumValuesReceived;
+        long payloadBytesSent;
+        long payloadBytesReceived;
     }
 
     public StatisticsCollectorAndDisplay(int totalNodes) {
@@ -33,23 +46,110 @@ public class StatisticsCollectorAndDisplay {
         logger.debug("Adding row - Node " + trafficSummaryEvent.getNodeId());
         Row row = new Row();
         row.nodeId = trafficSummaryEvent.getNodeId();
+        row.noOfNodes = 1;
+        row.packetsReceived = trafficSummaryEvent.getNumPacketsReceived();
+        row.packetsSent = trafficSummaryEvent.getNumPacketsSent();
+        row.packetsRelayed = trafficSummaryEvent.getNumPacketsRelayed();
+        row.sumValuesReceived = PayloadSum.valueOf(trafficSummaryEvent.getSumPacketsReceived());
+        row.sumValuesSent = PayloadSum.valueOf(trafficSummaryEvent.getSumPacketsSent());
+
+        addRow(row);
+    }
+
+    public synchronized void add(OverlayNodeReportsTrafficSummaryV2 trafficSummaryEvent) {
+        logger.debug("Adding row - Node " + trafficSummaryEvent.getNodeId());
+        Row row = new Row();
+        row.nodeId = trafficSummaryEvent.getNodeId();
+        row.noOfNodes = 1;
         row.packetsReceived = trafficSummaryEvent.getNumPacketsReceived();
         row.packetsSent = trafficSummaryEvent.getNumPacketsSent();
         row.packetsRelayed = trafficSummaryEvent.getNumPacketsRelayed();
         row.sumValuesReceived = trafficSummaryEvent.getSumPacketsReceived();
         row.sumValuesSent = trafficSummaryEvent.getSumPacketsSent();
+        row.payloadBytesSent = trafficSummaryEvent.getPayloadBytesSent();
+        row.payloadBytesReceived = trafficSummaryEvent.getPayloadBytesReceived();
+        endToEndLatency.add(trafficSummaryEvent.getEndToEndLatency());
+        perHopLatency.add(trafficSummaryEvent.getPerHopLatency());
+
+        addRow(row);
+    }
+
+    /**
+     * Adds the combined summary of a subtree of the broadcast tree.
+     */
+    public synchronized void add(OverlayNodeReportsAggregatedTrafficSummary aggregatedSummary) {
+        logger.debug("Adding row - Subtree of node " + aggregatedSummary.getNodeId() + " with " +
+                aggregatedSummary.getNoOfNodes() + " nodes");
+        Row row = new Row();
+        row.nodeId = aggregatedSummary.getNodeId();
+        row.noOfNodes = aggregatedSummary.getNoOfNodes();
+        row.packetsReceived = aggregatedSummary.getNumPacketsReceived();
+        row.packetsSent = aggregatedSummary.getNumPacketsSent();
+        row.packetsRelayed = aggregatedSummary.getNumPacketsRelayed();
+        row.sumValuesReceived = aggregatedSummary.getSumPacketsReceived();
+        row.sumValuesSent = aggregatedSummary.getSumPacketsSent();
+        row.payloadBytesSent = aggregatedSummary.getPayloadBytesSent();
+        row.payloadBytesReceived = aggregatedSummary.getPayloadBytesReceived();
+        endToEndLatency.add(aggregatedSummary.getEndToEndLatency());
+        perHopLatency.add(aggregatedSummary.getPerHopLatency());
+        aggregated = true;
 
+        addRow(row);
+    }
+
+    private void addRow(Row row) {
         rows.add(row);
+        reportedNodes += row.noOfNodes;
 
         grandTotalReceived += row.packetsReceived;
         grandTotalSent += row.packetsSent;
         grantTotalRelayed += row.packetsRelayed;
-        grandTotalValuesReceived += row.sumValuesReceived;
-        grandTotalValuesSent += row.sumValuesSent;
+        grandTotalValuesReceived = grandTotalValuesReceived.add(row.sumValuesReceived);
+        grandTotalValuesSent = grandTotalValuesSent.add(row.sumValuesSent);
+        grandTotalPayloadBytesSent += row.payloadBytesSent;
+        grandTotalPayloadBytesReceived += row.payloadBytesReceived;
+
+        if (reportedNodes == totalNodes) {
+            if (aggregated) {
+                printAggregatedResults();
+            } else {
+                printResults();
+            }
+            if (grandTotalPayloadBytesSent > 0 || grandTotalPayloadBytesReceived > 0) {
+                System.out.format("Payload bytes sent: %d, received: %d%n",
+                        grandTotalPayloadBytesSent, grandTotalPayloadBytesReceived);
+            }
+            if (endToEndLatency.getTotalCount() > 0) {
+                System.out.println("End-to-end latency: " + endToEndLatency.toPercentileString());
+                System.out.println("Latency per hop: " + perHopLatency.toPercentileString());
+            }
+        }
+    }
+
+    public synchronized long getGrandTotalReceived() {
+        return grandTotalReceived;
+    }
 
-        if (rows.size() == totalNodes) {
-            printResults();
+    public synchronized long getGrandTotalPayloadBytesReceived() {
+        return grandTotalPayloadBytesReceived;
+    }
+
+    public synchronized LatencyHistogram getEndToEndLatency() {
+        return endToEndLatency;
+    }
+
+    private void printAggregatedResults() {
+        System.out.println("Root | Nodes | Packets | Packets  | Packets | Sum Values    | Sum Values");
+        System.out.println("ID   |       | Sent    | Received | Relayed | Sent          | Received");
+        System.out.println("_________________________________________________________________________");
+        for (Row row : rows) {
+            System.out.format(" %4s|%7s|%8s|%10s|%9s|%15s|%15s%n", row.nodeId, row.noOfNodes,
+                    row.packetsSent, row.packetsReceived, row.packetsRelayed, row.sumValuesSent,
+                    row.sumValuesReceived);
         }
+        System.out.format("Sum  |%7s|%8s|%10s|%9s|%15s|%15s%n", reportedNodes, grandTotalSent,
+                grandTotalReceived, grantTotalRelayed, grandTotalValuesSent,
+                grandTotalValuesReceived);
     }
 
     private void printResults() {
@@ -0,0 +1,300 @@
+package cs455.overlay.util;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * The data packets a node has sent, received and relayed, in total and per peer link. All
+ * counters are striped LongAdders, so the threads generating, decoding and routing packets
+ * do not contend on a shared cache line.
+ */
+public class TrafficCounters {
+    private final LongAdder packetsSent = new LongAdder();
+    private final LongAdder packetsReceived = new LongAdder();
+    private final LongAdder packetsRelayed = new LongAdder();
+    // payloads are summed as their upper and lower 16 bits, so that neither adder can wrap
+    // before 2^47 packets, and combined into a PayloadSum when read
+    private final LongAdder sumSentHighHalves = new LongAdder();
+    private final LongAdder sumSentLowHalves = new LongAdder();
+    private final LongAdder sumReceivedHighHalves = new LongAdder();
+    private final LongAdder sumReceivedLowHalves = new LongAdder();
+    private final LongAdder payloadBytesSent = new LongAdder();
+    private final LongAdder payloadBytesReceived = new LongAdder();
+
+    // packets put on and taken off any link since the node started; never reset, so the
+    // registry can compare them across its quiescence detection waves
+    private final LongAdder transmissions = new LongAdder();
+    private final LongAdder receptions = new LongAdder();
+
+    // indexed by the node ID of the peer at the other end of the link
+    private final AtomicReferenceArray<LinkCounters> links =
+            new AtomicReferenceArray<>(Constants.MAX_NODES + 1);
+
+    private static class LinkCounters {
+        final LongAdder packetsSent = new LongAdder();
+        final LongAdder packetsRelayed = new LongAdder();
+        final LongAdder bytesSent = new LongAdder();
+        final LongAdder packetsReceived = new LongAdder();
+        final LongAdder bytesReceived = new LongAdder();
+    }
+
+    /**
+     * Records a packet that this node generated.
+     */
+    public void recordSent(int payload) {
+        packetsSent.increment();
+        sumSentHighHalves.add(payload >> 16);
+        sumSentLowHalves.add(payload & 0xFFFF);
+    }
+
+    public void recordReceived(int payload) {
+        packetsReceived.increment();
+        sumReceivedHighHalves.add(payload >> 16);
+        sumReceivedLowHalves.add(payload & 0xFFFF);
+    }
+
+    public void addPayloadBytesSent(long noOfBytes) {
+        payloadBytesSent.add(noOfBytes);
+    }
+
+    public void addPayloadBytesReceived(long noOfBytes) {
+        payloadBytesReceived.add(noOfBytes);
+    }
+
+    public void recordRelayed() {
+        packetsRelayed.increment();
+    }
+
+    /**
+     * Records a packet this node generated leaving on the link to the given peer.
+     */
+    public void recordLinkSent(int peerId, int bytes) {
+        LinkCounters link = getLink(peerId);
+        if (link != null) {
+            link.packetsSent.increment();
+            link.bytesSent.add(bytes);
+        }
+    }
+
+    /**
+     * Records a packet this node relayed leaving on the link to the given peer.
+     */
+    public void recordLinkRelayed(int peerId, int bytes) {
+        LinkCounters link = getLink(peerId);
+        if (link != null) {
+            link.packetsRelayed.increment();
+            link.bytesSent.add(bytes);
+        }
+    }
+
+    /**
+     * Records a packet arriving on the link from the given peer.
+     */
+    public void recordLinkReceived(int peerId, int bytes) {
+        LinkCounters link = getLink(peerId);
+        if (link != null) {
+            link.packetsReceived.increment();
+            link.bytesReceived.add(bytes);
+        }
+    }
+
+    /**
+     * Counts a packet put on a link. Must be called before the packet is handed to the
+     * link, so that no packet can be seen received but not sent.
+     */
+    public void recordTransmission() {
+        transmissions.increment();
+    }
+
+    /**
+     * Counts a packet taken off a link, once this node has delivered, forwarded or dropped
+     * it.
+     */
+    public void recordReception() {
+        receptions.increment();
+    }
+
+    public long getTransmissions() {
+        return transmissions.sum();
+    }
+
+    public long getReceptions() {
+        return receptions.sum();
+    }
+
+    private LinkCounters getLink(int peerId) {
+        if (peerId <= 0 || peerId >= links.length()) {
+            return null;
+        }
+        LinkCounters link = links.get(peerId);
+        if (link == null) {
+            links.compareAndSet(peerId, null, new LinkCounters());
+            link = links.get(peerId);
+        }
+        return link;
+    }
+
+    /**
+     * Clears the counts of generated packets, including the per link ones.
+     */
+    public void resetSent() {
+        packetsSent.reset();
+        sumSentHighHalves.reset();
+        sumSentLowHalves.reset();
+        payloadBytesSent.reset();
+        for (int i = 0; i < links.length(); i++) {
+            LinkCounters link = links.get(i);
+            if (link != null) {
+                link.packetsSent.reset();
+                link.packetsRelayed.reset();
+                link.bytesSent.reset();
+            }
+        }
+    }
+
+    /**
+     * Clears the counts of received and relayed packets, including the per link ones.
+     */
+    public void resetReceived() {
+        packetsReceived.reset();
+        sumReceivedHighHalves.reset();
+        sumReceivedLowHalves.reset();
+        payloadBytesReceived.reset();
+        packetsRelayed.reset();
+        for (int i = 0; i < links.length(); i++) {
+            LinkCounters link = links.get(i);
+            if (link != null) {
+                link.packetsReceived.reset();
+                link.bytesReceived.reset();
+            }
+        }
+    }
+
+    /**
+     * Reads every counter. The values are only consistent with each other while no packets
+     * are being counted, e.g. once the overlay is quiet at the end of a round.
+     */
+    public Snapshot snapshot() {
+        List<LinkSnapshot> linkSnapshots = new ArrayList<>();
+        for (int i = 0; i < links.length(); i++) {
+            LinkCounters link = links.get(i);
+            if (link != null) {
+                linkSnapshots.add(new LinkSnapshot(i, link.packetsSent.sum(),
+                        link.packetsRelayed.sum(), link.bytesSent.sum(),
+                        link.packetsReceived.sum(), link.bytesReceived.sum()));
+            }
+        }
+        return new Snapshot(packetsSent.sum(),
+                PayloadSum.fromHalves(sumSentHighHalves.sum(), sumSentLowHalves.sum()),
+                packetsReceived.sum(),
+                PayloadSum.fromHalves(sumReceivedHighHalves.sum(), sumReceivedLowHalves.sum()),
+                packetsRelayed.sum(), payloadBytesSent.sum(), payloadBytesReceived.sum(),
+                linkSnapshots);
+    }
+
+    public static class Snapshot {
+        private final long packetsSent;
+        private final PayloadSum sumPacketsSent;
+        private final long packetsReceived;
+        private final PayloadSum sumPacketsReceived;
+        private final long packetsRelayed;
+        private final long payloadBytesSent;
+        private final long payloadBytesReceived;
+        private final List<LinkSnapshot> links;
+
+        private Snapshot(long packetsSent, PayloadSum sumPacketsSent, long packetsReceived,
+                         PayloadSum sumPacketsReceived, long packetsRelayed,
+                         long payloadBytesSent, long payloadBytesReceived,
+                         List<LinkSnapshot> links) {
+            this.packetsSent = packetsSent;
+            this.sumPacketsSent = sumPacketsSent;
+            this.packetsReceived = packetsReceived;
+            this.sumPacketsReceived = sumPacketsReceived;
+            this.packetsRelayed = packetsRelayed;
+            this.payloadBytesSent = payloadBytesSent;
+            this.payloadBytesReceived = payloadBytesReceived;
+            this.links = Collections.unmodifiableList(links);
+        }
+
+        public long getPacketsSent() {
+            return packetsSent;
+        }
+
+        public PayloadSum getSumPacketsSent() {
+            return sumPacketsSent;
+        }
+
+        public long getPacketsReceived() {
+            return packetsReceived;
+        }
+
+        public PayloadSum getSumPacketsReceived() {
+            return sumPacketsReceived;
+        }
+
+        public long getPacketsRelayed() {
+            return packetsRelayed;
+        }
+
+        public long getPayloadBytesSent() {
+            return payloadBytesSent;
+        }
+
+        public long getPayloadBytesReceived() {
+            return payloadBytesReceived;
+        }
+
+        /**
+         * Links that have carried traffic, ordered by peer node ID.
+         */
+        public List<LinkSnapshot> getLinks() {
+            return links;
+        }
+    }
+
+    public static class LinkSnapshot {
+        private final int peerId;
+        private final long packetsSent;
+        private final long packetsRelayed;
+        private final long bytesSent;
+        private final long packetsReceived;
+        private final long bytesReceived;
+
+        private LinkSnapshot(int peerId, long packetsSent, long packetsRelayed, long bytesSent,
+                             long packetsReceived, long bytesReceived) {
+            this.peerId = peerId;
+            this.packetsSent = packetsSent;
+            this.packetsRelayed = packetsRelayed;
+            this.bytesSent = bytesSent;
+            this.packetsReceived = packetsReceived;
+            this.bytesReceived = bytesReceived;
+        }
+
+        public int getPeerId() {
+            return peerId;
+        }
+
+        public long getPacketsSent() {
+            return packetsSent;
+        }
+
+        public long getPacketsRelayed() {
+            return packetsRelayed;
+        }
+
+        public long getBytesSent() {
+            return bytesSent;
+        }
+
+        public long getPacketsReceived() {
+            return packetsReceived;
+        }
+
+        public long getBytesReceived() {
+            return bytesReceived;
+        }
+    }
+}
@@ -0,0 +1,104 @@
+package cs455.overlay.util;
+
+import java.util.Arrays;
+import cs455.overlay.transport.TCPConnection;
+import cs455.overlay.wireformats.OverlayNodeReportsAggregatedTrafficSummary;
+
+/**
+ * Combines a node's own traffic summary with those of its children in the broadcast tree.
+ * Once every expected report is in, the combined summary is sent to the parent by whichever
+ * thread added the last one. A child whose report is lost must not hold up the whole tree,
+ * so after a deadline the summary is sent with whatever has arrived; it lists the nodes it
+ * covers so that the registry can ask the missing ones directly.
+ */
+public class TrafficSummaryAggregator {
+    private final OverlayNodeReportsAggregatedTrafficSummary summary;
+    private final TCPConnection parentConnection;
+    private int pendingReports;
+    private boolean forwarded;
+
+    /**
+     * Expects only the node's own summary; children are added with addChild() as the
+     * broadcast is passed on to them.
+     *
+     * @param nodeId the node combining the summaries
+     * @param parentConnection where to send the combined summary
+     */
+    public TrafficSummaryAggregator(int nodeId, TCPConnection parentConnection) {
+        summary = new OverlayNodeReportsAggregatedTrafficSummary();
+        summary.setNodeId(nodeId);
+        this.parentConnection = parentConnection;
+        pendingReports = 1;
+    }
+
+    /**
+     * Expects one more report, from a child the broadcast has been queued for.
+     */
+    public synchronized void addChild() {
+        pendingReports++;
+    }
+
+    /**
+     * Stops expecting a child whose broadcast could not be queued after all.
+     */
+    public synchronized void removeChild() {
+        pendingReports--;
+    }
+
+    /**
+     * Adds one report and returns true if it was the last one expected. Reports arriving
+     * after the summary was sent are left out, as the registry asks those nodes directly.
+     */
+    public synchronized boolean add(OverlayNodeReportsAggregatedTrafficSummary report) {
+        if (forwarded) {
+            return false;
+        }
+        int[] reportNodeIds = report.getNodeIds();
+        if (reportNodeIds != null) {
+            int[] nodeIds = summary.getNodeIds();
+            int[] combined = Arrays.copyOf(nodeIds, nodeIds.length + reportNodeIds.length);
+            System.arraycopy(reportNodeIds, 0, combined, nodeIds.length, reportNodeIds.length);
+            summary.setNodeIds(combined);
+        }
+        summary.setNoOfNodes(summary.getNoOfNodes() + report.getNoOfNodes());
+        summary.setNumPacketsSent(summary.getNumPacketsSent() + report.getNumPacketsSent());
+        summary.setNumPacketsRelayed(
+                summary.getNumPacketsRelayed() + report.getNumPacketsRelayed());
+        summary.setSumPacketsSent(summary.getSumPacketsSent().add(report.getSumPacketsSent()));
+        summary.setNumPacketsReceived(
+                summary.getNumPacketsReceived() + report.getNumPacketsReceived());
+        summary.setSumPacketsReceived(
+                summary.getSumPacketsReceived().add(report.getSumPacketsReceived()));
+        summary.setPayloadBytesSent(summary.getPayloadBytesSent() + report.getPayloadBytesSent());
+        summary.setPayloadBytesReceived(
+                summary.getPayloadBytesReceived() + report.getPayloadBytesReceived());
+        summary.getEndToEndLatency().add(report.getEndToEndLatency());
+        summary.getPerHopLatency().add(report.getPerHopLatency());
+        forwarded = --pendingReports == 0;
+        return forwarded;
+    }
+
+    /**
+     * Gives up on the reports still missing. Returns true if the summary had not been sent
+     * yet, in which case the caller sends it as it is.
+     */
+    public synchronized boolean expire() {
+        if (forwarded) {
+            return false;
+        }
+        forwarded = true;
+        return true;
+    }
+
+    public synchronized int getPendingReports() {
+        return pendingReports;
+    }
+
+    public synchronized OverlayNodeReportsAggregatedTrafficSummary getSummary() {
+        return summary;
+    }
+
+    public TCPConnection getParentConnection() {
+        return parentConnection;
+    }
+}
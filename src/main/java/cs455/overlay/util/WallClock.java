@@ -0,0 +1,30 @@
+package cs455.overlay.util;
+
+/**
+ * Wall clock time in nanoseconds since the epoch, for timestamps compared across nodes.
+ *
+ * The wall clock is read once, when the class is loaded, and advanced with System.nanoTime()
+ * from then on. That gives nanosecond resolution even where the platform clock only has
+ * milliseconds, as on Java 8, and time never jumps when NTP steps the system clock during
+ * a round. Drift from the system clock over the life of the process is absorbed by the
+ * clock offset estimated against the registry.
+ */
+public class WallClock {
+    private static final long EPOCH_NANOS_AT_START;
+    private static final long NANO_TIME_AT_START;
+
+    static {
+        // read the two clocks as close together as the millisecond clock allows
+        long millis = System.currentTimeMillis();
+        long nanoTime = System.nanoTime();
+        EPOCH_NANOS_AT_START = millis * 1_000_000L;
+        NANO_TIME_AT_START = nanoTime;
+    }
+
+    private WallClock() {
+    }
+
+    public static long currentTimeNanos() {
+        return EPOCH_NANOS_AT_START + (System.nanoTime() - NANO_TIME_AT_START);
+    }
+}
@@ -68,6 +68,53 @@ public class EventFactory {
             case Protocol.OVERLAY_NODE_REPORTS_TRAFFIC_SUMMARY:
                 logger.debug("OVERLAY_NODE_REPORTS_TRAFFIC_SUMMARY");
                 return new OverlayNodeReportsTrafficSummary(data);
+            case Protocol.OVERLAY_NODE_SENDS_PROBE:
+                logger.debug("OVERLAY_NODE_SENDS_PROBE");
+                OverlayNodeSendsProbe probe = new OverlayNodeSendsProbe(data);
+                probe.setSocket(socket);
+                return probe;
+            case Protocol.OVERLAY_NODE_RESPONDS_TO_PROBE:
+                logger.debug("OVERLAY_NODE_RESPONDS_TO_PROBE");
+                return new OverlayNodeRespondsToProbe(data);
+            case Protocol.OVERLAY_NODE_REQUESTS_NODE_ADDRESS:
+                logger.debug("OVERLAY_NODE_REQUESTS_NODE_ADDRESS");
+                OverlayNodeRequestsNodeAddress addressRequest =
+                        new OverlayNodeRequestsNodeAddress(data);
+                addressRequest.setSocket(socket);
+                return addressRequest;
+            case Protocol.REGISTRY_RESPONDS_TO_NODE_ADDRESS_REQUEST:
+                logger.debug("REGISTRY_RESPONDS_TO_NODE_ADDRESS_REQUEST");
+                return new RegistryRespondsToNodeAddressRequest(data);
+            case Protocol.REGISTRY_BROADCASTS_CONTROL_MESSAGE:
+                logger.debug("REGISTRY_BROADCASTS_CONTROL_MESSAGE");
+                RegistryBroadcastsControlMessage broadcast =
+                        new RegistryBroadcastsControlMessage(data);
+                broadcast.setSocket(socket);
+                return broadcast;
+            case Protocol.OVERLAY_NODE_REPORTS_AGGREGATED_TRAFFIC_SUMMARY:
+                logger.debug("OVERLAY_NODE_REPORTS_AGGREGATED_TRAFFIC_SUMMARY");
+                return new OverlayNodeReportsAggregatedTrafficSummary(data);
+            case Protocol.REGISTRY_REQUESTS_TRAFFIC_COUNTERS:
+                logger.debug("REGISTRY_REQUESTS_TRAFFIC_COUNTERS");
+                return new RegistryRequestsTrafficCounters(data);
+            case Protocol.OVERLAY_NODE_REPORTS_TRAFFIC_COUNTERS:
+                logger.debug("OVERLAY_NODE_REPORTS_TRAFFIC_COUNTERS");
+                return new OverlayNodeReportsTrafficCounters(data);
+            case Protocol.OVERLAY_NODE_ACKNOWLEDGES_DATA:
+                logger.debug("OVERLAY_NODE_ACKNOWLEDGES_DATA");
+                return new OverlayNodeAcknowledgesData(data);
+            case Protocol.OVERLAY_NODE_REPORTS_TRAFFIC_SUMMARY_V2:
+                logger.debug("OVERLAY_NODE_REPORTS_TRAFFIC_SUMMARY_V2");
+                return new OverlayNodeReportsTrafficSummaryV2(data);
+            case Protocol.OVERLAY_NODE_REQUESTS_CLOCK_SYNC:
+                logger.debug("OVERLAY_NODE_REQUESTS_CLOCK_SYNC");
+                OverlayNodeRequestsClockSync clockSyncRequest =
+                        new OverlayNodeRequestsClockSync(data);
+                clockSyncRequest.setSocket(socket);
+                return clockSyncRequest;
+            case Protocol.REGISTRY_RESPONDS_TO_CLOCK_SYNC:
+                logger.debug("REGISTRY_RESPONDS_TO_CLOCK_SYNC");
+                return new RegistryRespondsToClockSync(data);
             default:
                 logger.error("Unknown event type: " + (int) b);
                 return null;
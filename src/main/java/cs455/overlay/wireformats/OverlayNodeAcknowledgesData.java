@@ -0,0 +1,118 @@
+package cs455.overlay.wireformats;
+
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import cs455.overlay.util.Validator;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+/**
+ * Tells the source of a data packet that it was delivered. Routed back through the overlay
+ * like a data packet, so it travels as far as the packet did.
+ */
+public class OverlayNodeAcknowledgesData extends Event {
+    private static final Logger logger = LogManager.getLogger(OverlayNodeAcknowledgesData.class);
+    private byte messageType;
+    private int destinationId;
+    private int sourceId;
+    private int hopsTaken;
+    private long timestamp;
+
+    public OverlayNodeAcknowledgesData() {
+
+    }
+
+    /**
+     * byte: Message type; OVERLAY_NODE_ACKNOWLEDGES_DATA
+     * int: Destination ID; the source of the acknowledged packet
+     * int: Source ID; the node the packet was delivered to
+     * int: Number of hops the acknowledgement has taken so far
+     * long: Timestamp echoed from the acknowledged packet
+     */
+    public OverlayNodeAcknowledgesData(byte[] marshalledBytes) throws IOException {
+        ByteArrayInputStream baInputStream = new ByteArrayInputStream(marshalledBytes);
+        DataInputStream din = new DataInputStream(baInputStream);
+
+        messageType = din.readByte();
+
+        Validator.validateEventType(messageType, Protocol.OVERLAY_NODE_ACKNOWLEDGES_DATA, logger);
+
+        destinationId = din.readInt();
+        sourceId = din.readInt();
+        hopsTaken = din.readInt();
+        timestamp = din.readLong();
+
+        baInputStream.close();
+        din.close();
+    }
+
+    @Override
+    public byte[] getBytes() {
+        byte[] marshalledBytes = null;
+        ByteArrayOutputStream baOutputStream = new ByteArrayOutputStream();
+        DataOutputStream dout = new DataOutputStream(new BufferedOutputStream(baOutputStream));
+
+        try {
+            dout.writeByte(getType());
+            dout.writeInt(destinationId);
+            dout.writeInt(sourceId);
+            dout.writeInt(hopsTaken);
+            dout.writeLong(timestamp);
+            dout.flush();
+
+            marshalledBytes = baOutputStream.toByteArray();
+        } catch (IOException e) {
+            logger.error(e.getStackTrace());
+        } finally {
+            try {
+                baOutputStream.close();
+                dout.close();
+            } catch (IOException e) {
+                logger.error(e.getStackTrace());
+            }
+        }
+
+        return marshalledBytes;
+    }
+
+    @Override
+    public int getType() {
+        return Protocol.OVERLAY_NODE_ACKNOWLEDGES_DATA;
+    }
+
+    public int getDestinationId() {
+        return destinationId;
+    }
+
+    public void setDestinationId(int destinationId) {
+        this.destinationId = destinationId;
+    }
+
+    public int getSourceId() {
+        return sourceId;
+    }
+
+    public void setSourceId(int sourceId) {
+        this.sourceId = sourceId;
+    }
+
+    public int getHopsTaken() {
+        return hopsTaken;
+    }
+
+    public void setHopsTaken(int hopsTaken) {
+        this.hopsTaken = hopsTaken;
+    }
+
+    public long getTimestamp() {
+        return timestamp;
+    }
+
+    public void setTimestamp(long timestamp) {
+        this.timestamp = timestamp;
+    }
+}
@@ -0,0 +1,255 @@
+package cs455.overlay.wireformats;
+
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import cs455.overlay.util.LatencyHistogram;
+import cs455.overlay.util.PayloadSum;
+import cs455.overlay.util.Validator;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+/**
+ * The combined traffic summary of a subtree of the broadcast tree, sent by the subtree's root
+ * to its parent in the tree, or to the registry if it is a root of the tree itself.
+ */
+public class OverlayNodeReportsAggregatedTrafficSummary extends Event {
+    private static final Logger logger =
+            LogManager.getLogger(OverlayNodeReportsAggregatedTrafficSummary.class);
+    private byte messageType;
+    private int nodeId;
+    private int noOfNodes;
+    private long numPacketsSent;
+    private long numPacketsRelayed;
+    private PayloadSum sumPacketsSent = PayloadSum.ZERO;
+    private long numPacketsReceived;
+    private PayloadSum sumPacketsReceived = PayloadSum.ZERO;
+    private long payloadBytesSent;
+    private long payloadBytesReceived;
+    private LatencyHistogram endToEndLatency = new LatencyHistogram();
+    private LatencyHistogram perHopLatency = new LatencyHistogram();
+    // null if the sender did not list them
+    private int[] nodeIds = new int[0];
+
+    public OverlayNodeReportsAggregatedTrafficSummary() {
+
+    }
+
+    /**
+     * byte: Message type; OVERLAY_NODE_REPORTS_AGGREGATED_TRAFFIC_SUMMARY
+     * int: Node ID of the root of the subtree
+     * int: Number of nodes whose summaries are included
+     * long: Total number of packets sent
+     * long: Total number of packets relayed
+     * long: Sum of packet data sent, lower 64 bits
+     * long: Total number of packets received
+     * long: Sum of packet data received, lower 64 bits
+     * long: Sum of packet data sent, upper 64 bits (optional)
+     * long: Sum of packet data received, upper 64 bits (optional)
+     * long: Number of payload bytes sent (optional)
+     * long: Number of payload bytes received
+     * LatencyHistogram: End-to-end latency of received packets, in nanoseconds (optional)
+     * LatencyHistogram: Latency per hop of received packets, in nanoseconds
+     * int: length of following "node IDs" field (optional)
+     * int[^^]: IDs of the nodes whose summaries are included
+     *
+     * Without the upper bits the sums are taken to fit in a long.
+     */
+    public OverlayNodeReportsAggregatedTrafficSummary(byte[] marshalledBytes) throws IOException {
+        ByteArrayInputStream baInputStream = new ByteArrayInputStream(marshalledBytes);
+        DataInputStream din = new DataInputStream(baInputStream);
+
+        messageType = din.readByte();
+
+        Validator.validateEventType(messageType,
+                Protocol.OVERLAY_NODE_REPORTS_AGGREGATED_TRAFFIC_SUMMARY, logger);
+
+        nodeId = din.readInt();
+        noOfNodes = din.readInt();
+        numPacketsSent = din.readLong();
+        numPacketsRelayed = din.readLong();
+        long sumPacketsSentLow = din.readLong();
+        numPacketsReceived = din.readLong();
+        long sumPacketsReceivedLow = din.readLong();
+        if (din.available() > 0) {
+            sumPacketsSent = new PayloadSum(din.readLong(), sumPacketsSentLow);
+            sumPacketsReceived = new PayloadSum(din.readLong(), sumPacketsReceivedLow);
+            if (din.available() > 0) {
+                payloadBytesSent = din.readLong();
+                payloadBytesReceived = din.readLong();
+            }
+            if (din.available() > 0) {
+                endToEndLatency = LatencyHistogram.readFrom(din);
+                perHopLatency = LatencyHistogram.readFrom(din);
+            }
+        } else {
+            sumPacketsSent = PayloadSum.valueOf(sumPacketsSentLow);
+            sumPacketsReceived = PayloadSum.valueOf(sumPacketsReceivedLow);
+        }
+        if (din.available() > 0) {
+            int noOfNodeIds = din.readInt();
+            if (noOfNodeIds < 0 || noOfNodeIds > din.available() / 4) {
+                throw new IOException("Invalid number of node IDs " + noOfNodeIds);
+            }
+            nodeIds = new int[noOfNodeIds];
+            for (int i = 0; i < noOfNodeIds; i++) {
+                nodeIds[i] = din.readInt();
+            }
+        } else {
+            nodeIds = null;
+        }
+
+        baInputStream.close();
+        din.close();
+    }
+
+    @Override
+    public byte[] getBytes() {
+        byte[] marshalledBytes = null;
+        ByteArrayOutputStream baOutputStream = new ByteArrayOutputStream();
+        DataOutputStream dout = new DataOutputStream(new BufferedOutputStream(baOutputStream));
+
+        try {
+            dout.writeByte(getType());
+            dout.writeInt(nodeId);
+            dout.writeInt(noOfNodes);
+            dout.writeLong(numPacketsSent);
+            dout.writeLong(numPacketsRelayed);
+            dout.writeLong(sumPacketsSent.getLow());
+            dout.writeLong(numPacketsReceived);
+            dout.writeLong(sumPacketsReceived.getLow());
+            dout.writeLong(sumPacketsSent.getHigh());
+            dout.writeLong(sumPacketsReceived.getHigh());
+            dout.writeLong(payloadBytesSent);
+            dout.writeLong(payloadBytesReceived);
+            endToEndLatency.writeTo(dout);
+            perHopLatency.writeTo(dout);
+            dout.writeInt(nodeIds.length);
+            for (int id : nodeIds) {
+                dout.writeInt(id);
+            }
+            dout.flush();
+
+            marshalledBytes = baOutputStream.toByteArray();
+        } catch (IOException e) {
+            logger.error(e.getStackTrace());
+        } finally {
+            try {
+                baOutputStream.close();
+                dout.close();
+            } catch (IOException e) {
+                logger.error(e.getStackTrace());
+            }
+        }
+
+        return marshalledBytes;
+    }
+
+    @Override
+    public int getType() {
+        return Protocol.OVERLAY_NODE_REPORTS_AGGREGATED_TRAFFIC_SUMMARY;
+    }
+
+    public int getNodeId() {
+        return nodeId;
+    }
+
+    public void setNodeId(int nodeId) {
+        this.nodeId = nodeId;
+    }
+
+    public int getNoOfNodes() {
+        return noOfNodes;
+    }
+
+    public void setNoOfNodes(int noOfNodes) {
+        this.noOfNodes = noOfNodes;
+    }
+
+    public long getNumPacketsSent() {
+        return numPacketsSent;
+    }
+
+    public void setNumPacketsSent(long numPacketsSent) {
+        this.numPacketsSent = numPacketsSent;
+    }
+
+    public long getNumPacketsRelayed() {
+        return numPacketsRelayed;
+    }
+
+    public void setNumPacketsRelayed(long numPacketsRelayed) {
+        this.numPacketsRelayed = numPacketsRelayed;
+    }
+
+    public PayloadSum getSumPacketsSent() {
+        return sumPacketsSent;
+    }
+
+    public void setSumPacketsSent(PayloadSum sumPacketsSent) {
+        this.sumPacketsSent = sumPacketsSent;
+    }
+
+    public long getNumPacketsReceived() {
+        return numPacketsReceived;
+    }
+
+    public void setNumPacketsReceived(long numPacketsReceived) {
+        this.numPacketsReceived = numPacketsReceived;
+    }
+
+    public PayloadSum getSumPacketsReceived() {
+        return sumPacketsReceived;
+    }
+
+    public void setSumPacketsReceived(PayloadSum sumPacketsReceived) {
+        this.sumPacketsReceived = sumPacketsReceived;
+    }
+
+    public long getPayloadBytesSent() {
+        return payloadBytesSent;
+    }
+
+    public void setPayloadBytesSent(long payloadBytesSent) {
+        this.payloadBytesSent = payloadBytesSent;
+    }
+
+    public long getPayloadBytesReceived() {
+        return payloadBytesReceived;
+    }
+
+    public void setPayloadBytesReceived(long payloadBytesReceived) {
+        this.payloadBytesReceived = payloadBytesReceived;
+    }
+
+    public LatencyHistogram getEndToEndLatency() {
+        return endToEndLatency;
+    }
+
+    public void setEndToEndLatency(LatencyHistogram endToEndLatency) {
+        this.endToEndLatency = endToEndLatency;
+    }
+
+    public LatencyHistogram getPerHopLatency() {
+        return perHopLatency;
+    }
+
+    public void setPerHopLatency(LatencyHistogram perHopLatency) {
+        this.perHopLatency = perHopLatency;
+    }
+
+    /**
+     * IDs of the nodes whose summaries are included, or null if the sender is too old to
+     * list them.
+     */
+    public int[] getNodeIds() {
+        return nodeIds;
+    }
+
+    public void setNodeIds(int[] nodeIds) {
+        this.nodeIds = nodeIds;
+    }
+}
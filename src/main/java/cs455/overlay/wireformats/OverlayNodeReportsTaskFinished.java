@@ -17,6 +17,10 @@ public class OverlayNodeReportsTaskFinished extends Event {
     private byte[] ipAddress;
     private int port;
     private int nodeId;
+    private long taskStartTimeNanos;
+    // nodes that do not send this only know the first summary version and do not report
+    // link counters
+    private byte summaryVersion = 1;
 
     public OverlayNodeReportsTaskFinished() {
 
@@ -29,6 +33,9 @@ public class OverlayNodeReportsTaskFinished extends Event {
      * byte[^^]: Node IP address:
      * int: Node Port number:
      * int: nodeID
+     * long: Wall clock time the node started sending, in nanoseconds since the epoch
+     * (optional)
+     * byte: Newest traffic summary version the node can send (optional)
      */
     public OverlayNodeReportsTaskFinished(byte[] marshalledBytes) throws IOException {
         ByteArrayInputStream baInputStream = new ByteArrayInputStream(marshalledBytes);
@@ -42,7 +49,12 @@ public class OverlayNodeReportsTaskFinished extends Event {
         ipAddress = new byte[ipAddressLength];
         din.readFully(ipAddress, 0, ipAddressLength);
         nodeId = din.readInt();
-
+        if (din.available() > 0) {
+            taskStartTimeNanos = din.readLong();
+        }
+        if (din.available() > 0) {
+            summaryVersion = din.readByte();
+        }
 
         baInputStream.close();
         din.close();
@@ -59,6 +71,8 @@ public class OverlayNodeReportsTaskFinished extends Event {
             dout.writeByte(ipAddressLength);
             dout.write(ipAddress);
             dout.writeInt(nodeId);
+            dout.writeLong(taskStartTimeNanos);
+            dout.writeByte(summaryVersion);
 
             dout.flush();
 
@@ -122,4 +136,20 @@ public class OverlayNodeReportsTaskFinished extends Event {
     public void setNodeId(int nodeId) {
         this.nodeId = nodeId;
     }
+
+    public long getTaskStartTimeNanos() {
+        return taskStartTimeNanos;
+    }
+
+    public void setTaskStartTimeNanos(long taskStartTimeNanos) {
+        this.taskStartTimeNanos = taskStartTimeNanos;
+    }
+
+    public byte getSummaryVersion() {
+        return summaryVersion;
+    }
+
+    public void setSummaryVersion(byte summaryVersion) {
+        this.summaryVersion = summaryVersion;
+    }
 }
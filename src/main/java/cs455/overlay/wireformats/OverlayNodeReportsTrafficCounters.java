@@ -0,0 +1,120 @@
+package cs455.overlay.wireformats;
+
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import cs455.overlay.util.Validator;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+/**
+ * The number of data packets a node has put on and taken off its links since it started.
+ * The counters are never reset, so the registry can compare them across waves.
+ */
+public class OverlayNodeReportsTrafficCounters extends Event {
+    private static final Logger logger =
+            LogManager.getLogger(OverlayNodeReportsTrafficCounters.class);
+    private byte messageType;
+    private int nodeId;
+    private int wave;
+    private long packetsSentOnLinks;
+    private long packetsReceivedOnLinks;
+
+    public OverlayNodeReportsTrafficCounters() {
+
+    }
+
+    /**
+     * byte: Message type; OVERLAY_NODE_REPORTS_TRAFFIC_COUNTERS
+     * int: Node ID
+     * int: Wave number from the request
+     * long: Data packets sent to other nodes, both originated and relayed
+     * long: Data packets received from other nodes, whether delivered, relayed or dropped
+     */
+    public OverlayNodeReportsTrafficCounters(byte[] marshalledBytes) throws IOException {
+        ByteArrayInputStream baInputStream = new ByteArrayInputStream(marshalledBytes);
+        DataInputStream din = new DataInputStream(baInputStream);
+
+        messageType = din.readByte();
+
+        Validator.validateEventType(messageType, Protocol.OVERLAY_NODE_REPORTS_TRAFFIC_COUNTERS,
+                logger);
+
+        nodeId = din.readInt();
+        wave = din.readInt();
+        packetsSentOnLinks = din.readLong();
+        packetsReceivedOnLinks = din.readLong();
+
+        baInputStream.close();
+        din.close();
+    }
+
+    @Override
+    public byte[] getBytes() {
+        byte[] marshalledBytes = null;
+        ByteArrayOutputStream baOutputStream = new ByteArrayOutputStream();
+        DataOutputStream dout = new DataOutputStream(new BufferedOutputStream(baOutputStream));
+
+        try {
+            dout.writeByte(getType());
+            dout.writeInt(nodeId);
+            dout.writeInt(wave);
+            dout.writeLong(packetsSentOnLinks);
+            dout.writeLong(packetsReceivedOnLinks);
+            dout.flush();
+
+            marshalledBytes = baOutputStream.toByteArray();
+        } catch (IOException e) {
+            logger.error(e.getStackTrace());
+        } finally {
+            try {
+                baOutputStream.close();
+                dout.close();
+            } catch (IOException e) {
+                logger.error(e.getStackTrace());
+            }
+        }
+
+        return marshalledBytes;
+    }
+
+    @Override
+    public int getType() {
+        return Protocol.OVERLAY_NODE_REPORTS_TRAFFIC_COUNTERS;
+    }
+
+    public int getNodeId() {
+        return nodeId;
+    }
+
+    public void setNodeId(int nodeId) {
+        this.nodeId = nodeId;
+    }
+
+    public int getWave() {
+        return wave;
+    }
+
+    public void setWave(int wave) {
+        this.wave = wave;
+    }
+
+    public long getPacketsSentOnLinks() {
+        return packetsSentOnLinks;
+    }
+
+    public void setPacketsSentOnLinks(long packetsSentOnLinks) {
+        this.packetsSentOnLinks = packetsSentOnLinks;
+    }
+
+    public long getPacketsReceivedOnLinks() {
+        return packetsReceivedOnLinks;
+    }
+
+    public void setPacketsReceivedOnLinks(long packetsReceivedOnLinks) {
+        this.packetsReceivedOnLinks = packetsReceivedOnLinks;
+    }
+}
@@ -0,0 +1,202 @@
+package cs455.overlay.wireformats;
+
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import cs455.overlay.util.LatencyHistogram;
+import cs455.overlay.util.PayloadSum;
+import cs455.overlay.util.Validator;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+/**
+ * A node's traffic summary with 64-bit packet counts and 128-bit payload sums, sent instead of
+ * OverlayNodeReportsTrafficSummary when the registry asks for version 2.
+ */
+public class OverlayNodeReportsTrafficSummaryV2 extends Event {
+    private static final Logger logger =
+            LogManager.getLogger(OverlayNodeReportsTrafficSummaryV2.class);
+    private byte messageType;
+    private int nodeId;
+    private long numPacketsSent;
+    private long numPacketsRelayed;
+    private PayloadSum sumPacketsSent = PayloadSum.ZERO;
+    private long numPacketsReceived;
+    private PayloadSum sumPacketsReceived = PayloadSum.ZERO;
+    private long payloadBytesSent;
+    private long payloadBytesReceived;
+    private LatencyHistogram endToEndLatency = new LatencyHistogram();
+    private LatencyHistogram perHopLatency = new LatencyHistogram();
+
+    public OverlayNodeReportsTrafficSummaryV2() {
+
+    }
+
+    /**
+     * byte: Message type; OVERLAY_NODE_REPORTS_TRAFFIC_SUMMARY_V2
+     * int: Assigned node ID
+     * long: Total number of packets sent
+     * long: Total number of packets relayed
+     * long: Sum of packet data sent, upper 64 bits
+     * long: Sum of packet data sent, lower 64 bits
+     * long: Total number of packets received
+     * long: Sum of packet data received, upper 64 bits
+     * long: Sum of packet data received, lower 64 bits
+     * long: Number of payload bytes sent (optional)
+     * long: Number of payload bytes received
+     * LatencyHistogram: End-to-end latency of received packets, in nanoseconds (optional)
+     * LatencyHistogram: Latency per hop of received packets, in nanoseconds
+     */
+    public OverlayNodeReportsTrafficSummaryV2(byte[] marshalledBytes) throws IOException {
+        ByteArrayInputStream baInputStream = new ByteArrayInputStream(marshalledBytes);
+        DataInputStream din = new DataInputStream(baInputStream);
+
+        messageType = din.readByte();
+
+        Validator.validateEventType(messageType,
+                Protocol.OVERLAY_NODE_REPORTS_TRAFFIC_SUMMARY_V2, logger);
+
+        nodeId = din.readInt();
+        numPacketsSent = din.readLong();
+        numPacketsRelayed = din.readLong();
+        sumPacketsSent = new PayloadSum(din.readLong(), din.readLong());
+        numPacketsReceived = din.readLong();
+        sumPacketsReceived = new PayloadSum(din.readLong(), din.readLong());
+        if (din.available() > 0) {
+            payloadBytesSent = din.readLong();
+            payloadBytesReceived = din.readLong();
+        }
+        if (din.available() > 0) {
+            endToEndLatency = LatencyHistogram.readFrom(din);
+            perHopLatency = LatencyHistogram.readFrom(din);
+        }
+
+        baInputStream.close();
+        din.close();
+    }
+
+    @Override
+    public byte[] getBytes() {
+        byte[] marshalledBytes = null;
+        ByteArrayOutputStream baOutputStream = new ByteArrayOutputStream();
+        DataOutputStream dout = new DataOutputStream(new BufferedOutputStream(baOutputStream));
+
+        try {
+            dout.writeByte(getType());
+            dout.writeInt(nodeId);
+            dout.writeLong(numPacketsSent);
+            dout.writeLong(numPacketsRelayed);
+            dout.writeLong(sumPacketsSent.getHigh());
+            dout.writeLong(sumPacketsSent.getLow());
+            dout.writeLong(numPacketsReceived);
+            dout.writeLong(sumPacketsReceived.getHigh());
+            dout.writeLong(sumPacketsReceived.getLow());
+            dout.writeLong(payloadBytesSent);
+            dout.writeLong(payloadBytesReceived);
+            endToEndLatency.writeTo(dout);
+            perHopLatency.writeTo(dout);
+            dout.flush();
+
+            marshalledBytes = baOutputStream.toByteArray();
+        } catch (IOException e) {
+            logger.error(e.getStackTrace());
+        } finally {
+            try {
+                baOutputStream.close();
+                dout.close();
+            } catch (IOException e) {
+                logger.error(e.getStackTrace());
+            }
+        }
+
+        return marshalledBytes;
+    }
+
+    @Override
+    public int getType() {
+        return Protocol.OVERLAY_NODE_REPORTS_TRAFFIC_SUMMARY_V2;
+    }
+
+    public int getNodeId() {
+        return nodeId;
+    }
+
+    public void setNodeId(int nodeId) {
+        this.nodeId = nodeId;
+    }
+
+    public long getNumPacketsSent() {
+        return numPacketsSent;
+    }
+
+    public void setNumPacketsSent(long numPacketsSent) {
+        this.numPacketsSent = numPacketsSent;
+    }
+
+    public long getNumPacketsRelayed() {
+        return numPacketsRelayed;
+    }
+
+    public void setNumPacketsRelayed(long numPacketsRelayed) {
+        this.numPacketsRelayed = numPacketsRelayed;
+    }
+
+    public PayloadSum getSumPacketsSent() {
+        return sumPacketsSent;
+    }
+
+    public void setSumPacketsSent(PayloadSum sumPacketsSent) {
+        this.sumPacketsSent = sumPacketsSent;
+    }
+
+    public long getNumPacketsReceived() {
+        return numPacketsReceived;
+    }
+
+    public void setNumPacketsReceived(long numPacketsReceived) {
+        this.numPacketsReceived = numPacketsReceived;
+    }
+
+    public PayloadSum getSumPacketsReceived() {
+        return sumPacketsReceived;
+    }
+
+    public void setSumPacketsReceived(PayloadSum sumPacketsReceived) {
+        this.sumPacketsReceived = sumPacketsReceived;
+    }
+
+    public long getPayloadBytesSent() {
+        return payloadBytesSent;
+    }
+
+    public void setPayloadBytesSent(long payloadBytesSent) {
+        this.payloadBytesSent = payloadBytesSent;
+    }
+
+    public long getPayloadBytesReceived() {
+        return payloadBytesReceived;
+    }
+
+    public void setPayloadBytesReceived(long payloadBytesReceived) {
+        this.payloadBytesReceived = payloadBytesReceived;
+    }
+
+    public LatencyHistogram getEndToEndLatency() {
+        return endToEndLatency;
+    }
+
+    public void setEndToEndLatency(LatencyHistogram endToEndLatency) {
+        this.endToEndLatency = endToEndLatency;
+    }
+
+    public LatencyHistogram getPerHopLatency() {
+        return perHopLatency;
+    }
+
+    public void setPerHopLatency(LatencyHistogram perHopLatency) {
+        this.perHopLatency = perHopLatency;
+    }
+}
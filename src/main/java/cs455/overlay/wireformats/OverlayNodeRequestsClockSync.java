@@ -0,0 +1,79 @@
+package cs455.overlay.wireformats;
+
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import cs455.overlay.util.Validator;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+public class OverlayNodeRequestsClockSync extends Event {
+    private static final Logger logger = LogManager.getLogger(OverlayNodeRequestsClockSync.class);
+    private byte messageType;
+    private long originateTimestamp;
+
+    public OverlayNodeRequestsClockSync() {
+
+    }
+
+    /**
+     * byte: Message type; OVERLAY_NODE_REQUESTS_CLOCK_SYNC
+     * long: Wall clock time of the node when it sent the request, echoed back unchanged
+     */
+    public OverlayNodeRequestsClockSync(byte[] marshalledBytes) throws IOException {
+        ByteArrayInputStream baInputStream = new ByteArrayInputStream(marshalledBytes);
+        DataInputStream din = new DataInputStream(baInputStream);
+
+        messageType = din.readByte();
+
+        Validator.validateEventType(messageType, Protocol.OVERLAY_NODE_REQUESTS_CLOCK_SYNC,
+                logger);
+
+        originateTimestamp = din.readLong();
+
+        baInputStream.close();
+        din.close();
+    }
+
+    @Override
+    public byte[] getBytes() {
+        byte[] marshalledBytes = null;
+        ByteArrayOutputStream baOutputStream = new ByteArrayOutputStream();
+        DataOutputStream dout = new DataOutputStream(new BufferedOutputStream(baOutputStream));
+
+        try {
+            dout.writeByte(getType());
+            dout.writeLong(originateTimestamp);
+            dout.flush();
+
+            marshalledBytes = baOutputStream.toByteArray();
+        } catch (IOException e) {
+            logger.error(e.getStackTrace());
+        } finally {
+            try {
+                baOutputStream.close();
+                dout.close();
+            } catch (IOException e) {
+                logger.error(e.getStackTrace());
+            }
+        }
+
+        return marshalledBytes;
+    }
+
+    @Override
+    public int getType() {
+        return Protocol.OVERLAY_NODE_REQUESTS_CLOCK_SYNC;
+    }
+
+    public long getOriginateTimestamp() {
+        return originateTimestamp;
+    }
+
+    public void setOriginateTimestamp(long originateTimestamp) {
+        this.originateTimestamp = originateTimestamp;
+    }
+}
@@ -0,0 +1,91 @@
+package cs455.overlay.wireformats;
+
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import cs455.overlay.util.Validator;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+public class OverlayNodeRequestsNodeAddress extends Event {
+    private static final Logger logger = LogManager.getLogger(OverlayNodeRequestsNodeAddress.class);
+    private byte messageType;
+    private int nodeId;
+    private int requestedNodeId;
+
+    public OverlayNodeRequestsNodeAddress() {
+
+    }
+
+    /**
+     * byte: Message type; OVERLAY_NODE_REQUESTS_NODE_ADDRESS
+     * int: Node ID of the requesting node
+     * int: Node ID whose address is requested
+     */
+    public OverlayNodeRequestsNodeAddress(byte[] marshalledBytes) throws IOException {
+        ByteArrayInputStream baInputStream = new ByteArrayInputStream(marshalledBytes);
+        DataInputStream din = new DataInputStream(baInputStream);
+
+        messageType = din.readByte();
+
+        Validator.validateEventType(messageType, Protocol.OVERLAY_NODE_REQUESTS_NODE_ADDRESS,
+                logger);
+
+        nodeId = din.readInt();
+        requestedNodeId = din.readInt();
+
+        baInputStream.close();
+        din.close();
+    }
+
+    @Override
+    public byte[] getBytes() {
+        byte[] marshalledBytes = null;
+        ByteArrayOutputStream baOutputStream = new ByteArrayOutputStream();
+        DataOutputStream dout = new DataOutputStream(new BufferedOutputStream(baOutputStream));
+
+        try {
+            dout.writeByte(getType());
+            dout.writeInt(nodeId);
+            dout.writeInt(requestedNodeId);
+            dout.flush();
+
+            marshalledBytes = baOutputStream.toByteArray();
+        } catch (IOException e) {
+            logger.error(e.getStackTrace());
+        } finally {
+            try {
+                baOutputStream.close();
+                dout.close();
+            } catch (IOException e) {
+                logger.error(e.getStackTrace());
+            }
+        }
+
+        return marshalledBytes;
+    }
+
+    @Override
+    public int getType() {
+        return Protocol.OVERLAY_NODE_REQUESTS_NODE_ADDRESS;
+    }
+
+    public int getNodeId() {
+        return nodeId;
+    }
+
+    public void setNodeId(int nodeId) {
+        this.nodeId = nodeId;
+    }
+
+    public int getRequestedNodeId() {
+        return requestedNodeId;
+    }
+
+    public void setRequestedNodeId(int requestedNodeId) {
+        this.requestedNodeId = requestedNodeId;
+    }
+}
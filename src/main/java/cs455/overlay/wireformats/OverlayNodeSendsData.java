@@ -7,11 +7,14 @@ import java.io.ByteArrayOutputStream;
 import java.io.DataInputStream;
 import java.io.DataOutputStream;
 import java.io.IOException;
+import java.nio.ByteBuffer;
 import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
 
 public class OverlayNodeSendsData extends Event {
     private static final Logger logger = LogManager.getLogger(OverlayNodeSendsData.class);
+    private static final byte ACKNOWLEDGE_FLAG = 1;
+    private static final byte TIMESTAMP_FLAG = 2;
 
     private byte messageType;
     private int destinationId;
@@ -19,6 +22,15 @@ public class OverlayNodeSendsData extends Event {
     private int payload;
     private int disseminationTraceLength;  // number of hops
     private int[] disseminationTrace;
+    private boolean acknowledge;
+    private long acknowledgeTimestamp;
+    // wall clock time the source sent the packet, in nanoseconds since the epoch; 0 if unset
+    private long sendTimestamp;
+    // a slice of the array the packet was decoded from, or of one shared by the generator
+    private ByteBuffer payloadBytes = ByteBuffer.allocate(0);
+    private int messageId;
+    private int chunkIndex;
+    private int noOfChunks = 1;
 
     public OverlayNodeSendsData() {
 
@@ -32,6 +44,20 @@ public class OverlayNodeSendsData extends Event {
      * int: Dissemination trace field length (number of hops)
      * int[^^]: Dissemination trace comprising nodeIDs that the packet traversed
      * through
+     * byte: Flags (optional); 1 if the destination is to acknowledge the packet, plus 2 if
+     * the packet carries its send timestamp
+     * long: Timestamp the acknowledgement echoes back to the source; only present if the
+     * packet is to be acknowledged
+     * long: Wall clock time the source sent the packet; only present if the flag is set
+     * int: Number of payload bytes (optional; this and the fields after it are left out if
+     * there are no payload bytes)
+     * int: Message ID, unique per source among its chunked messages
+     * int: Index of this chunk in the message
+     * int: Number of chunks the message was split into; 1 if it was not
+     * byte[^^]: Payload bytes, sized by the workload
+     *
+     * The payload bytes come last, so they can be referred to where they are in the
+     * received message and relayed without being copied.
      */
     public OverlayNodeSendsData(byte[] marshalledBytes) throws IOException {
         ByteArrayInputStream baInputStream = new ByteArrayInputStream(marshalledBytes);
@@ -47,13 +73,47 @@ public class OverlayNodeSendsData extends Event {
         for (int i = 0; i < disseminationTraceLength; i++) {
             disseminationTrace[i] = din.readInt();
         }
+        if (din.available() > 0) {
+            byte flags = din.readByte();
+            acknowledge = (flags & ACKNOWLEDGE_FLAG) != 0;
+            if (acknowledge) {
+                acknowledgeTimestamp = din.readLong();
+            }
+            if ((flags & TIMESTAMP_FLAG) != 0) {
+                sendTimestamp = din.readLong();
+            }
+        }
+        if (din.available() > 0) {
+            int noOfPayloadBytes = din.readInt();
+            messageId = din.readInt();
+            chunkIndex = din.readInt();
+            noOfChunks = din.readInt();
+            int payloadOffset = marshalledBytes.length - din.available();
+            payloadBytes = ByteBuffer.wrap(marshalledBytes, payloadOffset, noOfPayloadBytes)
+                    .slice();
+        }
 
         baInputStream.close();
         din.close();
     }
 
+    /**
+     * Returns the whole message, copying the payload bytes into it.
+     */
     @Override
     public byte[] getBytes() {
+        byte[] header = getHeaderBytes();
+        byte[] marshalledBytes = new byte[header.length + payloadBytes.remaining()];
+        System.arraycopy(header, 0, marshalledBytes, 0, header.length);
+        payloadBytes.duplicate().get(marshalledBytes, header.length, payloadBytes.remaining());
+        return marshalledBytes;
+    }
+
+    /**
+     * Returns the message up to, but not including, the payload bytes. Followed by
+     * getPayloadBytes() it makes up the same message as getBytes().
+     */
+    public byte[] getHeaderBytes() {
         byte[] marshalledBytes = null;
         ByteArrayOutputStream baOutputStream = new ByteArrayOutputStream();
         DataOutputStream dout = new DataOutputStream(new BufferedOutputStream(baOutputStream));
@@ -67,6 +127,20 @@ public class OverlayNodeSendsData extends Event {
             for (int i = 0; i < disseminationTraceLength; i++) {
                 dout.writeInt(disseminationTrace[i]);
             }
+            dout.writeByte((acknowledge ? ACKNOWLEDGE_FLAG : 0) |
+                    (sendTimestamp != 0 ? TIMESTAMP_FLAG : 0));
+            if (acknowledge) {
+                dout.writeLong(acknowledgeTimestamp);
+            }
+            if (sendTimestamp != 0) {
+                dout.writeLong(sendTimestamp);
+            }
+            if (payloadBytes.hasRemaining()) {
+                dout.writeInt(payloadBytes.remaining());
+                dout.writeInt(messageId);
+                dout.writeInt(chunkIndex);
+                dout.writeInt(noOfChunks);
+            }
 
             dout.flush();
 
@@ -134,4 +208,67 @@ public class OverlayNodeSendsData extends Event {
     public void setDisseminationTrace(int[] disseminationTrace) {
         this.disseminationTrace = disseminationTrace;
     }
+
+    public boolean isAcknowledge() {
+        return acknowledge;
+    }
+
+    public void setAcknowledge(boolean acknowledge) {
+        this.acknowledge = acknowledge;
+    }
+
+    public long getAcknowledgeTimestamp() {
+        return acknowledgeTimestamp;
+    }
+
+    public void setAcknowledgeTimestamp(long acknowledgeTimestamp) {
+        this.acknowledgeTimestamp = acknowledgeTimestamp;
+    }
+
+    public long getSendTimestamp() {
+        return sendTimestamp;
+    }
+
+    public void setSendTimestamp(long sendTimestamp) {
+        this.sendTimestamp = sendTimestamp;
+    }
+
+    /**
+     * Returns a view of the payload bytes; sending it does not copy them.
+     */
+    public ByteBuffer getPayloadBytes() {
+        return payloadBytes.duplicate();
+    }
+
+    public int getNoOfPayloadBytes() {
+        return payloadBytes.remaining();
+    }
+
+    public void setPayloadBytes(ByteBuffer payloadBytes) {
+        this.payloadBytes = payloadBytes;
+    }
+
+    public int getMessageId() {
+        return messageId;
+    }
+
+    public void setMessageId(int messageId) {
+        this.messageId = messageId;
+    }
+
+    public int getChunkIndex() {
+        return chunkIndex;
+    }
+
+    public void setChunkIndex(int chunkIndex) {
+        this.chunkIndex = chunkIndex;
+    }
+
+    public int getNoOfChunks() {
+        return noOfChunks;
+    }
+
+    public void setNoOfChunks(int noOfChunks) {
+        this.noOfChunks = noOfChunks;
+    }
 }
@@ -16,4 +16,23 @@ public interface Protocol {
 
     int REGISTRY_REQUESTS_TRAFFIC_SUMMARY = 11;
     int OVERLAY_NODE_REPORTS_TRAFFIC_SUMMARY = 12;
+
+    int OVERLAY_NODE_SENDS_PROBE = 13;
+    int OVERLAY_NODE_RESPONDS_TO_PROBE = 14;
+
+    int OVERLAY_NODE_REQUESTS_NODE_ADDRESS = 15;
+    int REGISTRY_RESPONDS_TO_NODE_ADDRESS_REQUEST = 16;
+
+    int REGISTRY_BROADCASTS_CONTROL_MESSAGE = 17;
+    int OVERLAY_NODE_REPORTS_AGGREGATED_TRAFFIC_SUMMARY = 18;
+
+    int REGISTRY_REQUESTS_TRAFFIC_COUNTERS = 19;
+    int OVERLAY_NODE_REPORTS_TRAFFIC_COUNTERS = 20;
+
+    int OVERLAY_NODE_ACKNOWLEDGES_DATA = 21;
+
+    int OVERLAY_NODE_REPORTS_TRAFFIC_SUMMARY_V2 = 22;
+
+    int OVERLAY_NODE_REQUESTS_CLOCK_SYNC = 23;
+    int REGISTRY_RESPONDS_TO_CLOCK_SYNC = 24;
 }
@@ -25,6 +25,30 @@ public class ProtocolLookup {
                 return "REGISTRY_REQUESTS_TRAFFIC_SUMMARY";
             case 12:
                 return "OVERLAY_NODE_REPORTS_TRAFFIC_SUMMARY";
+            case 13:
+                return "OVERLAY_NODE_SENDS_PROBE";
+            case 14:
+                return "OVERLAY_NODE_RESPONDS_TO_PROBE";
+            case 15:
+                return "OVERLAY_NODE_REQUESTS_NODE_ADDRESS";
+            case 16:
+                return "REGISTRY_RESPONDS_TO_NODE_ADDRESS_REQUEST";
+            case 17:
+                return "REGISTRY_BROADCASTS_CONTROL_MESSAGE";
+            case 18:
+                return "OVERLAY_NODE_REPORTS_AGGREGATED_TRAFFIC_SUMMARY";
+            case 19:
+                return "REGISTRY_REQUESTS_TRAFFIC_COUNTERS";
+            case 20:
+                return "OVERLAY_NODE_REPORTS_TRAFFIC_COUNTERS";
+            case 21:
+                return "OVERLAY_NODE_ACKNOWLEDGES_DATA";
+            case 22:
+                return "OVERLAY_NODE_REPORTS_TRAFFIC_SUMMARY_V2";
+            case 23:
+                return "OVERLAY_NODE_REQUESTS_CLOCK_SYNC";
+            case 24:
+                return "REGISTRY_RESPONDS_TO_CLOCK_SYNC";
             default:
                 return "ERROR";
         }
@@ -0,0 +1,113 @@
+package cs455.overlay.wireformats;
+
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import cs455.overlay.util.Validator;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+/**
+ * A control message from the registry that nodes pass on down a spanning tree of the overlay.
+ * The receiving node is responsible for delivering it to the span nodes starting with itself
+ * clockwise on the ring of sorted node IDs.
+ */
+public class RegistryBroadcastsControlMessage extends Event {
+    private static final Logger logger =
+            LogManager.getLogger(RegistryBroadcastsControlMessage.class);
+    private byte messageType;
+    private int span;
+    private int depth;
+    private byte[] message;
+
+    public RegistryBroadcastsControlMessage() {
+
+    }
+
+    /**
+     * byte: Message type; REGISTRY_BROADCASTS_CONTROL_MESSAGE
+     * int: Number of nodes, starting with the receiver, to deliver the message to
+     * int: Depth of the receiver in the broadcast tree; roots are at depth 1
+     * int: length of following "message" field
+     * byte[^^]: Marshalled control message
+     */
+    public RegistryBroadcastsControlMessage(byte[] marshalledBytes) throws IOException {
+        ByteArrayInputStream baInputStream = new ByteArrayInputStream(marshalledBytes);
+        DataInputStream din = new DataInputStream(baInputStream);
+
+        messageType = din.readByte();
+
+        Validator.validateEventType(messageType, Protocol.REGISTRY_BROADCASTS_CONTROL_MESSAGE,
+                logger);
+
+        span = din.readInt();
+        depth = din.readInt();
+        int messageLength = din.readInt();
+        message = new byte[messageLength];
+        din.readFully(message, 0, messageLength);
+
+        baInputStream.close();
+        din.close();
+    }
+
+    @Override
+    public byte[] getBytes() {
+        byte[] marshalledBytes = null;
+        ByteArrayOutputStream baOutputStream = new ByteArrayOutputStream();
+        DataOutputStream dout = new DataOutputStream(new BufferedOutputStream(baOutputStream));
+
+        try {
+            dout.writeByte(getType());
+            dout.writeInt(span);
+            dout.writeInt(depth);
+            dout.writeInt(message.length);
+            dout.write(message);
+            dout.flush();
+
+            marshalledBytes = baOutputStream.toByteArray();
+        } catch (IOException e) {
+            logger.error(e.getStackTrace());
+        } finally {
+            try {
+                baOutputStream.close();
+                dout.close();
+            } catch (IOException e) {
+                logger.error(e.getStackTrace());
+            }
+        }
+
+        return marshalledBytes;
+    }
+
+    @Override
+    public int getType() {
+        return Protocol.REGISTRY_BROADCASTS_CONTROL_MESSAGE;
+    }
+
+    public int getSpan() {
+        return span;
+    }
+
+    public void setSpan(int span) {
+        this.span = span;
+    }
+
+    public int getDepth() {
+        return depth;
+    }
+
+    public void setDepth(int depth) {
+        this.depth = depth;
+    }
+
+    public byte[] getMessage() {
+        return message;
+    }
+
+    public void setMessage(byte[] message) {
+        this.message = message;
+    }
+}
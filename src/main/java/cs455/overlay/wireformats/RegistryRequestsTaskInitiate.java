@@ -7,6 +7,9 @@ import java.io.ByteArrayOutputStream;
 import java.io.DataInputStream;
 import java.io.DataOutputStream;
 import java.io.IOException;
+import cs455.overlay.workload.TrafficPattern;
+import cs455.overlay.workload.TrafficPatterns;
+import cs455.overlay.workload.Workload;
 import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
 
@@ -15,6 +18,11 @@ public class RegistryRequestsTaskInitiate extends Event {
 
     private byte messageType;
     private int noOfPacketsToSend;
+    private int packetsPerSecond;
+    private boolean closedLoop;
+    private int window;
+    private int generatorThreads;
+    private Workload workload = new Workload();
 
     public RegistryRequestsTaskInitiate() {
 
@@ -23,6 +31,16 @@ public class RegistryRequestsTaskInitiate extends Event {
     /**
      * byte: Message type; REGISTRY_REQUESTS_TASK_INITIATE
      * int: Number of data packets to send
+     * int: Packets per second each node generates; 0 to send as fast as possible (optional)
+     * byte: 1 to wait for packets to be acknowledged, 0 to send regardless (optional)
+     * int: Packets each node may have unacknowledged in closed loop mode (optional)
+     * int: Threads each node generates packets on; 0 for one per core (optional)
+     * byte: Traffic pattern ID (optional; uniform if absent)
+     * double: Zipf exponent
+     * int: Target node ID of incast and one-to-all patterns; -1 to pick one with the seed
+     * int: Minimum number of payload bytes per packet
+     * int: Maximum number of payload bytes per packet
+     * long: Seed every node derives the pattern's random choices from
      */
     public RegistryRequestsTaskInitiate(byte[] marshalledBytes) throws IOException {
         ByteArrayInputStream baInputStream = new ByteArrayInputStream(marshalledBytes);
@@ -31,6 +49,29 @@ public class RegistryRequestsTaskInitiate extends Event {
         messageType = din.readByte();
 
         noOfPacketsToSend = din.readInt();
+        if (din.available() > 0) {
+            packetsPerSecond = din.readInt();
+            closedLoop = din.readByte() == 1;
+            window = din.readInt();
+        }
+        if (din.available() > 0) {
+            generatorThreads = din.readInt();
+        }
+        if (din.available() > 0) {
+            byte patternId = din.readByte();
+            TrafficPattern pattern = TrafficPatterns.getById(patternId);
+            if (pattern == null) {
+                logger.warn("Unknown traffic pattern " + patternId + ". Using " +
+                        TrafficPatterns.getDefault().getName() + ".");
+                pattern = TrafficPatterns.getDefault();
+            }
+            workload.setPattern(pattern);
+            workload.setZipfExponent(din.readDouble());
+            workload.setTargetNodeId(din.readInt());
+            workload.setMinPayloadBytes(din.readInt());
+            workload.setMaxPayloadBytes(din.readInt());
+            workload.setSeed(din.readLong());
+        }
 
         baInputStream.close();
         din.close();
@@ -46,6 +87,16 @@ public class RegistryRequestsTaskInitiate extends Event {
         try {
             dout.writeByte(getType());
             dout.writeInt(noOfPacketsToSend);
+            dout.writeInt(packetsPerSecond);
+            dout.writeByte(closedLoop ? 1 : 0);
+            dout.writeInt(window);
+            dout.writeInt(generatorThreads);
+            dout.writeByte(workload.getPattern().getId());
+            dout.writeDouble(workload.getZipfExponent());
+            dout.writeInt(workload.getTargetNodeId());
+            dout.writeInt(workload.getMinPayloadBytes());
+            dout.writeInt(workload.getMaxPayloadBytes());
+            dout.writeLong(workload.getSeed());
 
             dout.flush();
 
@@ -85,4 +136,44 @@ public class RegistryRequestsTaskInitiate extends Event {
     public void setNoOfPacketsToSend(int noOfPacketsToSend) {
         this.noOfPacketsToSend = noOfPacketsToSend;
     }
+
+    public int getPacketsPerSecond() {
+        return packetsPerSecond;
+    }
+
+    public void setPacketsPerSecond(int packetsPerSecond) {
+        this.packetsPerSecond = packetsPerSecond;
+    }
+
+    public boolean isClosedLoop() {
+        return closedLoop;
+    }
+
+    public void setClosedLoop(boolean closedLoop) {
+        this.closedLoop = closedLoop;
+    }
+
+    public int getWindow() {
+        return window;
+    }
+
+    public void setWindow(int window) {
+        this.window = window;
+    }
+
+    public int getGeneratorThreads() {
+        return generatorThreads;
+    }
+
+    public void setGeneratorThreads(int generatorThreads) {
+        this.generatorThreads = generatorThreads;
+    }
+
+    public Workload getWorkload() {
+        return workload;
+    }
+
+    public void setWorkload(Workload workload) {
+        this.workload = workload;
+    }
 }
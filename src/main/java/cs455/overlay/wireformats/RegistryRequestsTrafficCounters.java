@@ -0,0 +1,82 @@
+package cs455.overlay.wireformats;
+
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import cs455.overlay.util.Validator;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+/**
+ * Asks a node for its link counters as part of one wave of quiescence detection.
+ */
+public class RegistryRequestsTrafficCounters extends Event {
+    private static final Logger logger = LogManager.getLogger(RegistryRequestsTrafficCounters.class);
+    private byte messageType;
+    private int wave;
+
+    public RegistryRequestsTrafficCounters() {
+
+    }
+
+    /**
+     * byte: Message type; REGISTRY_REQUESTS_TRAFFIC_COUNTERS
+     * int: Wave number, echoed in the response
+     */
+    public RegistryRequestsTrafficCounters(byte[] marshalledBytes) throws IOException {
+        ByteArrayInputStream baInputStream = new ByteArrayInputStream(marshalledBytes);
+        DataInputStream din = new DataInputStream(baInputStream);
+
+        messageType = din.readByte();
+
+        Validator.validateEventType(messageType, Protocol.REGISTRY_REQUESTS_TRAFFIC_COUNTERS,
+                logger);
+
+        wave = din.readInt();
+
+        baInputStream.close();
+        din.close();
+    }
+
+    @Override
+    public byte[] getBytes() {
+        byte[] marshalledBytes = null;
+        ByteArrayOutputStream baOutputStream = new ByteArrayOutputStream();
+        DataOutputStream dout = new DataOutputStream(new BufferedOutputStream(baOutputStream));
+
+        try {
+            dout.writeByte(getType());
+            dout.writeInt(wave);
+            dout.flush();
+
+            marshalledBytes = baOutputStream.toByteArray();
+        } catch (IOException e) {
+            logger.error(e.getStackTrace());
+        } finally {
+            try {
+                baOutputStream.close();
+                dout.close();
+            } catch (IOException e) {
+                logger.error(e.getStackTrace());
+            }
+        }
+
+        return marshalledBytes;
+    }
+
+    @Override
+    public int getType() {
+        return Protocol.REGISTRY_REQUESTS_TRAFFIC_COUNTERS;
+    }
+
+    public int getWave() {
+        return wave;
+    }
+
+    public void setWave(int wave) {
+        this.wave = wave;
+    }
+}
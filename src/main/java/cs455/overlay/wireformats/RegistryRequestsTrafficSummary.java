@@ -13,6 +13,9 @@ import org.apache.logging.log4j.Logger;
 public class RegistryRequestsTrafficSummary extends Event {
     private static final Logger logger = LogManager.getLogger(RegistryRequestsTrafficSummary.class);
     private byte messageType;
+    private boolean aggregate;
+    private boolean resetCounters;
+    private byte summaryVersion = 1;
 
     public RegistryRequestsTrafficSummary() {
 
@@ -20,6 +23,10 @@ public class RegistryRequestsTrafficSummary extends Event {
 
     /**
      * byte: Message Type; REGISTRY_REQUESTS_TRAFFIC_SUMMARY
+     * byte: 1 if summaries are to be combined up the broadcast tree, 0 to report directly
+     * (optional)
+     * byte: 1 if the round is over and the node is to start counting afresh (optional)
+     * byte: Highest traffic summary version the registry understands (optional; 1 if absent)
      */
     public RegistryRequestsTrafficSummary(byte[] marshalledBytes) throws IOException {
         ByteArrayInputStream baInputStream = new ByteArrayInputStream(marshalledBytes);
@@ -29,6 +36,16 @@ public class RegistryRequestsTrafficSummary extends Event {
 
         Validator.validateEventType(messageType, Protocol.REGISTRY_REQUESTS_TRAFFIC_SUMMARY, logger);
 
+        if (din.available() > 0) {
+            aggregate = din.readByte() == 1;
+        }
+        if (din.available() > 0) {
+            resetCounters = din.readByte() == 1;
+        }
+        if (din.available() > 0) {
+            summaryVersion = din.readByte();
+        }
+
         baInputStream.close();
         din.close();
     }
@@ -41,6 +58,9 @@ public class RegistryRequestsTrafficSummary extends Event {
 
         try {
             dout.writeByte(getType());
+            dout.writeByte(aggregate ? 1 : 0);
+            dout.writeByte(resetCounters ? 1 : 0);
+            dout.writeByte(summaryVersion);
             dout.flush();
 
             marshalledBytes = baOutputStream.toByteArray();
@@ -62,4 +82,28 @@ public class RegistryRequestsTrafficSummary extends Event {
     public int getType() {
         return Protocol.REGISTRY_REQUESTS_TRAFFIC_SUMMARY;
     }
+
+    public boolean isAggregate() {
+        return aggregate;
+    }
+
+    public void setAggregate(boolean aggregate) {
+        this.aggregate = aggregate;
+    }
+
+    public boolean isResetCounters() {
+        return resetCounters;
+    }
+
+    public void setResetCounters(boolean resetCounters) {
+        this.resetCounters = resetCounters;
+    }
+
+    public byte getSummaryVersion() {
+        return summaryVersion;
+    }
+
+    public void setSummaryVersion(byte summaryVersion) {
+        this.summaryVersion = summaryVersion;
+    }
 }
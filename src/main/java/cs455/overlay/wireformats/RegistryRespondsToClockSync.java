@@ -0,0 +1,103 @@
+package cs455.overlay.wireformats;
+
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import cs455.overlay.util.Validator;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+public class RegistryRespondsToClockSync extends Event {
+    private static final Logger logger = LogManager.getLogger(RegistryRespondsToClockSync.class);
+    private byte messageType;
+    private long originateTimestamp;
+    private long receiveTimestamp;
+    private long transmitTimestamp;
+
+    public RegistryRespondsToClockSync() {
+
+    }
+
+    /**
+     * byte: Message type; REGISTRY_RESPONDS_TO_CLOCK_SYNC
+     * long: Wall clock time of the node when it sent the request, echoed from the request
+     * long: Wall clock time of the registry when it received the request
+     * long: Wall clock time of the registry when it sent this response
+     */
+    public RegistryRespondsToClockSync(byte[] marshalledBytes) throws IOException {
+        ByteArrayInputStream baInputStream = new ByteArrayInputStream(marshalledBytes);
+        DataInputStream din = new DataInputStream(baInputStream);
+
+        messageType = din.readByte();
+
+        Validator.validateEventType(messageType, Protocol.REGISTRY_RESPONDS_TO_CLOCK_SYNC,
+                logger);
+
+        originateTimestamp = din.readLong();
+        receiveTimestamp = din.readLong();
+        transmitTimestamp = din.readLong();
+
+        baInputStream.close();
+        din.close();
+    }
+
+    @Override
+    public byte[] getBytes() {
+        byte[] marshalledBytes = null;
+        ByteArrayOutputStream baOutputStream = new ByteArrayOutputStream();
+        DataOutputStream dout = new DataOutputStream(new BufferedOutputStream(baOutputStream));
+
+        try {
+            dout.writeByte(getType());
+            dout.writeLong(originateTimestamp);
+            dout.writeLong(receiveTimestamp);
+            dout.writeLong(transmitTimestamp);
+            dout.flush();
+
+            marshalledBytes = baOutputStream.toByteArray();
+        } catch (IOException e) {
+            logger.error(e.getStackTrace());
+        } finally {
+            try {
+                baOutputStream.close();
+                dout.close();
+            } catch (IOException e) {
+                logger.error(e.getStackTrace());
+            }
+        }
+
+        return marshalledBytes;
+    }
+
+    @Override
+    public int getType() {
+        return Protocol.REGISTRY_RESPONDS_TO_CLOCK_SYNC;
+    }
+
+    public long getOriginateTimestamp() {
+        return originateTimestamp;
+    }
+
+    public void setOriginateTimestamp(long originateTimestamp) {
+        this.originateTimestamp = originateTimestamp;
+    }
+
+    public long getReceiveTimestamp() {
+        return receiveTimestamp;
+    }
+
+    public void setReceiveTimestamp(long receiveTimestamp) {
+        this.receiveTimestamp = receiveTimestamp;
+    }
+
+    public long getTransmitTimestamp() {
+        return transmitTimestamp;
+    }
+
+    public void setTransmitTimestamp(long transmitTimestamp) {
+        this.transmitTimestamp = transmitTimestamp;
+    }
+}
@@ -0,0 +1,117 @@
+package cs455.overlay.wireformats;
+
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import cs455.overlay.util.Validator;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+public class RegistryRespondsToNodeAddressRequest extends Event {
+    private static final Logger logger =
+            LogManager.getLogger(RegistryRespondsToNodeAddressRequest.class);
+    private byte messageType;
+    private int nodeId;
+    private byte ipAddressLength;
+    private byte[] ipAddress;
+    private int port;
+
+    public RegistryRespondsToNodeAddressRequest() {
+
+    }
+
+    /**
+     * byte: Message type; REGISTRY_RESPONDS_TO_NODE_ADDRESS_REQUEST
+     * int: Node ID whose address was requested
+     * byte: length of following "IP address" field; 0 if the node is not registered
+     * byte[^^]: IP address of the node
+     * int: Port number the node listens on
+     */
+    public RegistryRespondsToNodeAddressRequest(byte[] marshalledBytes) throws IOException {
+        ByteArrayInputStream baInputStream = new ByteArrayInputStream(marshalledBytes);
+        DataInputStream din = new DataInputStream(baInputStream);
+
+        messageType = din.readByte();
+
+        Validator.validateEventType(messageType,
+                Protocol.REGISTRY_RESPONDS_TO_NODE_ADDRESS_REQUEST, logger);
+
+        nodeId = din.readInt();
+        ipAddressLength = din.readByte();
+        ipAddress = new byte[ipAddressLength];
+        din.readFully(ipAddress, 0, ipAddressLength);
+        port = din.readInt();
+
+        baInputStream.close();
+        din.close();
+    }
+
+    @Override
+    public byte[] getBytes() {
+        byte[] marshalledBytes = null;
+        ByteArrayOutputStream baOutputStream = new ByteArrayOutputStream();
+        DataOutputStream dout = new DataOutputStream(new BufferedOutputStream(baOutputStream));
+
+        try {
+            dout.writeByte(getType());
+            dout.writeInt(nodeId);
+            dout.writeByte(ipAddressLength);
+            dout.write(ipAddress, 0, ipAddressLength);
+            dout.writeInt(port);
+            dout.flush();
+
+            marshalledBytes = baOutputStream.toByteArray();
+        } catch (IOException e) {
+            logger.error(e.getStackTrace());
+        } finally {
+            try {
+                baOutputStream.close();
+                dout.close();
+            } catch (IOException e) {
+                logger.error(e.getStackTrace());
+            }
+        }
+
+        return marshalledBytes;
+    }
+
+    @Override
+    public int getType() {
+        return Protocol.REGISTRY_RESPONDS_TO_NODE_ADDRESS_REQUEST;
+    }
+
+    public int getNodeId() {
+        return nodeId;
+    }
+
+    public void setNodeId(int nodeId) {
+        this.nodeId = nodeId;
+    }
+
+    public byte getIpAddressLength() {
+        return ipAddressLength;
+    }
+
+    public void setIpAddressLength(byte ipAddressLength) {
+        this.ipAddressLength = ipAddressLength;
+    }
+
+    public byte[] getIpAddress() {
+        return ipAddress;
+    }
+
+    public void setIpAddress(byte[] ipAddress) {
+        this.ipAddress = ipAddress;
+    }
+
+    public int getPort() {
+        return port;
+    }
+
+    public void setPort(int port) {
+        this.port = port;
+    }
+}
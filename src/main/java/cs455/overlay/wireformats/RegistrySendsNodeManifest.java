@@ -25,6 +25,9 @@ public class RegistrySendsNodeManifest extends Event {
     private int noOfAllNodeIds;
     private int[] allNodeIds;
 
+    private byte topologyId;
+    private int topologyTableSize;
+
     public RegistrySendsNodeManifest() {
     }
 
@@ -49,6 +52,8 @@ public class RegistrySendsNodeManifest extends Event {
      * =============================================================================
      * byte: Number of node IDs in the system
      * int[^^]: List of all node IDs in the system [Note no IPs are included]
+     * byte: ID of the overlay topology the routing tables were built with (optional)
+     * int: Table size the overlay topology was set up with (optional)
      */
     public RegistrySendsNodeManifest(byte[] marshalledBytes) throws IOException {
         ByteArrayInputStream baInputStream = new ByteArrayInputStream(marshalledBytes);
@@ -77,6 +82,15 @@ public class RegistrySendsNodeManifest extends Event {
         for (int i = 0; i < noOfAllNodeIds; i++) {
             allNodeIds[i] = din.readInt();
         }
+
+        // manifests without a topology describe the original finger ring
+        if (din.available() > 0) {
+            topologyId = din.readByte();
+            topologyTableSize = din.readInt();
+        } else {
+            topologyId = 0;
+            topologyTableSize = tableSize;
+        }
     }
 
     @Override
@@ -100,6 +114,8 @@ public class RegistrySendsNodeManifest extends Event {
             for (int i = 0; i < noOfAllNodeIds; i++) {
                 dout.writeInt(allNodeIds[i]);
             }
+            dout.writeByte(topologyId);
+            dout.writeInt(topologyTableSize);
 
             dout.flush();
 
@@ -179,4 +195,20 @@ public class RegistrySendsNodeManifest extends Event {
     public void setAllNodeIds(int[] allNodeIds) {
         this.allNodeIds = allNodeIds;
     }
+
+    public byte getTopologyId() {
+        return topologyId;
+    }
+
+    public void setTopologyId(byte topologyId) {
+        this.topologyId = topologyId;
+    }
+
+    public int getTopologyTableSize() {
+        return topologyTableSize;
+    }
+
+    public void setTopologyTableSize(int topologyTableSize) {
+        this.topologyTableSize = topologyTableSize;
+    }
 }
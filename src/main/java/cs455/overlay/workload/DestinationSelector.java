@@ -0,0 +1,15 @@
+package cs455.overlay.workload;
+
+import java.util.SplittableRandom;
+
+/**
+ * Picks the destination of each packet a generator thread sends. A selector belongs to one
+ * thread, so it may keep state between packets.
+ */
+public interface DestinationSelector {
+
+    /**
+     * Returns the node ID of the next packet's destination; never the sending node's own.
+     */
+    int nextDestination(SplittableRandom random);
+}
@@ -0,0 +1,29 @@
+package cs455.overlay.workload;
+
+/**
+ * All nodes send to one target node, which sends nothing. This concentrates the whole load on
+ * the target's inbound links and on the relays next to it.
+ */
+public class IncastPattern implements TrafficPattern {
+    public static final byte ID = 3;
+
+    @Override
+    public byte getId() {
+        return ID;
+    }
+
+    @Override
+    public String getName() {
+        return "incast";
+    }
+
+    @Override
+    public DestinationSelector createSelector(int[] nodeIds, int position, Workload workload) {
+        int targetPosition = workload.getTargetPosition(nodeIds);
+        if (targetPosition == -1 || targetPosition == position) {
+            return null;
+        }
+        int targetId = nodeIds[targetPosition];
+        return random -> targetId;
+    }
+}
@@ -0,0 +1,46 @@
+package cs455.overlay.workload;
+
+import java.util.SplittableRandom;
+
+/**
+ * One target node sends to every other node in turn and the others send nothing, which
+ * stresses the target's outbound links the way a broadcast or a shuffle's mapper would.
+ */
+public class OneToAllPattern implements TrafficPattern {
+    public static final byte ID = 4;
+
+    @Override
+    public byte getId() {
+        return ID;
+    }
+
+    @Override
+    public String getName() {
+        return "one-to-all";
+    }
+
+    @Override
+    public DestinationSelector createSelector(int[] nodeIds, int position, Workload workload) {
+        if (nodeIds.length < 2 || workload.getTargetPosition(nodeIds) != position) {
+            return null;
+        }
+        return new DestinationSelector() {
+            // positions are visited round robin, starting at a random one per thread so
+            // that the generator threads do not all hit the same node at once
+            private int nextPosition = -1;
+
+            @Override
+            public int nextDestination(SplittableRandom random) {
+                if (nextPosition == -1) {
+                    nextPosition = random.nextInt(nodeIds.length);
+                }
+                if (nextPosition == position) {
+                    nextPosition = (nextPosition + 1) % nodeIds.length;
+                }
+                int destinationId = nodeIds[nextPosition];
+                nextPosition = (nextPosition + 1) % nodeIds.length;
+                return destinationId;
+            }
+        };
+    }
+}
@@ -0,0 +1,35 @@
+package cs455.overlay.workload;
+
+/**
+ * Every node sends all its packets to one partner, and every node is the partner of exactly
+ * one other. The nodes are shuffled with the workload's seed and each one sends to the next
+ * in the shuffle, so partners are rarely neighbors in the overlay.
+ */
+public class PermutationPattern implements TrafficPattern {
+    public static final byte ID = 2;
+
+    @Override
+    public byte getId() {
+        return ID;
+    }
+
+    @Override
+    public String getName() {
+        return "permutation";
+    }
+
+    @Override
+    public DestinationSelector createSelector(int[] nodeIds, int position, Workload workload) {
+        if (nodeIds.length < 2) {
+            return null;
+        }
+        int[] shuffled = workload.shufflePositions(nodeIds.length);
+        int index = 0;
+        while (shuffled[index] != position) {
+            index++;
+        }
+        // a single cycle through all nodes, so no node is its own partner
+        int partnerId = nodeIds[shuffled[(index + 1) % shuffled.length]];
+        return random -> partnerId;
+    }
+}
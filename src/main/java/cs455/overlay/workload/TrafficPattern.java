@@ -0,0 +1,28 @@
+package cs455.overlay.workload;
+
+/**
+ * Who sends packets to whom during a task. Like topologies, patterns identify nodes by their
+ * position in the sorted list of all node IDs, and every node derives the same choices from
+ * the workload's seed, so a pattern such as a permutation is consistent across the overlay
+ * without any further coordination.
+ */
+public interface TrafficPattern {
+
+    /**
+     * Identifier sent in the task initiate message.
+     */
+    byte getId();
+
+    /**
+     * Name used to select the pattern with the start command.
+     */
+    String getName();
+
+    /**
+     * Creates a selector for one generator thread of the node at the given position, or
+     * returns null if that node sends no packets with this pattern.
+     *
+     * @param nodeIds all node IDs in the overlay, sorted
+     */
+    DestinationSelector createSelector(int[] nodeIds, int position, Workload workload);
+}
@@ -0,0 +1,56 @@
+package cs455.overlay.workload;
+
+/**
+ * The traffic patterns a task can be started with.
+ */
+public class TrafficPatterns {
+    private static final TrafficPattern[] PATTERNS = {
+            new UniformPattern(),
+            new ZipfPattern(),
+            new PermutationPattern(),
+            new IncastPattern(),
+            new OneToAllPattern()
+    };
+
+    private TrafficPatterns() {
+    }
+
+    public static TrafficPattern getDefault() {
+        return PATTERNS[UniformPattern.ID];
+    }
+
+    /**
+     * Returns the pattern with the given task initiate ID, or null if there is none.
+     */
+    public static TrafficPattern getById(byte id) {
+        for (TrafficPattern pattern : PATTERNS) {
+            if (pattern.getId() == id) {
+                return pattern;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Returns the pattern with the given name, or null if there is none.
+     */
+    public static TrafficPattern getByName(String name) {
+        for (TrafficPattern pattern : PATTERNS) {
+            if (pattern.getName().equalsIgnoreCase(name)) {
+                return pattern;
+            }
+        }
+        return null;
+    }
+
+    public static String getNames() {
+        StringBuilder names = new StringBuilder();
+        for (TrafficPattern pattern : PATTERNS) {
+            if (names.length() > 0) {
+                names.append('|');
+            }
+            names.append(pattern.getName());
+        }
+        return names.toString();
+    }
+}
@@ -0,0 +1,33 @@
+package cs455.overlay.workload;
+
+/**
+ * Every node sends each packet to a node picked uniformly at random from all other nodes.
+ */
+public class UniformPattern implements TrafficPattern {
+    public static final byte ID = 0;
+
+    @Override
+    public byte getId() {
+        return ID;
+    }
+
+    @Override
+    public String getName() {
+        return "uniform";
+    }
+
+    @Override
+    public DestinationSelector createSelector(int[] nodeIds, int position, Workload workload) {
+        if (nodeIds.length < 2) {
+            return null;
+        }
+        return random -> {
+            // pick among the other nodes by skipping over this node's position
+            int destinationPosition = random.nextInt(nodeIds.length - 1);
+            if (destinationPosition >= position) {
+                destinationPosition++;
+            }
+            return nodeIds[destinationPosition];
+        };
+    }
+}
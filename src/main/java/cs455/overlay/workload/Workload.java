@@ -0,0 +1,188 @@
+package cs455.overlay.workload;
+
+import java.util.Arrays;
+import java.util.SplittableRandom;
+
+import cs455.overlay.util.Constants;
+
+/**
+ * What nodes send during a task: the traffic pattern choosing each packet's destination and
+ * the size of the bytes packets carry besides their int payload. The registry broadcasts the
+ * workload with the task, including a seed from which every node derives the same random
+ * choices, e.g. the hot nodes of a Zipf pattern.
+ */
+public class Workload {
+    public static final String OPTIONS = "[pattern=" + TrafficPatterns.getNames() + "] " +
+            "[zipf-exponent=<s>] [target=<node id>] [payload-bytes=<n>|<min>-<max>] " +
+            "[seed=<n>]";
+
+    private TrafficPattern pattern = TrafficPatterns.getDefault();
+    private double zipfExponent = Constants.DEFAULT_ZIPF_EXPONENT;
+    private int targetNodeId = -1;      // -1 means a node picked with the seed
+    private int minPayloadBytes = 0;
+    private int maxPayloadBytes = 0;
+    private long seed = new SplittableRandom().nextLong();
+
+    /**
+     * Parses key=value options, leaving unset ones at their defaults.
+     */
+    public static Workload parse(String[] options) {
+        Workload workload = new Workload();
+        for (String argument : options) {
+            String[] option = argument.split("=", 2);
+            if (option.length != 2) {
+                throw new IllegalArgumentException(OPTIONS);
+            }
+            String value = option[1];
+            switch (option[0]) {
+                case "pattern":
+                    workload.pattern = TrafficPatterns.getByName(value);
+                    if (workload.pattern == null) {
+                        throw new IllegalArgumentException("Unknown traffic pattern: " + value);
+                    }
+                    break;
+                case "zipf-exponent":
+                    workload.zipfExponent = Double.parseDouble(value);
+                    break;
+                case "target":
+                    workload.targetNodeId = Integer.parseInt(value);
+                    break;
+                case "payload-bytes":
+                    String[] range = value.split("-", 2);
+                    workload.minPayloadBytes = Integer.parseInt(range[0]);
+                    workload.maxPayloadBytes = range.length == 2 ?
+                            Integer.parseInt(range[1]) : workload.minPayloadBytes;
+                    break;
+                case "seed":
+                    workload.seed = Long.parseLong(value);
+                    break;
+                default:
+                    throw new IllegalArgumentException("Unknown option: " + option[0]);
+            }
+        }
+        workload.validate();
+        return workload;
+    }
+
+    private void validate() {
+        if (zipfExponent < 0) {
+            throw new IllegalArgumentException("The Zipf exponent cannot be negative");
+        }
+        if (minPayloadBytes < 0 || maxPayloadBytes < minPayloadBytes ||
+                maxPayloadBytes > Constants.MAX_PAYLOAD_BYTES) {
+            throw new IllegalArgumentException("Payload sizes must be between 0 and " +
+                    Constants.MAX_PAYLOAD_BYTES + " bytes");
+        }
+    }
+
+    /**
+     * Returns the positions 0 .. noOfNodes - 1 shuffled with the seed, the same on every node.
+     */
+    public int[] shufflePositions(int noOfNodes) {
+        int[] positions = new int[noOfNodes];
+        for (int i = 0; i < noOfNodes; i++) {
+            positions[i] = i;
+        }
+        SplittableRandom random = new SplittableRandom(seed);
+        for (int i = noOfNodes - 1; i > 0; i--) {
+            int j = random.nextInt(i + 1);
+            int position = positions[i];
+            positions[i] = positions[j];
+            positions[j] = position;
+        }
+        return positions;
+    }
+
+    /**
+     * Position of the target node of an incast or one-to-all pattern, or -1 if the target is
+     * not in the overlay.
+     *
+     * @param nodeIds all node IDs in the overlay, sorted
+     */
+    public int getTargetPosition(int[] nodeIds) {
+        if (nodeIds.length == 0) {
+            return -1;
+        }
+        if (targetNodeId == -1) {
+            return new SplittableRandom(seed).nextInt(nodeIds.length);
+        }
+        int position = Arrays.binarySearch(nodeIds, targetNodeId);
+        return position >= 0 ? position : -1;
+    }
+
+    /**
+     * Number of bytes the next packet carries besides its int payload.
+     */
+    public int nextPayloadBytes(SplittableRandom random) {
+        if (minPayloadBytes == maxPayloadBytes) {
+            return minPayloadBytes;
+        }
+        return minPayloadBytes + random.nextInt(maxPayloadBytes - minPayloadBytes + 1);
+    }
+
+    public TrafficPattern getPattern() {
+        return pattern;
+    }
+
+    public void setPattern(TrafficPattern pattern) {
+        this.pattern = pattern;
+    }
+
+    public double getZipfExponent() {
+        return zipfExponent;
+    }
+
+    public void setZipfExponent(double zipfExponent) {
+        this.zipfExponent = zipfExponent;
+    }
+
+    public int getTargetNodeId() {
+        return targetNodeId;
+    }
+
+    public void setTargetNodeId(int targetNodeId) {
+        this.targetNodeId = targetNodeId;
+    }
+
+    public int getMinPayloadBytes() {
+        return minPayloadBytes;
+    }
+
+    public void setMinPayloadBytes(int minPayloadBytes) {
+        this.minPayloadBytes = minPayloadBytes;
+    }
+
+    public int getMaxPayloadBytes() {
+        return maxPayloadBytes;
+    }
+
+    public void setMaxPayloadBytes(int maxPayloadBytes) {
+        this.maxPayloadBytes = maxPayloadBytes;
+    }
+
+    public long getSeed() {
+        return seed;
+    }
+
+    public void setSeed(long seed) {
+        this.seed = seed;
+    }
+
+    @Override
+    public String toString() {
+        StringBuilder description = new StringBuilder(pattern.getName());
+        if (pattern.getId() == ZipfPattern.ID) {
+            description.append(" with exponent ").append(zipfExponent);
+        }
+        if (pattern.getId() == IncastPattern.ID || pattern.getId() == OneToAllPattern.ID) {
+            description.append(" with target ")
+                    .append(targetNodeId == -1 ? "picked by seed" : "node " + targetNodeId);
+        }
+        if (maxPayloadBytes > 0) {
+            description.append(", ").append(minPayloadBytes == maxPayloadBytes ?
+                    Integer.toString(minPayloadBytes) : minPayloadBytes + "-" + maxPayloadBytes)
+                    .append(" payload bytes");
+        }
+        return description.append(", seed ").append(seed).toString();
+    }
+}
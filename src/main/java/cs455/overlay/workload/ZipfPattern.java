@@ -0,0 +1,58 @@
+package cs455.overlay.workload;
+
+/**
+ * Every node sends to hotspots: the node of rank k receives packets in proportion to
+ * 1 / k^s, where s is the workload's Zipf exponent. Ranks are a shuffle of the nodes drawn
+ * from the workload's seed, so all senders agree on which nodes are hot.
+ */
+public class ZipfPattern implements TrafficPattern {
+    public static final byte ID = 1;
+
+    @Override
+    public byte getId() {
+        return ID;
+    }
+
+    @Override
+    public String getName() {
+        return "zipf";
+    }
+
+    @Override
+    public DestinationSelector createSelector(int[] nodeIds, int position, Workload workload) {
+        if (nodeIds.length < 2) {
+            return null;
+        }
+        int[] ranked = workload.shufflePositions(nodeIds.length);
+        // cumulative weights of the other nodes by rank; this node gets no share
+        double[] cumulativeWeights = new double[nodeIds.length];
+        double total = 0;
+        for (int rank = 0; rank < ranked.length; rank++) {
+            if (ranked[rank] != position) {
+                total += 1 / Math.pow(rank + 1, workload.getZipfExponent());
+            }
+            cumulativeWeights[rank] = total;
+        }
+        double totalWeight = total;
+        return random -> nodeIds[ranked[firstGreater(cumulativeWeights,
+                random.nextDouble() * totalWeight)]];
+    }
+
+    /**
+     * Returns the first index whose value is greater than the given one. This node's rank
+     * repeats the previous cumulative weight, so it is never the first greater one.
+     */
+    private static int firstGreater(double[] ascending, double value) {
+        int low = 0;
+        int high = ascending.length - 1;
+        while (low < high) {
+            int middle = (low + high) >>> 1;
+            if (ascending[middle] > value) {
+                high = middle;
+            } else {
+                low = middle + 1;
+            }
+        }
+        return low;
+    }
+}
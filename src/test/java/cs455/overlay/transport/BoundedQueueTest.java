@@ -0,0 +1,147 @@
+package cs455.overlay.transport;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+import java.util.concurrent.atomic.AtomicReference;
+import org.junit.Test;
+
+public class BoundedQueueTest {
+    private static final int NO_OF_PRODUCERS = 4;
+    private static final int NO_OF_CONSUMERS = 4;
+    private static final int ELEMENTS_PER_PRODUCER = 100_000;
+
+    @Test
+    public void capacityIsRoundedUpToPowerOfTwo() {
+        assertEquals(2, new BoundedQueue<Integer>(1).capacity());
+        assertEquals(8, new BoundedQueue<Integer>(5).capacity());
+        assertEquals(8, new BoundedQueue<Integer>(8).capacity());
+    }
+
+    @Test
+    public void offerFailsWhenFullAndPollKeepsOrder() {
+        BoundedQueue<Integer> queue = new BoundedQueue<>(4);
+        for (int i = 0; i < 4; i++) {
+            assertTrue(queue.offer(i));
+        }
+        assertFalse(queue.offer(4));
+        assertEquals(4, queue.size());
+        for (int lap = 0; lap < 3; lap++) {
+            for (int i = 0; i < 4; i++) {
+                assertEquals(Integer.valueOf(lap * 4 + i), queue.poll());
+                assertTrue(queue.offer(lap * 4 + i + 4));
+            }
+        }
+        for (int i = 12; i < 16; i++) {
+            assertEquals(Integer.valueOf(i), queue.poll());
+        }
+        assertNull(queue.poll());
+        assertTrue(queue.isEmpty());
+    }
+
+    @Test
+    public void takeReturnsNullWhenNotWaiting() {
+        BoundedQueue<Integer> queue = new BoundedQueue<>(4);
+        assertNull(queue.take(() -> false));
+    }
+
+    @Test(timeout = 10_000)
+    public void blockedTakeWakesUpAfterOffer() throws InterruptedException {
+        BoundedQueue<Integer> queue = new BoundedQueue<>(4);
+        AtomicReference<Integer> taken = new AtomicReference<>();
+        Thread consumer = new Thread(() -> {
+            Integer element = null;
+            while (element == null) {
+                element = queue.take(() -> true);
+            }
+            taken.set(element);
+        });
+        consumer.start();
+        // only offer once the consumer has stopped spinning and blocks on the lock
+        while (consumer.getState() != Thread.State.WAITING) {
+            Thread.sleep(1);
+        }
+        assertTrue(queue.offer(42));
+        consumer.join();
+        assertEquals(Integer.valueOf(42), taken.get());
+    }
+
+    @Test(timeout = 10_000)
+    public void wakeConsumersReleasesBlockedTake() throws InterruptedException {
+        BoundedQueue<Integer> queue = new BoundedQueue<>(4);
+        AtomicBoolean keepWaiting = new AtomicBoolean(true);
+        Thread consumer = new Thread(() -> {
+            while (keepWaiting.get()) {
+                queue.take(keepWaiting::get);
+            }
+        });
+        consumer.start();
+        while (consumer.getState() != Thread.State.WAITING) {
+            Thread.sleep(1);
+        }
+        keepWaiting.set(false);
+        queue.wakeConsumers();
+        consumer.join();
+    }
+
+    @Test(timeout = 60_000)
+    public void concurrentProducersAndConsumersNeitherLoseNorDuplicate()
+            throws InterruptedException {
+        // small enough that producers keep finding it full and consumers keep finding it empty
+        BoundedQueue<Integer> queue = new BoundedQueue<>(64);
+        int total = NO_OF_PRODUCERS * ELEMENTS_PER_PRODUCER;
+        AtomicIntegerArray timesTaken = new AtomicIntegerArray(total);
+        AtomicInteger noOfTaken = new AtomicInteger();
+        AtomicBoolean running = new AtomicBoolean(true);
+
+        List<Thread> threads = new ArrayList<>();
+        for (int p = 0; p < NO_OF_PRODUCERS; p++) {
+            int first = p * ELEMENTS_PER_PRODUCER;
+            threads.add(new Thread(() -> {
+                for (int i = first; i < first + ELEMENTS_PER_PRODUCER; i++) {
+                    queue.put(i);
+                }
+            }));
+        }
+        List<Thread> consumers = new ArrayList<>();
+        for (int c = 0; c < NO_OF_CONSUMERS; c++) {
+            consumers.add(new Thread(() -> {
+                while (running.get()) {
+                    Integer element = queue.take(running::get);
+                    if (element != null) {
+                        timesTaken.getAndIncrement(element);
+                        noOfTaken.getAndIncrement();
+                    }
+                }
+            }));
+        }
+        threads.addAll(consumers);
+        for (Thread thread : threads) {
+            thread.start();
+        }
+        for (Thread thread : threads.subList(0, NO_OF_PRODUCERS)) {
+            thread.join();
+        }
+        while (noOfTaken.get() < total) {
+            Thread.sleep(1);
+        }
+        running.set(false);
+        queue.wakeConsumers();
+        for (Thread consumer : consumers) {
+            consumer.join();
+        }
+
+        assertEquals(total, noOfTaken.get());
+        for (int i = 0; i < total; i++) {
+            assertEquals("times element " + i + " was taken", 1, timesTaken.get(i));
+        }
+        assertTrue(queue.isEmpty());
+    }
+}
@@ -0,0 +1,169 @@
+package cs455.overlay.util;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.util.SplittableRandom;
+import org.junit.Test;
+
+public class LatencyHistogramTest {
+
+    @Test
+    public void valuesBelow128HaveTheirOwnBucket() {
+        assertEquals(0, LatencyHistogram.bucketIndex(0));
+        assertEquals(0, LatencyHistogram.highestValueInBucket(0));
+        assertEquals(127, LatencyHistogram.bucketIndex(127));
+        assertEquals(127, LatencyHistogram.highestValueInBucket(127));
+    }
+
+    @Test
+    public void bucketsFrom128CoverTwoValuesAndUp() {
+        assertEquals(128, LatencyHistogram.bucketIndex(128));
+        assertEquals(128, LatencyHistogram.bucketIndex(129));
+        assertEquals(129, LatencyHistogram.highestValueInBucket(128));
+        assertEquals(129, LatencyHistogram.bucketIndex(130));
+    }
+
+    @Test
+    public void largestValueFallsInLastBucket() {
+        int last = LatencyHistogram.bucketIndex(Long.MAX_VALUE);
+        assertEquals(Long.MAX_VALUE, LatencyHistogram.highestValueInBucket(last));
+        assertEquals(last - 1, LatencyHistogram.bucketIndex(
+                LatencyHistogram.highestValueInBucket(last - 1)));
+    }
+
+    @Test
+    public void bucketsAreContiguousAndContainTheirValues() {
+        long value = 0;
+        for (int index = 0; index <= LatencyHistogram.bucketIndex(Long.MAX_VALUE); index++) {
+            long highest = LatencyHistogram.highestValueInBucket(index);
+            assertEquals("lowest value of bucket " + index, index,
+                    LatencyHistogram.bucketIndex(value));
+            assertEquals("highest value of bucket " + index, index,
+                    LatencyHistogram.bucketIndex(highest));
+            if (highest == Long.MAX_VALUE) {
+                return;
+            }
+            value = highest + 1;
+        }
+    }
+
+    @Test
+    public void percentilesStayWithinRelativeError() {
+        LatencyHistogram histogram = new LatencyHistogram();
+        for (long value = 1; value <= 1000; value++) {
+            histogram.record(value * 1000);
+        }
+        assertEquals(1000, histogram.getTotalCount());
+        assertEquals(1_000_000, histogram.getMaxValue());
+        long median = histogram.getValueAtPercentile(50);
+        assertTrue("median " + median, median >= 500_000 && median <= 500_000 * 65 / 64);
+        assertEquals(1_000_000, histogram.getValueAtPercentile(100));
+    }
+
+    @Test
+    public void negativeValuesAreRecordedAsZero() {
+        LatencyHistogram histogram = new LatencyHistogram();
+        histogram.record(-5);
+        assertEquals(1, histogram.getTotalCount());
+        assertEquals(0, histogram.getMaxValue());
+        assertEquals(0, histogram.getValueAtPercentile(100));
+    }
+
+    @Test
+    public void writeAndReadRoundTrip() throws IOException {
+        LatencyHistogram histogram = new LatencyHistogram();
+        SplittableRandom random = new SplittableRandom(455);
+        for (int i = 0; i < 10_000; i++) {
+            histogram.record(random.nextLong(0, 10_000_000_000L));
+        }
+        histogram.record(0);
+        histogram.record(Long.MAX_VALUE);
+
+        LatencyHistogram read = roundTrip(histogram);
+        assertEquals(histogram.getTotalCount(), read.getTotalCount());
+        assertEquals(histogram.getMaxValue(), read.getMaxValue());
+        for (double percentile : new double[]{0, 1, 50, 90, 99, 99.9, 100}) {
+            assertEquals("percentile " + percentile,
+                    histogram.getValueAtPercentile(percentile),
+                    read.getValueAtPercentile(percentile));
+        }
+    }
+
+    @Test
+    public void emptyHistogramRoundTrip() throws IOException {
+        LatencyHistogram read = roundTrip(new LatencyHistogram());
+        assertEquals(0, read.getTotalCount());
+        assertEquals(0, read.getMaxValue());
+    }
+
+    @Test
+    public void addCombinesCountsAndMaximum() {
+        LatencyHistogram first = new LatencyHistogram();
+        first.record(10);
+        LatencyHistogram second = new LatencyHistogram();
+        second.record(1000);
+        second.record(20);
+        first.add(second);
+        assertEquals(3, first.getTotalCount());
+        assertEquals(1000, first.getMaxValue());
+        assertEquals(20, first.getValueAtPercentile(50));
+    }
+
+    @Test(expected = IOException.class)
+    public void readRejectsNegativeCount() throws IOException {
+        read(1, 5, -1, 5);
+    }
+
+    @Test(expected = IOException.class)
+    public void readRejectsCountsOverflowingTotal() throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        DataOutputStream dout = new DataOutputStream(bytes);
+        dout.writeInt(2);
+        dout.writeInt(1);
+        dout.writeLong(Long.MAX_VALUE);
+        dout.writeInt(2);
+        dout.writeLong(1);
+        dout.writeLong(2);
+        LatencyHistogram.readFrom(new DataInputStream(
+                new ByteArrayInputStream(bytes.toByteArray())));
+    }
+
+    @Test(expected = IOException.class)
+    public void readRejectsBucketOutOfRange() throws IOException {
+        read(1, LatencyHistogram.bucketIndex(Long.MAX_VALUE) + 1, 1, 5);
+    }
+
+    @Test(expected = IOException.class)
+    public void readRejectsNegativeMaximum() throws IOException {
+        read(1, 5, 1, -5);
+    }
+
+    private static LatencyHistogram roundTrip(LatencyHistogram histogram) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        DataOutputStream dout = new DataOutputStream(bytes);
+        histogram.writeTo(dout);
+        dout.flush();
+        DataInputStream din = new DataInputStream(new ByteArrayInputStream(bytes.toByteArray()));
+        LatencyHistogram read = LatencyHistogram.readFrom(din);
+        assertEquals("unread bytes", 0, din.available());
+        return read;
+    }
+
+    private static LatencyHistogram read(int noOfBuckets, int index, long count, long max)
+            throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        DataOutputStream dout = new DataOutputStream(bytes);
+        dout.writeInt(noOfBuckets);
+        dout.writeInt(index);
+        dout.writeLong(count);
+        dout.writeLong(max);
+        return LatencyHistogram.readFrom(new DataInputStream(
+                new ByteArrayInputStream(bytes.toByteArray())));
+    }
+}
@@ -0,0 +1,76 @@
+package cs455.overlay.util;
+
+import static org.junit.Assert.assertEquals;
+
+import java.math.BigInteger;
+import java.util.SplittableRandom;
+import org.junit.Test;
+
+public class PayloadSumTest {
+    private static final BigInteger TWO_TO_THE_64 = BigInteger.ONE.shiftLeft(64);
+
+    @Test
+    public void valueOfSignExtends() {
+        assertEquals(new PayloadSum(0, 5), PayloadSum.valueOf(5));
+        assertEquals(new PayloadSum(-1, -5), PayloadSum.valueOf(-5));
+        assertEquals(BigInteger.valueOf(Long.MIN_VALUE),
+                PayloadSum.valueOf(Long.MIN_VALUE).toBigInteger());
+    }
+
+    @Test
+    public void lowHalfCarriesIntoHighHalf() {
+        // 2^64 - 1 + 1
+        PayloadSum sum = new PayloadSum(0, -1L).add(1);
+        assertEquals(new PayloadSum(1, 0), sum);
+        assertEquals(TWO_TO_THE_64, sum.toBigInteger());
+
+        PayloadSum max = PayloadSum.valueOf(Long.MAX_VALUE);
+        assertEquals(BigInteger.valueOf(Long.MAX_VALUE).shiftLeft(1),
+                max.add(max).toBigInteger());
+    }
+
+    @Test
+    public void negativeValuesBorrowFromHighHalf() {
+        assertEquals(PayloadSum.ZERO, PayloadSum.valueOf(-1).add(1));
+        assertEquals(PayloadSum.ZERO, PayloadSum.valueOf(1).add(-1));
+        // -2^64
+        PayloadSum min = PayloadSum.valueOf(Long.MIN_VALUE);
+        assertEquals(new PayloadSum(-1, 0), min.add(min));
+        assertEquals(TWO_TO_THE_64.negate(), min.add(min).toBigInteger());
+        // 2^64 - 1 back down to below zero
+        assertEquals(BigInteger.valueOf(-1),
+                new PayloadSum(0, -1L).add(new PayloadSum(-1, 0)).toBigInteger());
+    }
+
+    @Test
+    public void matchesBigIntegerArithmetic() {
+        SplittableRandom random = new SplittableRandom(455);
+        PayloadSum sum = PayloadSum.ZERO;
+        BigInteger expected = BigInteger.ZERO;
+        for (int i = 0; i < 100_000; i++) {
+            long value = random.nextLong();
+            sum = sum.add(value);
+            expected = expected.add(BigInteger.valueOf(value));
+        }
+        assertEquals(expected, sum.toBigInteger());
+        assertEquals(expected.toString(), sum.toString());
+    }
+
+    @Test
+    public void fromHalvesCombinesStripedCounters() {
+        long[][] halves = {{0, 0}, {1, 0}, {0, 65535}, {-1, 0}, {-3, 70000},
+                {Long.MAX_VALUE, Long.MAX_VALUE}, {Long.MIN_VALUE, Long.MIN_VALUE}};
+        for (long[] pair : halves) {
+            BigInteger expected = BigInteger.valueOf(pair[0]).shiftLeft(16)
+                    .add(BigInteger.valueOf(pair[1]));
+            assertEquals("halves " + pair[0] + ", " + pair[1], expected,
+                    PayloadSum.fromHalves(pair[0], pair[1]).toBigInteger());
+        }
+    }
+
+    @Test
+    public void toStringOfValueBeyondLong() {
+        assertEquals("-1", PayloadSum.valueOf(-1).toString());
+        assertEquals(TWO_TO_THE_64.toString(), new PayloadSum(1, 0).toString());
+    }
+}